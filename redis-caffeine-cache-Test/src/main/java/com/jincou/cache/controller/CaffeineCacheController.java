@@ -34,6 +34,11 @@ public class CaffeineCacheController {
     }
 
 
+    @RequestMapping(value = "/queryUserLoading")
+    public UserDTO queryUserLoading(String userId) {
+        return caffeineCacheService.queryUserLoading(userId);
+    }
+
     @RequestMapping(value = "/queryUserSyncList")
     public List<UserDTO> queryUserSyncList(String userId) {
         return caffeineCacheService.queryUserSyncList(userId);
@@ -2,13 +2,17 @@ package com.jincou.cache.service;
 
 
 import com.jincou.cache.dto.UserDTO;
+import com.jincou.core.spring.RedisCaffeineCacheManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -26,6 +30,11 @@ public class CaffeineCacheService {
 
     private final Logger logger = LoggerFactory.getLogger(CaffeineCacheService.class);
 
+    private static final String USER_LOADING_CACHE = "userLoadingCache";
+
+    @Autowired
+    private RedisCaffeineCacheManager cacheManager;
+
     /**
      * 用于模拟db
      */
@@ -73,6 +82,29 @@ public class CaffeineCacheService {
         return list;
     }
 
+    /**
+     * 读穿透获取缓存项
+     * <p>
+     * 注：userLoadingCache注册了加载器，一二级缓存都未命中时由加载器加载，同一个key并发未命中时只加载一次
+     */
+    public UserDTO queryUserLoading(String userId) {
+        return cacheManager.getLoadingCache(USER_LOADING_CACHE).get(userId, UserDTO.class);
+    }
+
+    @PostConstruct
+    public void registerLoader() {
+        cacheManager.registerLoader(USER_LOADING_CACHE, key -> {
+            UserDTO userDTO = userMap.get(key);
+            try {
+                Thread.sleep(1000);// 模拟加载数据的耗时
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            logger.info("加载数据:{}", userDTO);
+            return userDTO;
+        });
+    }
+
     /**
      * 更新缓存
      */
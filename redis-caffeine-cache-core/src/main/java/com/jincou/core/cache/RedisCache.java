@@ -1,10 +1,29 @@
 package com.jincou.core.cache;
 
 import com.alibaba.fastjson.JSONObject;
+import com.jincou.core.config.L2CacheConfig;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 /**
@@ -14,6 +33,21 @@ public class RedisCache {
 
     private RedisTemplate<Object, Object> redisTemplate;
 
+    /**
+     * 读操作使用的实例，未单独配置读连接时为自身
+     */
+    private RedisCache reader = this;
+
+    /**
+     * 按读策略配置的读取实例
+     */
+    private final Map<L2CacheConfig.ReadPolicy, RedisCache> policyReaders = new EnumMap<>(L2CacheConfig.ReadPolicy.class);
+
+    /**
+     * 从节点复制延迟检查，从节点落后过多时读取改为访问主节点，未配置时为null
+     */
+    private ReplicationLagMonitor replicationLagMonitor;
+
 
     public RedisTemplate getRedisTemplate() {
         return redisTemplate;
@@ -24,6 +58,68 @@ public class RedisCache {
         this.redisTemplate = redisTemplate;
     }
 
+    /**
+     * 缓存查询使用的实例，配置了读连接时读取可能落在从节点，写入、删除等操作应使用当前实例
+     */
+    public RedisCache getReader() {
+        return readerOrPrimary(reader);
+    }
+
+    /**
+     * 按读策略获取缓存查询使用的实例，未配置该策略的读连接时使用默认的读实例
+     *
+     * @param readPolicy 读策略，为null时使用默认的读实例
+     */
+    public RedisCache getReader(L2CacheConfig.ReadPolicy readPolicy) {
+        if (readPolicy == null) {
+            return getReader();
+        }
+        if (readPolicy == L2CacheConfig.ReadPolicy.PRIMARY) {
+            return this;
+        }
+        RedisCache policyReader = policyReaders.get(readPolicy);
+        return readerOrPrimary(policyReader == null ? reader : policyReader);
+    }
+
+    /**
+     * 设置读策略对应的模板
+     */
+    public void setReadRedisTemplate(L2CacheConfig.ReadPolicy readPolicy, RedisTemplate<Object, Object> readRedisTemplate) {
+        RedisCache readCache = new RedisCache();
+        readCache.setRedisTemplate(readRedisTemplate);
+        policyReaders.put(readPolicy, readCache);
+    }
+
+    /**
+     * 按读策略读取时是否使用单独的读连接，即读取可能落在从节点
+     *
+     * @param readPolicy 读策略，为null时使用默认的读实例
+     */
+    public boolean hasReplicaReader(L2CacheConfig.ReadPolicy readPolicy) {
+        if (readPolicy == L2CacheConfig.ReadPolicy.PRIMARY) {
+            return false;
+        }
+        RedisCache policyReader = readPolicy == null ? null : policyReaders.get(readPolicy);
+        return (policyReader == null ? reader : policyReader) != this;
+    }
+
+    public void setReplicationLagMonitor(ReplicationLagMonitor replicationLagMonitor) {
+        this.replicationLagMonitor = replicationLagMonitor;
+    }
+
+    private RedisCache readerOrPrimary(RedisCache readCache) {
+        return readCache != this && replicationLagMonitor != null && replicationLagMonitor.isLagging() ? this : readCache;
+    }
+
+    /**
+     * 设置缓存查询使用的模板，如连接从节点、超时时间较短的模板
+     */
+    public void setReadRedisTemplate(RedisTemplate<Object, Object> readRedisTemplate) {
+        RedisCache readCache = new RedisCache();
+        readCache.setRedisTemplate(readRedisTemplate);
+        this.reader = readCache;
+    }
+
     /**
      * 向key值中设置value
      */
@@ -248,6 +344,26 @@ public class RedisCache {
         return new HashSet<>(keys);
     }
 
+    /**
+     * 通过SCAN统计匹配的key数量，不阻塞redis
+     * @param pattern 匹配模式
+     * @param limit 最多统计的数量，达到后停止扫描
+     * @return 匹配的key数量，不超过limit
+     */
+    public long scanCount(String pattern, long limit){
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        return redisTemplate.execute((RedisCallback<Long>) connection -> {
+            long count = 0;
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (count < limit && cursor.hasNext()) {
+                    cursor.next();
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
     /**
      * 根据key列表批量获取value
      * @param keyList
@@ -256,4 +372,406 @@ public class RedisCache {
     public List multiGet(List keyList){
         return redisTemplate.opsForValue().multiGet(keyList);
     }
+
+    /**
+     * 通过pipeline批量设置value，一次网络往返
+     * @param values key -> value
+     * @param timeout 过期时间，单位毫秒，小于等于0表示不过期
+     */
+    public void pipelineSet(Map<String, Object> values, long timeout){
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    if (timeout > 0) {
+                        operations.opsForValue().set(entry.getKey(), entry.getValue(), timeout, TimeUnit.MILLISECONDS);
+                    } else {
+                        operations.opsForValue().set(entry.getKey(), entry.getValue());
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 通过pipeline为缓存key打标签：缓存key加入每个标签集合，同时把标签集合的key记录到缓存key的标签索引中，删除缓存key时据此移出标签集合
+     * @param tagKeys 标签集合的key
+     * @param member 缓存key
+     * @param indexKey 缓存key的标签索引
+     * @param timeout 标签集合及索引的过期时间，单位毫秒，小于等于0表示不设置
+     */
+    public void pipelineTag(Collection<String> tagKeys, String member, String indexKey, long timeout){
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (String tagKey : tagKeys) {
+                    operations.opsForSet().add(tagKey, member);
+                    if (timeout > 0) {
+                        operations.expire(tagKey, timeout, TimeUnit.MILLISECONDS);
+                    }
+                }
+                operations.opsForSet().add(indexKey, tagKeys.toArray());
+                if (timeout > 0) {
+                    operations.expire(indexKey, timeout, TimeUnit.MILLISECONDS);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 通过pipeline删除key及缓存key的标签索引，同时读出索引中记录的标签集合key，一次网络往返
+     * @param keys 要删除的key，可以为空
+     * @param indexKey 缓存key的标签索引
+     * @return 索引中记录的标签集合key，没有时为空集合
+     */
+    @SuppressWarnings("unchecked")
+    public Set<Object> pipelineDeleteWithTagIndex(Collection<String> keys, String indexKey){
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForSet().members(indexKey);
+                for (String key : keys) {
+                    operations.delete(key);
+                }
+                operations.delete(indexKey);
+                return null;
+            }
+        });
+        Object tagKeys = results.isEmpty() ? null : results.get(0);
+        return tagKeys instanceof Set ? (Set<Object>) tagKeys : Collections.emptySet();
+    }
+
+    /**
+     * 通过pipeline将同一个数据从多个set集合中移除
+     * @param keys set集合的key
+     * @param member
+     */
+    public void pipelineSetRemove(Collection<?> keys, Object member){
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (Object key : keys) {
+                    operations.opsForSet().remove(key, member);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 通过SSCAN分批读取set集合的成员，不像SMEMBERS一次返回整个集合而阻塞redis
+     * <p>
+     * 处理期间可以修改集合，扫描开始时已存在且未被移除的成员至少返回一次
+     * @param key set集合的key
+     * @param batchSize 每批的成员数量，同时作为SSCAN的COUNT
+     * @param consumer 处理一批成员
+     */
+    public void scanSetMembers(String key, int batchSize, Consumer<List<Object>> consumer){
+        ScanOptions options = ScanOptions.scanOptions().count(batchSize).build();
+        try (Cursor<Object> cursor = redisTemplate.opsForSet().scan(key, options)) {
+            List<Object> batch = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * 通过pipeline删除set集合中记录的key，并将这些key从集合中移除
+     * <p>
+     * 只移除读取到的成员而不删除整个集合，读取之后新加入集合的成员不受影响
+     * @param setKey set集合的key
+     * @param members 集合中记录的key
+     */
+    public void pipelineDeleteMembers(String setKey, Collection<String> members){
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (String member : members) {
+                    operations.delete(member);
+                }
+                operations.opsForSet().remove(setKey, members.toArray());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 通过pipeline批量设置过期时间，不存在的key忽略
+     * @param keys
+     * @param timeout 过期时间，单位毫秒
+     */
+    public void pipelineExpire(Collection<String> keys, long timeout){
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.keyCommands().pExpire(rawKey(key), timeout);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 通过pipeline为key分别设置过期时间，不存在的key忽略
+     * @param timeouts key与过期时间，单位毫秒
+     */
+    public void pipelineExpire(Map<String, Long> timeouts){
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, Long> entry : timeouts.entrySet()) {
+                connection.keyCommands().pExpire(rawKey(entry.getKey()), entry.getValue());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 通过pipeline读取多个set集合的成员，一次网络往返
+     * @param keys set集合的key
+     * @return 与key一一对应的成员，集合不存在时为空集合
+     */
+    @SuppressWarnings("unchecked")
+    public List<Set<Object>> pipelineSetMembers(List<String> keys){
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (String key : keys) {
+                    operations.opsForSet().members(key);
+                }
+                return null;
+            }
+        });
+        List<Set<Object>> members = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Object result = i < results.size() ? results.get(i) : null;
+            members.add(result instanceof Set ? (Set<Object>) result : Collections.emptySet());
+        }
+        return members;
+    }
+
+    /**
+     * 直接写入已序列化的value，跳过模板的value序列化
+     * @param key
+     * @param value 已序列化的value
+     * @param timeout 过期时间，单位毫秒，小于等于0表示不过期
+     */
+    public void setRaw(String key, byte[] value, long timeout){
+        byte[] rawKey = rawKey(key);
+        redisTemplate.execute((RedisCallback<Object>) connection -> timeout > 0
+                ? connection.stringCommands().set(rawKey, value, Expiration.milliseconds(timeout), RedisStringCommands.SetOption.upsert())
+                : connection.stringCommands().set(rawKey, value));
+    }
+
+    /**
+     * 通过pipeline批量写入已序列化的value
+     * @param values key -> 已序列化的value
+     * @param timeout 过期时间，单位毫秒，小于等于0表示不过期
+     */
+    public void pipelineSetRaw(Map<String, byte[]> values, long timeout){
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                if (timeout > 0) {
+                    connection.stringCommands().set(rawKey(entry.getKey()), entry.getValue(), Expiration.milliseconds(timeout), RedisStringCommands.SetOption.upsert());
+                } else {
+                    connection.stringCommands().set(rawKey(entry.getKey()), entry.getValue());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 写入已序列化的value并返回旧值
+     * @param key
+     * @param value 已序列化的value
+     * @param timeout 过期时间，单位毫秒，小于等于0表示不过期
+     * @return 旧值不存在时返回null
+     */
+    public byte[] getAndSetRaw(String key, byte[] value, long timeout){
+        byte[] rawKey = rawKey(key);
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> {
+            byte[] oldValue = connection.stringCommands().getSet(rawKey, value);
+            if (timeout > 0) {
+                connection.keyCommands().pExpire(rawKey, timeout);
+            }
+            return oldValue;
+        });
+    }
+
+    /**
+     * 获取未反序列化的value
+     * @param key
+     * @return 不存在时返回null
+     */
+    public byte[] getRaw(String key){
+        byte[] rawKey = rawKey(key);
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+    }
+
+    /**
+     * 使用模板的value序列化器反序列化
+     * @param value 未反序列化的value
+     */
+    public Object deserializeValue(byte[] value){
+        return value == null ? null : redisTemplate.getValueSerializer().deserialize(value);
+    }
+
+    /**
+     * 使用模板的value序列化器序列化
+     * @param value
+     */
+    @SuppressWarnings("unchecked")
+    public byte[] serializeValue(Object value){
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+
+    /**
+     * 通过pipeline写入已序列化的value及其副本，副本使用各自的过期时间
+     * @param key
+     * @param value 已序列化的value
+     * @param timeout 过期时间，单位毫秒，小于等于0表示不过期
+     * @param replicaKeys 副本key
+     * @param replicaTimeout 副本过期时间，单位毫秒
+     */
+    public void pipelineSetRawWithReplicas(String key, byte[] value, long timeout, Collection<String> replicaKeys, long replicaTimeout){
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (timeout > 0) {
+                connection.stringCommands().set(rawKey(key), value, Expiration.milliseconds(timeout), RedisStringCommands.SetOption.upsert());
+            } else {
+                connection.stringCommands().set(rawKey(key), value);
+            }
+            for (String replicaKey : replicaKeys) {
+                connection.stringCommands().set(rawKey(replicaKey), value, Expiration.milliseconds(replicaTimeout), RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 通过pipeline逐个删除key，集群模式下不要求key在同一个slot
+     * @param keyList
+     */
+    public void pipelineDelete(Collection<String> keyList){
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keyList) {
+                connection.keyCommands().del(rawKey(key));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 向有序集合中添加数据，已存在时更新分数
+     * @param key
+     * @param value
+     * @param score
+     */
+    public Boolean zsetAdd(String key, Object value, double score){
+        return redisTemplate.opsForZSet().add(key, value, score);
+    }
+
+    /**
+     * 从有序集合中删除数据
+     * @param key
+     * @param values
+     */
+    public Long zsetRemove(String key, Object... values){
+        return redisTemplate.opsForZSet().remove(key, values);
+    }
+
+    /**
+     * 获取有序集合中分数在[min, max]之间的数据
+     * @param key
+     * @param min
+     * @param max
+     */
+    public Set zsetRangeByScore(String key, double min, double max){
+        return redisTemplate.opsForZSet().rangeByScore(key, min, max);
+    }
+
+    /**
+     * 删除有序集合中分数在[min, max]之间的数据
+     * @param key
+     * @param min
+     * @param max
+     */
+    public Long zsetRemoveRangeByScore(String key, double min, double max){
+        return redisTemplate.opsForZSet().removeRangeByScore(key, min, max);
+    }
+
+    /**
+     * 根据key列表批量获取未反序列化的value
+     * @param keyList
+     * @return 与keyList顺序一致，不存在的key对应null
+     */
+    public List<byte[]> multiGetRaw(List<String> keyList){
+        byte[][] rawKeys = new byte[keyList.size()][];
+        for (int i = 0; i < keyList.size(); i++) {
+            rawKeys[i] = rawKey(keyList.get(i));
+        }
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+    }
+
+    /**
+     * 根据key列表批量删除
+     * @param keyList
+     */
+    public void delete(Collection<String> keyList){
+        redisTemplate.delete(new ArrayList<Object>(keyList));
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+    /**
+     * 向stream中追加一条消息，超出maxLen的旧消息会被裁剪
+     * @param key
+     * @param body
+     * @param addOptions
+     * @return 消息ID
+     */
+    public RecordId streamAdd(byte[] key, Map<byte[], byte[]> body, RedisStreamCommands.XAddOptions addOptions){
+        return redisTemplate.execute((RedisCallback<RecordId>) connection ->
+                connection.streamCommands().xAdd(StreamRecords.rawBytes(body).withStreamKey(key), addOptions));
+    }
+
+    /**
+     * 从指定消息ID之后阻塞读取stream消息
+     * @param key
+     * @param lastId
+     * @param options
+     * @return
+     */
+    public List<ByteRecord> streamRead(byte[] key, String lastId, StreamReadOptions options){
+        return redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xRead(options, StreamOffset.create(key, ReadOffset.from(lastId))));
+    }
+
+    /**
+     * 获取stream中最早或最新的一条消息ID，stream为空时返回null
+     * @param key
+     * @param earliest true取最早的，false取最新的
+     * @return
+     */
+    public String streamBoundaryId(byte[] key, boolean earliest){
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection -> earliest
+                ? connection.streamCommands().xRange(key, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1))
+                : connection.streamCommands().xRevRange(key, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1)));
+        return records == null || records.isEmpty() ? null : records.get(0).getId().getValue();
+    }
 }
@@ -0,0 +1,121 @@
+package com.jincou.core.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  从节点复制延迟检查
+ *  <p>
+ *  定时在主节点执行INFO replication，比较master_repl_offset与各从节点的offset，
+ *  落后最多的从节点超过阈值时认为从节点数据可能过旧，缓存查询临时改为读取主节点，恢复后自动切回。
+ *  读取失败或无法获取复制信息时保持上一次的判断结果。
+ */
+public class ReplicationLagMonitor implements InitializingBean, DisposableBean, Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicationLagMonitor.class);
+
+    private final RedisTemplate<Object, Object> primaryRedisTemplate;
+
+    private final long maxLagBytes;
+
+    private final long checkMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile boolean lagging;
+
+    private volatile long lagBytes;
+
+    public ReplicationLagMonitor(RedisTemplate<Object, Object> primaryRedisTemplate, long maxLagBytes, long checkMillis) {
+        this.primaryRedisTemplate = primaryRedisTemplate;
+        this.maxLagBytes = maxLagBytes;
+        this.checkMillis = checkMillis;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "l2cache-replication-lag");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this, 0, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            Properties info = primaryRedisTemplate.execute((RedisCallback<Properties>) connection -> connection.serverCommands().info("replication"));
+            Long lag = maxLag(info);
+            if (lag == null) {
+                return;
+            }
+            boolean nowLagging = lag > maxLagBytes;
+            if (nowLagging != lagging) {
+                logger.warn("replica replication lag changed, lagBytes={}, readFromPrimary={}", lag, nowLagging);
+            }
+            lagBytes = lag;
+            lagging = nowLagging;
+        } catch (Exception e) {
+            logger.warn("check replica replication lag failed", e);
+        }
+    }
+
+    /**
+     * 从节点数据是否可能过旧，为true时缓存查询应读取主节点
+     */
+    public boolean isLagging() {
+        return lagging;
+    }
+
+    /**
+     * 最近一次检查时落后最多的从节点的复制偏移量差值
+     */
+    public long getLagBytes() {
+        return lagBytes;
+    }
+
+    /**
+     * @return 落后最多的从节点的偏移量差值，非主节点或没有从节点时返回null
+     */
+    static Long maxLag(Properties info) {
+        if (info == null || !"master".equals(info.getProperty("role"))) {
+            return null;
+        }
+        String masterOffset = info.getProperty("master_repl_offset");
+        if (masterOffset == null) {
+            return null;
+        }
+        long offset = Long.parseLong(masterOffset.trim());
+        Long maxLag = null;
+        for (String name : info.stringPropertyNames()) {
+            if (!name.startsWith("slave") || !Character.isDigit(name.charAt(name.length() - 1))) {
+                continue;
+            }
+            // slave0:ip=127.0.0.1,port=6380,state=online,offset=123,lag=0
+            for (String field : info.getProperty(name).split(",")) {
+                if (field.startsWith("offset=")) {
+                    long lag = Math.max(0, offset - Long.parseLong(field.substring("offset=".length()).trim()));
+                    maxLag = maxLag == null ? lag : Math.max(maxLag, lag);
+                }
+            }
+        }
+        return maxLag;
+    }
+}
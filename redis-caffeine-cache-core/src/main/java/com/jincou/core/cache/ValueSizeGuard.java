@@ -0,0 +1,489 @@
+package com.jincou.core.cache;
+
+import com.jincou.core.config.L2CacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ *  缓存key与value大小防护
+ *  <p>
+ *  写入时自行序列化value并按cacheName统计大小：超过告警阈值打印日志，超过压缩阈值gzip压缩，
+ *  超过拆分阈值拆成多个key存储（读取时mget重新组装），超过阈值的value不放入一级缓存或不写入redis。
+ *  <p>
+ *  分片key带有每次写入唯一的版本号，并发写入同一个key时各自的分片互不覆盖；
+ *  当前版本记录在 key#chunk 中，覆盖写入或删除时只读取该记录即可找到并删除旧分片；未开启拆分时不读取该记录，
+ *  关闭拆分前写入的分片随过期时间清除。
+ */
+public class ValueSizeGuard {
+
+    private final Logger logger = LoggerFactory.getLogger(ValueSizeGuard.class);
+
+    private static final String CHUNK_SUFFIX = "#chunk";
+
+    private final RedisCache redisCache;
+
+    private final L2CacheConfig.Guard guardConfig;
+
+    private final ConcurrentMap<String, SizeStats> statsMap = new ConcurrentHashMap<>();
+
+    public ValueSizeGuard(RedisCache redisCache, L2CacheConfig.Guard guardConfig) {
+        this.redisCache = redisCache;
+        this.guardConfig = guardConfig;
+    }
+
+    /**
+     * key是否超过最大长度，超过时不缓存
+     */
+    public boolean isKeyTooLarge(String cacheName, String cacheKey) {
+        int keyMaxBytes = guardConfig.getKeyMaxBytes();
+        // 按字符数可确定不超限时不必编码
+        if (keyMaxBytes <= 0 || cacheKey.length() * 3 <= keyMaxBytes) {
+            return false;
+        }
+        if (cacheKey.getBytes(StandardCharsets.UTF_8).length > keyMaxBytes) {
+            stats(cacheName).skipped.incrementAndGet();
+            logger.warn("cache key is too large, skip cache, cacheName={}, keyLength={}", cacheName, cacheKey.length());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 写入二级缓存
+     *
+     * @param cacheName  缓存名称
+     * @param cacheKey   redis key
+     * @param storeValue 存储值
+     * @param expire     过期时间，单位毫秒
+     * @return value序列化后的字节数
+     */
+    public int write(String cacheName, String cacheKey, Object storeValue, long expire) {
+        return write(cacheName, cacheKey, serialize(storeValue), expire);
+    }
+
+    /**
+     * 写入已序列化的value，供异步写在写入线程序列化、刷新时写入
+     *
+     * @param bytes 按redis模板的value序列化方式序列化后的字节
+     * @return value序列化后的字节数
+     */
+    public int write(String cacheName, String cacheKey, byte[] bytes, long expire) {
+        int size = bytes == null ? 0 : bytes.length;
+        SizeStats stats = stats(cacheName);
+        stats.record(cacheKey, size, guardConfig.getTopValues());
+
+        if (guardConfig.getValueWarnBytes() > 0 && size > guardConfig.getValueWarnBytes()) {
+            logger.warn("cache value is too large, cacheName={}, key={}, bytes={}", cacheName, cacheKey, size);
+        }
+        if (guardConfig.getValueSkipL2Bytes() > 0 && size > guardConfig.getValueSkipL2Bytes()) {
+            stats.skipped.incrementAndGet();
+            // 删除可能存在的旧值，避免读到过期数据
+            delete(cacheKey);
+            return size;
+        }
+
+        boolean compressed = false;
+        byte[] payload = bytes;
+        if (guardConfig.getValueCompressBytes() > 0 && size > guardConfig.getValueCompressBytes()) {
+            payload = gzip(bytes);
+            compressed = true;
+            stats.compressed.incrementAndGet();
+        }
+
+        int chunkBytes = guardConfig.getValueChunkBytes();
+        if (chunkBytes > 0 && payload.length > chunkBytes) {
+            int chunkCount = (payload.length + chunkBytes - 1) / chunkBytes;
+            String version = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            Map<String, byte[]> chunks = new LinkedHashMap<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunks.put(chunkKey(cacheKey, version, i), Arrays.copyOfRange(payload, i * chunkBytes, Math.min(payload.length, (i + 1) * chunkBytes)));
+            }
+            // 先写分片再写清单，读到清单时分片一定已存在
+            redisCache.pipelineSetRaw(chunks, expire);
+            set(cacheKey, new ChunkedValue(chunkCount, size, compressed, version), expire);
+            // 记录当前版本，同时取出上一版本并删除其分片
+            byte[] previous = redisCache.getAndSetRaw(chunkIndexKey(cacheKey), chunkIndex(version, chunkCount), expire);
+            deleteChunks(cacheKey, previous);
+            stats.chunked.incrementAndGet();
+        } else {
+            if (compressed) {
+                set(cacheKey, new CompressedValue(payload), expire);
+            } else {
+                redisCache.setRaw(cacheKey, bytes, expire);
+            }
+            if (chunkBytes > 0) {
+                // 旧值可能是拆分存储的，删除其分片
+                deleteChunks(cacheKey);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 还原从二级缓存读到的value，压缩或拆分存储的value解压、组装后返回，分片缺失时视为未命中
+     */
+    public Object read(String cacheKey, Object value) {
+        if (value instanceof CompressedValue) {
+            return valueSerializer().deserialize(gunzip(((CompressedValue) value).getBytes()));
+        }
+        if (!(value instanceof ChunkedValue)) {
+            return value;
+        }
+        ChunkedValue chunkedValue = (ChunkedValue) value;
+        List<String> chunkKeys = chunkKeys(cacheKey, chunkedValue.getVersion(), chunkedValue.getChunkCount());
+        List<byte[]> chunks = redisCache.multiGetRaw(chunkKeys);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(chunkedValue.getTotalBytes());
+        for (byte[] chunk : chunks) {
+            if (chunk == null) {
+                logger.warn("cache value chunk is missing, treat as cache miss, key={}", cacheKey);
+                return null;
+            }
+            out.write(chunk, 0, chunk.length);
+        }
+        byte[] payload = out.toByteArray();
+        try {
+            return valueSerializer().deserialize(chunkedValue.isCompressed() ? gunzip(payload) : payload);
+        } catch (RuntimeException e) {
+            // 组装结果无法还原时视为未命中，由调用方重新加载
+            logger.warn("cache value chunks are broken, treat as cache miss, key={}", cacheKey, e);
+            return null;
+        }
+    }
+
+    /**
+     * 从二级缓存读到的value是否允许放入一级缓存
+     */
+    public boolean allowL1(Object value) {
+        int valueSkipL1Bytes = guardConfig.getValueSkipL1Bytes();
+        if (valueSkipL1Bytes <= 0) {
+            return true;
+        }
+        if (value instanceof ChunkedValue) {
+            return ((ChunkedValue) value).getTotalBytes() <= valueSkipL1Bytes;
+        }
+        // 压缩后的大小小于原始大小，压缩后仍超过阈值时原始大小一定超过
+        return !(value instanceof CompressedValue) || ((CompressedValue) value).getBytes().length <= valueSkipL1Bytes;
+    }
+
+    /**
+     * 写入时value序列化后的字节数是否允许放入一级缓存
+     */
+    public boolean allowL1(int size) {
+        return guardConfig.getValueSkipL1Bytes() <= 0 || size <= guardConfig.getValueSkipL1Bytes();
+    }
+
+    /**
+     * 删除key，拆分存储的value一并删除分片，只读取分片版本记录，不读取value本身
+     */
+    public void delete(String cacheKey) {
+        redisCache.delete(cacheKey);
+        if (guardConfig.getValueChunkBytes() > 0) {
+            deleteChunks(cacheKey);
+        }
+    }
+
+    /**
+     * 批量删除key，通过pipeline删除key、mget读取分片版本记录，再通过pipeline删除分片，网络往返次数与key数量无关
+     */
+    public void delete(List<String> cacheKeys) {
+        redisCache.pipelineDelete(cacheKeys);
+        List<String> staleKeys = chunkRelatedKeys(cacheKeys);
+        if (!staleKeys.isEmpty()) {
+            redisCache.pipelineDelete(staleKeys);
+        }
+    }
+
+    /**
+     * 拆分存储的key的分片版本记录及当前版本的分片，通过一次mget读取版本记录，供批量删除与滑动过期续期使用
+     *
+     * @return 未开启拆分时返回空集合，不读取版本记录
+     */
+    public List<String> chunkRelatedKeys(List<String> cacheKeys) {
+        if (guardConfig.getValueChunkBytes() <= 0 || cacheKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> chunkIndexKeys = new ArrayList<>(cacheKeys.size());
+        for (String cacheKey : cacheKeys) {
+            chunkIndexKeys.add(chunkIndexKey(cacheKey));
+        }
+        List<byte[]> indexes = redisCache.multiGetRaw(chunkIndexKeys);
+        List<String> relatedKeys = new ArrayList<>();
+        for (int i = 0; i < cacheKeys.size(); i++) {
+            byte[] index = indexes == null ? null : indexes.get(i);
+            if (index == null) {
+                continue;
+            }
+            relatedKeys.add(chunkIndexKeys.get(i));
+            try {
+                relatedKeys.addAll(chunkKeys(cacheKeys.get(i), index));
+            } catch (RuntimeException e) {
+                logger.warn("parse cache value chunk index failed, key={}, index={}", cacheKeys.get(i), new String(index, StandardCharsets.UTF_8), e);
+            }
+        }
+        return relatedKeys;
+    }
+
+    /**
+     * 按redis模板的value序列化方式序列化
+     */
+    public byte[] serialize(Object storeValue) {
+        return valueSerializer().serialize(storeValue);
+    }
+
+    /**
+     * 各cacheName的value大小统计
+     */
+    public Map<String, SizeStats> getStats() {
+        return Collections.unmodifiableMap(statsMap);
+    }
+
+    private SizeStats stats(String cacheName) {
+        return statsMap.computeIfAbsent(cacheName, name -> new SizeStats());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> valueSerializer() {
+        return (RedisSerializer<Object>) redisCache.getRedisTemplate().getValueSerializer();
+    }
+
+    private void set(String cacheKey, Object value, long expire) {
+        if (expire > 0) {
+            redisCache.set(cacheKey, value, expire);
+        } else {
+            redisCache.set(cacheKey, value);
+        }
+    }
+
+    /**
+     * 删除分片版本记录及其指向的分片
+     */
+    private void deleteChunks(String cacheKey) {
+        String chunkIndexKey = chunkIndexKey(cacheKey);
+        byte[] index = redisCache.getRaw(chunkIndexKey);
+        if (index != null) {
+            redisCache.delete(chunkIndexKey);
+            deleteChunks(cacheKey, index);
+        }
+    }
+
+    /**
+     * 删除分片版本记录指向的分片
+     *
+     * @param index 版本号:分片数，为null时不处理
+     */
+    private void deleteChunks(String cacheKey, byte[] index) {
+        if (index == null) {
+            return;
+        }
+        try {
+            redisCache.pipelineDelete(chunkKeys(cacheKey, index));
+        } catch (RuntimeException e) {
+            logger.warn("delete stale cache value chunks failed, key={}, index={}", cacheKey, new String(index, StandardCharsets.UTF_8), e);
+        }
+    }
+
+    /**
+     * @param index 分片版本记录，版本号:分片数
+     */
+    private static List<String> chunkKeys(String cacheKey, byte[] index) {
+        String indexValue = new String(index, StandardCharsets.UTF_8);
+        int separator = indexValue.lastIndexOf(':');
+        return chunkKeys(cacheKey, indexValue.substring(0, separator), Integer.parseInt(indexValue.substring(separator + 1)));
+    }
+
+    private static String chunkIndexKey(String cacheKey) {
+        return cacheKey + CHUNK_SUFFIX;
+    }
+
+    private static byte[] chunkIndex(String version, int chunkCount) {
+        return (version + ":" + chunkCount).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String chunkKey(String cacheKey, String version, int index) {
+        return cacheKey + CHUNK_SUFFIX + ":" + version + ":" + index;
+    }
+
+    private static List<String> chunkKeys(String cacheKey, String version, int chunkCount) {
+        List<String> chunkKeys = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            chunkKeys.add(chunkKey(cacheKey, version, i));
+        }
+        return chunkKeys;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzip.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 压缩存储的value
+     */
+    public static class CompressedValue implements Serializable {
+        private static final long serialVersionUID = -3407395870164532818L;
+
+        private final byte[] bytes;
+
+        public CompressedValue(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * 拆分存储的value清单，分片存放在 key#chunk:版本号:序号 中
+     */
+    public static class ChunkedValue implements Serializable {
+        private static final long serialVersionUID = 6151928410286436203L;
+
+        private final int chunkCount;
+
+        /** 序列化后（压缩前）的字节数 */
+        private final int totalBytes;
+
+        private final boolean compressed;
+
+        /** 分片版本号，每次写入唯一 */
+        private final String version;
+
+        public ChunkedValue(int chunkCount, int totalBytes, boolean compressed, String version) {
+            this.chunkCount = chunkCount;
+            this.totalBytes = totalBytes;
+            this.compressed = compressed;
+            this.version = version;
+        }
+
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        public int getTotalBytes() {
+            return totalBytes;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * 单个cacheName的value大小统计
+     */
+    public static class SizeStats {
+
+        private final AtomicLong writes = new AtomicLong();
+
+        private final AtomicLong totalBytes = new AtomicLong();
+
+        private final AtomicLong compressed = new AtomicLong();
+
+        private final AtomicLong chunked = new AtomicLong();
+
+        private final AtomicLong skipped = new AtomicLong();
+
+        /** 最大的若干个value，key -> 字节数 */
+        private final Map<String, Integer> largest = new LinkedHashMap<>();
+
+        private volatile int largestThreshold;
+
+        void record(String cacheKey, int size, int topValues) {
+            writes.incrementAndGet();
+            totalBytes.addAndGet(size);
+            if (topValues <= 0 || size <= largestThreshold) {
+                return;
+            }
+            synchronized (largest) {
+                largest.put(cacheKey, size);
+                if (largest.size() > topValues) {
+                    String smallestKey = Collections.min(largest.entrySet(), Map.Entry.comparingByValue()).getKey();
+                    largest.remove(smallestKey);
+                    largestThreshold = Collections.min(largest.values());
+                }
+            }
+        }
+
+        public long getWrites() {
+            return writes.get();
+        }
+
+        public long getAverageBytes() {
+            long count = writes.get();
+            return count == 0 ? 0 : totalBytes.get() / count;
+        }
+
+        public long getCompressed() {
+            return compressed.get();
+        }
+
+        public long getChunked() {
+            return chunked.get();
+        }
+
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * 按字节数从大到小排列的最大value
+         */
+        public List<Map.Entry<String, Integer>> getLargest() {
+            List<Map.Entry<String, Integer>> entries;
+            synchronized (largest) {
+                entries = new ArrayList<>(largest.entrySet().size());
+                for (Map.Entry<String, Integer> entry : largest.entrySet()) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+                }
+            }
+            entries.sort(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()));
+            return entries;
+        }
+    }
+}
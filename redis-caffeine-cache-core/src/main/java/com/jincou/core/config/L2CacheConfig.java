@@ -27,13 +27,34 @@ public class L2CacheConfig {
      */
     private boolean dynamic = true;
 
+    /**
+     * 动态创建的Cache实例上限，超过后不再动态创建（cacheNames中配置的不受限制），小于等于0表示不限制
+     * <p>
+     * 默认1000：未在cacheNames中配置的cacheName超过上限后getCache返回null，@Cacheable等注解会因找不到缓存而抛出异常；
+     * 此前不限制，任意cacheName都会创建。cacheName较多或由参数拼接时需在cacheNames中配置，或调大此值，设为0恢复不限制
+     */
+    private int maxDynamicCaches = 1000;
+
 
     private Set<String> cacheNames = new HashSet<>();
 
+    /**
+     * 每个cacheName的缓存类型，未配置的cacheName为一二级组合缓存
+     */
+    private Map<String, CacheMode> cacheModes = new HashMap<>();
+
 
     private final Composite composite = new Composite();
     private final Caffeine caffeine = new Caffeine();
     private final Redis redis = new Redis();
+    private final Listener listener = new Listener();
+    private final Guard guard = new Guard();
+    private final Admission admission = new Admission();
+    private final ReadBatch readBatch = new ReadBatch();
+    private final HotKey hotKey = new HotKey();
+    private final Bulkhead bulkhead = new Bulkhead();
+    private final Jfr jfr = new Jfr();
+    private final Partition partition = new Partition();
 
 
 
@@ -104,7 +125,7 @@ public class L2CacheConfig {
         /** 写入后过期时间，单位秒*/
         private long expireAfterWrite;
 
-        /** 写入后刷新时间，单位秒*/
+        /** 写入后刷新时间，单位秒，仅对注册了加载器的cacheName生效*/
         private long refreshAfterWrite;
 
         /** 初始化大小*/
@@ -112,6 +133,15 @@ public class L2CacheConfig {
 
         /** 最大缓存对象个数，超过此数量时之前放入的缓存将失效*/
         private long maximumSize;
+
+        /** 是否压缩一级缓存key，数值key及十进制整数字符串key统一转为Long存储，减少内存占用*/
+        private boolean compactKeys = true;
+
+        /** 是否记录一级缓存命中率、淘汰数等统计*/
+        private boolean recordStats = true;
+
+        /** 是否所有cacheName共用一个一级缓存实例，开启后maximumSize为所有cacheName合计的上限；注册了加载器的cacheName仍使用独立实例*/
+        private boolean sharedL1 = false;
     }
 
 
@@ -133,6 +163,447 @@ public class L2CacheConfig {
         /** 缓存更新时通知其他节点的topic名称*/
         private String topic = "cache:redis:caffeine:topic";
 
+        /**
+         * 缓存更新通知的传输方式：topic（pub/sub，默认）、stream（Redis Stream，断线重连后可补偿丢失的消息）
+         */
+        private String transport = "topic";
+
+        /** 使用stream传输时的stream名称*/
+        private String streamKey = "cache:redis:caffeine:stream";
+
+        /** stream保留的最大消息数，超过后旧消息被裁剪，节点断开期间丢失的消息超出此范围时整体清空一级缓存*/
+        private long streamMaxLen = 100000;
+
+        /** 读取stream时的阻塞等待时间，单位毫秒*/
+        private long streamBlockMillis = 2000;
+
+        /** 开启异步写(write-behind)的缓存名字集合，写入先落一级缓存，再合并后批量写入redis*/
+        private Set<String> writeBehindCacheNames = new HashSet<>();
+
+        /** 异步写的刷新间隔，单位毫秒*/
+        private long writeBehindFlushMillis = 100;
+
+        /** 异步写待刷新的key数量达到此值时立即触发刷新，同时也是单次pipeline的最大条数*/
+        private int writeBehindBatchSize = 500;
+
+        /** 异步写最多缓冲的key数量，达到后写入线程同步刷新，形成反压；刷新失败时新key改为同步写入redis，redis异常抛给写入方*/
+        private int writeBehindMaxPending = 10000;
+
+        /** 开启滑动过期的缓存名字集合，读取命中时延长二级缓存的过期时间（分片与标签一并续期，热点key副本不续期），需配置过期时间*/
+        private Set<String> slidingExpirationCacheNames = new HashSet<>();
+
+        /** 滑动过期的续期间隔，单位毫秒，同一个key每个间隔最多续期一次，超过过期时间一半时按一半计算*/
+        private long slidingRenewMillis = 5000;
+
+        /** 每个cacheName每个间隔最多记录的待续期key数量*/
+        private int slidingMaxPending = 100000;
+
+        /** 标签集合的key前缀，每个标签对应一个记录缓存key的redis set*/
+        private String tagKeyPrefix = "cache:tag:";
+
+        /** 标签集合的过期时间，单位毫秒，每次打标签时刷新，不短于缓存的过期时间，默认1天，小于等于0表示不过期；
+         * 删除缓存时会将key移出标签集合，过期时间用于清理自然过期的key，避免标签集合只增不减*/
+        private long tagExpiration = 24 * 60 * 60 * 1000L;
+
+        /** 命名redis实例，key为实例名称，用于将不同cacheName路由到独立的redis及连接池*/
+        private Map<String, Instance> instances = new HashMap<>();
+
+        /** cacheName使用的redis实例名称，未配置的cacheName使用默认的redis连接*/
+        private Map<String, String> cacheNameInstances = new HashMap<>();
+
+        /** 默认redis连接的二级缓存专用连接配置*/
+        private Connection connection = new Connection();
+
+        /**
+         * 二级缓存专用的lettuce连接配置
+         * <p>
+         * 开启后按spring.redis的地址为二级缓存单独创建读、写两个lettuce连接工厂，不受应用连接池大小限制：
+         * 写连接固定访问主节点，读连接按readFrom访问从节点，两者使用各自的超时时间
+         */
+        @Getter
+        @Setter
+        @Accessors(chain = true)
+        public static class Connection implements Config {
+
+            /** 是否开启二级缓存专用连接，默认false，使用应用的RedisConnectionFactory*/
+            private boolean enabled = false;
+
+            /** 是否所有线程共享一个原生连接（多路复用），关闭后每次操作从连接池获取独占连接*/
+            private boolean shareNativeConnection = true;
+
+            /** pipeline批量写入时每积累多少条命令刷新一次，小于等于1表示每条命令立即刷新*/
+            private int pipeliningFlushBatch = 0;
+
+            /** 读连接的节点选择，如upstream、upstreamPreferred、replica、replicaPreferred、nearest、any*/
+            private String readFrom = "upstream";
+
+            /** 读命令超时时间，单位毫秒*/
+            private long readTimeout = 500;
+
+            /** 写命令超时时间，单位毫秒*/
+            private long writeTimeout = 2000;
+
+            /** 每个cacheName的读策略，未配置的cacheName按readFrom读取*/
+            private Map<String, ReadPolicy> readPolicies = new HashMap<>();
+
+            /** 从节点复制偏移量落后主节点超过此字节数时，读取改为访问主节点，小于等于0表示不检查*/
+            private long maxReplicationLagBytes = 64 * 1024;
+
+            /** 检查复制偏移量的间隔，单位毫秒*/
+            private long replicationCheckMillis = 1000;
+
+            /** key被更新或清理后，此时间内的首次读取访问主节点，避免从节点尚未同步时把旧值放入一级缓存，单位毫秒，小于等于0表示不处理*/
+            private long primaryReadAfterInvalidationMillis = 1000;
+        }
+
+        /**
+         * 命名redis实例，每个实例使用独立的连接工厂和缓存更新通知topic
+         */
+        @Getter
+        @Setter
+        @Accessors(chain = true)
+        public static class Instance implements Config {
+
+            private String host = "localhost";
+
+            private int port = 6379;
+
+            private int database = 0;
+
+            private String password;
+
+            /** 命令超时时间，单位毫秒*/
+            private long timeout = 2000;
+
+            /** 该实例上缓存更新时通知其他节点的topic名称*/
+            private String topic = "cache:redis:caffeine:topic";
+        }
+    }
+
+    /**
+     * 缓存同步消息监听分发配置
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class Listener implements Config {
+
+        /**
+         * 分发线程数（分段数），同一个cacheName的消息固定落在同一分段内，保证按序处理
+         */
+        private int dispatchThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+        /**
+         * 每个分段的最大排队消息数，超过后直接清空该cacheName的一级缓存，保证失效延迟有界
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * 是否使用虚拟线程分发（仅JDK21及以上生效，低版本自动回退为平台线程）
+         */
+        private boolean virtualThreads = false;
+    }
+
+    /**
+     * 缓存key与value大小防护配置
+     * <p>
+     * 开启后value由组件自行序列化并统计大小，需保证value序列化器为默认的jdk序列化或可序列化任意对象的序列化器
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class Guard implements Config {
+
+        /** 是否开启大小防护，默认false*/
+        private boolean enabled = false;
+
+        /** 缓存key的最大字节数，超过时不缓存，小于等于0表示不限制*/
+        private int keyMaxBytes = 1024;
+
+        /** value序列化后超过此字节数时打印告警日志*/
+        private int valueWarnBytes = 100 * 1024;
+
+        /** value序列化后超过此字节数时gzip压缩后再写入redis，小于等于0表示不压缩*/
+        private int valueCompressBytes = 16 * 1024;
+
+        /** value序列化后超过此字节数时不放入一级缓存，小于等于0表示不限制*/
+        private int valueSkipL1Bytes = 1024 * 1024;
+
+        /** 写入redis的单个value超过此字节数时拆分为多个key存储，读取时通过mget重新组装，小于等于0表示不拆分*/
+        private int valueChunkBytes = 512 * 1024;
+
+        /** value序列化后超过此字节数时不写入redis，小于等于0表示不限制*/
+        private int valueSkipL2Bytes = 0;
+
+        /** 每个cacheName记录的最大value数量*/
+        private int topValues = 10;
     }
 
+    /**
+     * 缓存类型
+     */
+    public enum CacheMode {
+        /** 只使用一级缓存，缓存更新仍通知其他节点清理本地缓存*/
+        L1,
+        /** 只使用二级缓存*/
+        L2,
+        /** 一二级组合缓存，一级缓存是否开启由composite配置决定*/
+        COMPOSITE
+    }
+
+    /**
+     * 二级缓存读策略，只影响缓存查询，写入、删除、clear及pub/sub始终访问主节点
+     */
+    public enum ReadPolicy {
+        /** 只读主节点*/
+        PRIMARY,
+        /** 优先读从节点，从节点不可用时读主节点*/
+        REPLICA_PREFERRED,
+        /** 读延迟最低的节点*/
+        NEAREST
+    }
+
+    /**
+     * 加载器超过并发上限时的处理方式
+     */
+    public enum OverflowAction {
+        /** 排队等待，超过等待时间后拒绝*/
+        WAIT,
+        /** 返回该key最近一次加载的旧值，没有旧值时排队等待*/
+        STALE,
+        /** 立即拒绝*/
+        FAIL_FAST
+    }
+
+    /**
+     * 一级缓存准入配置
+     * <p>
+     * 开启后从二级缓存读到的值不再无条件放入一级缓存，只有窗口内访问次数达到阈值，
+     * 或反序列化的耗时（每字节，不含读取redis的网络耗时）超过阈值的key才放入，避免一次性访问的key挤掉热点数据
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class Admission implements Config {
+
+        /** 是否开启一级缓存准入，默认false*/
+        private boolean enabled = false;
+
+        /** 开启准入的cacheName，为空表示所有cacheName*/
+        private Set<String> cacheNames = new HashSet<>();
+
+        /** 窗口内访问次数达到此值时放入一级缓存*/
+        private int minFrequency = 2;
+
+        /** 访问频率统计窗口，单位毫秒，每个窗口结束时频率减半*/
+        private long windowMillis = 60000;
+
+        /** 反序列化每字节耗时超过此值（纳秒，不含网络耗时）时直接放入一级缓存，小于等于0表示不按耗时准入*/
+        private long costNanosPerByte = 100;
+
+        /** 是否根据一级缓存命中率自动调整准入阈值*/
+        private boolean adaptive = true;
+
+        /** 频率统计的计数器个数，取不小于此值的2的幂*/
+        private int sketchWidth = 8192;
+    }
+
+    /**
+     * 二级缓存读合并配置
+     * <p>
+     * 开启后一级缓存未命中的单key查询不再各自发送GET，窗口内不同线程的查询合并为一次MGET，
+     * 以微秒级的等待换取redis请求数的下降，适合大量独立@Cacheable调用的场景
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class ReadBatch implements Config {
+
+        /** 是否开启读合并，默认false*/
+        private boolean enabled = false;
+
+        /** 开启读合并的cacheName，为空表示所有cacheName*/
+        private Set<String> cacheNames = new HashSet<>();
+
+        /** 合并窗口，单位微秒，第一个查询到达后等待此时间再发送MGET*/
+        private long windowMicros = 200;
+
+        /** 每个cacheName的合并窗口，单位微秒，优先级比windowMicros高，小于等于0表示该cacheName不合并*/
+        private Map<String, Long> windows = new HashMap<>();
+
+        /** 单次MGET的最大key数量，窗口内达到此数量时立即发送*/
+        private int maxBatchSize = 64;
+    }
+
+    /**
+     * 二级缓存热点key副本配置
+     * <p>
+     * 热点key额外写入多个带后缀的副本，副本key的hash slot与原key不同，查询随机读取一个副本，
+     * 写入和删除通过pipeline同时作用于所有副本，使热点key的读压力分散到集群的多个分片
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class HotKey implements Config {
+
+        /** 是否开启热点key副本，默认false*/
+        private boolean enabled = false;
+
+        /** 每个热点key的副本数*/
+        private int replicas = 4;
+
+        /** 配置的热点key，格式为cacheName:key*/
+        private Set<String> keys = new HashSet<>();
+
+        /** 单个节点每秒读取redis达到此次数的key自动识别为热点key，小于等于0表示不自动识别*/
+        private long detectThreshold = 0;
+
+        /** 自动识别的热点key登记的有序集合，各节点定时读取，保证所有节点对同一个key写入副本*/
+        private String registryKey = "cache:redis:caffeine:hotkeys";
+
+        /** 自动识别的热点key的有效期，单位毫秒，期间仍为热点时续期*/
+        private long detectedExpiration = 60000;
+
+        /** 统计读取次数及同步热点key登记的间隔，单位毫秒*/
+        private long refreshMillis = 1000;
+
+        /** 副本的过期时间，单位毫秒，不超过原key的过期时间，限制未及时得知热点key的节点写入后副本的不一致时间*/
+        private long replicaExpiration = 10000;
+    }
+
+    /**
+     * 加载器隔离配置
+     * <p>
+     * 限制每个cacheName同时执行的加载器数量，redis被清空或缓存被clear后大量key同时未命中时，
+     * 避免所有加载同时打到数据库。上限可以固定，也可以根据加载耗时自适应调整：耗时超过无负载耗时的一定倍数时按比例下调，
+     * 否则每完成约一轮加载上调1
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class Bulkhead implements Config {
+
+        /** 是否开启加载器隔离，默认false*/
+        private boolean enabled = false;
+
+        /** 开启隔离的cacheName，为空表示所有cacheName*/
+        private Set<String> cacheNames = new HashSet<>();
+
+        /** 并发上限，开启自适应时为初始上限*/
+        private int maxConcurrency = 16;
+
+        /** 每个cacheName的并发上限，优先级比maxConcurrency高*/
+        private Map<String, Integer> limits = new HashMap<>();
+
+        /** 是否根据加载耗时自适应调整并发上限*/
+        private boolean adaptive = false;
+
+        /** 自适应调整的最小并发上限*/
+        private int minConcurrency = 1;
+
+        /** 自适应调整的最大并发上限*/
+        private int adaptiveMaxConcurrency = 64;
+
+        /** 加载耗时超过无负载耗时的此倍数时视为过载*/
+        private double latencyTolerance = 2.0;
+
+        /** 过载或加载失败时并发上限乘以此比例*/
+        private double backoffRatio = 0.9;
+
+        /** 超过并发上限时的处理方式，默认排队等待*/
+        private OverflowAction overflowAction = OverflowAction.WAIT;
+
+        /** 排队等待的最长时间，单位毫秒*/
+        private long waitMillis = 1000;
+
+        /** STALE方式下每个cacheName保留的旧值数量*/
+        private int staleMaxSize = 10000;
+    }
+
+    /**
+     * JFR事件配置
+     * <p>
+     * 事件只在JFR正在记录时提交，耗时未达到阈值的操作不提交，避免高频的一级缓存查询产生大量事件
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class Jfr implements Config {
+
+        /** 是否开启JFR事件，默认true，未启动JFR记录时几乎没有开销*/
+        private boolean enabled = true;
+
+        /** 一级缓存查询事件的阈值，单位微秒*/
+        private long l1LookupThresholdMicros = 100;
+
+        /** 二级缓存读取、写入事件的阈值，单位微秒*/
+        private long l2ThresholdMicros = 1000;
+
+        /** 加载器执行事件的阈值，单位微秒*/
+        private long loaderThresholdMicros = 0;
+
+        /** 等待同一个key的读取、加载或加载器许可事件的阈值，单位微秒*/
+        private long lockWaitThresholdMicros = 1000;
+
+        /** 收到缓存变更消息后清理一级缓存事件的阈值，单位微秒*/
+        private long invalidationThresholdMicros = 0;
+    }
+
+    /**
+     * 分区一级缓存配置
+     * <p>
+     * 开启后缓存key按一致性hash归属到集群中的一个节点，只有归属节点放入一级缓存，
+     * 其他节点通过节点间查询读取并只保留很小的近端缓存，集群整体的一级缓存容量随节点数增长。
+     * 节点通过redis心跳发现彼此，查询失败时直接读取redis
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class Partition implements Config {
+
+        /** 是否开启分区一级缓存，默认false*/
+        private boolean enabled = false;
+
+        /** 开启分区的cacheName，为空表示所有组合缓存，注册了加载器的cacheName不分区*/
+        private Set<String> cacheNames = new HashSet<>();
+
+        /** 其他节点访问当前节点使用的地址，为空时使用本机地址*/
+        private String host = "";
+
+        /** 节点间查询服务监听的地址，默认只监听回环地址，多台机器组成分区时需改为其他节点可访问的地址并配置secret*/
+        private String bindHost = "127.0.0.1";
+
+        /** 节点间查询的共享密钥，建立连接时以HMAC校验对方，为空时不校验，此时bindHost只能为回环地址*/
+        private String secret = "";
+
+        /** 节点间查询服务的端口，0表示随机端口*/
+        private int port = 0;
+
+        /** 登记成员的有序集合*/
+        private String membersKey = "cache:redis:caffeine:members";
+
+        /** 心跳间隔，单位毫秒*/
+        private long heartbeatMillis = 1000;
+
+        /** 超过此时间没有心跳的成员视为已离开，单位毫秒*/
+        private long memberTimeoutMillis = 5000;
+
+        /** 每个成员在hash环上的虚拟节点数*/
+        private int virtualNodes = 160;
+
+        /** 节点间查询的连接与读取超时，单位毫秒，超时后改为读取redis*/
+        private int fetchTimeoutMillis = 100;
+
+        /** 每个节点保留的空闲连接数*/
+        private int maxIdleConnections = 8;
+
+        /** 查询服务接受的最大连接数*/
+        private int maxServerConnections = 256;
+
+        /** 非归属节点的近端缓存最大数量*/
+        private long nearCacheSize = 1000;
+
+        /** 近端缓存写入后过期时间，单位毫秒*/
+        private long nearCacheExpireMillis = 1000;
+    }
 }
@@ -0,0 +1,26 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ *  缓存JFR事件的公共字段
+ *  <p>
+ *  事件在操作结束后才创建并提交，耗时记录在elapsed字段中，阈值由{@link CacheEvents}按配置过滤
+ */
+@Category({"Redis Caffeine Cache"})
+@StackTrace(false)
+abstract class CacheEvent extends Event {
+	@Label("Cache Name")
+	String cacheName;
+
+	@Label("Key Hash")
+	long keyHash;
+
+	@Label("Elapsed")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
@@ -0,0 +1,139 @@
+package com.jincou.core.jfr;
+
+import com.jincou.core.config.L2CacheConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  缓存操作的JFR事件
+ *  <p>
+ *  调用方在操作开始时取{@link #start()}，结束时传入对应方法，耗时达到配置的阈值且JFR正在记录该事件时才提交。
+ *  未开启或运行环境不包含jdk.jfr时start()返回0，之后的调用直接返回，开销只有一次判断。
+ *  事件只记录cacheName与key的hash，不记录key与value原文。
+ */
+public final class CacheEvents {
+
+	public static final String LOCK_LEVEL2_READ = "level2Read";
+
+	public static final String LOCK_VALUE_LOAD = "valueLoad";
+
+	public static final String LOCK_BULKHEAD = "bulkhead";
+
+	private static final boolean AVAILABLE = isJfrAvailable();
+
+	private static volatile boolean enabled = AVAILABLE;
+
+	private static volatile long l1LookupThresholdNanos = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private static volatile long l2ThresholdNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static volatile long loaderThresholdNanos = 0;
+
+	private static volatile long lockWaitThresholdNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static volatile long invalidationThresholdNanos = 0;
+
+	private CacheEvents() {
+	}
+
+	/**
+	 * 按配置设置开关与阈值，JFR事件属于整个JVM，存在多个CacheManager时以最后一次设置为准
+	 */
+	public static void configure(L2CacheConfig.Jfr config) {
+		enabled = AVAILABLE && config.isEnabled();
+		l1LookupThresholdNanos = TimeUnit.MICROSECONDS.toNanos(config.getL1LookupThresholdMicros());
+		l2ThresholdNanos = TimeUnit.MICROSECONDS.toNanos(config.getL2ThresholdMicros());
+		loaderThresholdNanos = TimeUnit.MICROSECONDS.toNanos(config.getLoaderThresholdMicros());
+		lockWaitThresholdNanos = TimeUnit.MICROSECONDS.toNanos(config.getLockWaitThresholdMicros());
+		invalidationThresholdNanos = TimeUnit.MICROSECONDS.toNanos(config.getInvalidationThresholdMicros());
+	}
+
+	/**
+	 * 操作开始时间，未开启时返回0
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	public static void l1Lookup(String cacheName, String cacheKey, boolean hit, long start) {
+		long elapsed = elapsed(start, l1LookupThresholdNanos);
+		if (elapsed >= 0) {
+			JfrEventWriter.l1Lookup(cacheName, cacheKey, hit, elapsed);
+		}
+	}
+
+	public static void l2Get(String cacheName, String cacheKey, boolean hit, int bytes, long start) {
+		long elapsed = elapsed(start, l2ThresholdNanos);
+		if (elapsed >= 0) {
+			JfrEventWriter.l2Get(cacheName, cacheKey, hit, bytes, elapsed);
+		}
+	}
+
+	public static void l2Set(String cacheName, String cacheKey, int bytes, long start) {
+		long elapsed = elapsed(start, l2ThresholdNanos);
+		if (elapsed >= 0) {
+			JfrEventWriter.l2Set(cacheName, cacheKey, bytes, elapsed);
+		}
+	}
+
+	/**
+	 * @param cacheKey 批量加载或异步刷新时为null
+	 */
+	public static void loader(String cacheName, String cacheKey, boolean success, long start) {
+		long elapsed = elapsed(start, loaderThresholdNanos);
+		if (elapsed >= 0) {
+			JfrEventWriter.loader(cacheName, cacheKey, success, elapsed);
+		}
+	}
+
+	/**
+	 * @param lock 等待的对象，取值为LOCK_开头的常量
+	 */
+	public static void lockWait(String cacheName, String cacheKey, String lock, long start) {
+		long elapsed = elapsed(start, lockWaitThresholdNanos);
+		if (elapsed >= 0) {
+			JfrEventWriter.lockWait(cacheName, cacheKey, lock, elapsed);
+		}
+	}
+
+	/**
+	 * @param local 是否为收到其他节点的清空消息后清空一级缓存
+	 */
+	public static void clear(String cacheName, boolean local, long start) {
+		long elapsed = elapsed(start, 0);
+		if (elapsed >= 0) {
+			JfrEventWriter.clear(cacheName, local, elapsed);
+		}
+	}
+
+	/**
+	 * @param cacheKey 按多个key清理时为null
+	 * @param keys     清理的key数量
+	 */
+	public static void invalidation(String cacheName, String cacheKey, int keys, long start) {
+		long elapsed = elapsed(start, invalidationThresholdNanos);
+		if (elapsed >= 0) {
+			JfrEventWriter.invalidation(cacheName, cacheKey, keys, elapsed);
+		}
+	}
+
+	/**
+	 * @return 耗时，未开启或未达到阈值时返回-1
+	 */
+	private static long elapsed(long start, long thresholdNanos) {
+		if (start == 0 || !enabled) {
+			return -1;
+		}
+		long elapsed = System.nanoTime() - start;
+		return elapsed >= thresholdNanos ? elapsed : -1;
+	}
+
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, CacheEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  清空事件
+ */
+@Name("com.jincou.cache.Clear")
+@Label("Clear")
+@Description("Clear of all keys of a cache name")
+class ClearEvent extends CacheEvent {
+
+	@Label("Local")
+	@Description("Local clear on receipt of a clear message from another node")
+	boolean local;
+}
@@ -0,0 +1,17 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  收到缓存变更消息后清理一级缓存的事件
+ */
+@Name("com.jincou.cache.Invalidation")
+@Label("Invalidation")
+@Description("Local invalidation on receipt of a cache message")
+class InvalidationEvent extends CacheEvent {
+
+	@Label("Keys")
+	int keys;
+}
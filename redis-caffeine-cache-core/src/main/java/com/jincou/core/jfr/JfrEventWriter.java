@@ -0,0 +1,102 @@
+package com.jincou.core.jfr;
+
+/**
+ *  创建并提交JFR事件，只在运行环境包含jdk.jfr时由{@link CacheEvents}调用，避免在不支持JFR的JVM上加载事件类
+ */
+final class JfrEventWriter {
+
+	private JfrEventWriter() {
+	}
+
+	static void l1Lookup(String cacheName, String cacheKey, boolean hit, long elapsed) {
+		L1LookupEvent event = new L1LookupEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		fill(event, cacheName, cacheKey, elapsed);
+		event.hit = hit;
+		event.commit();
+	}
+
+	static void l2Get(String cacheName, String cacheKey, boolean hit, int bytes, long elapsed) {
+		L2GetEvent event = new L2GetEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		fill(event, cacheName, cacheKey, elapsed);
+		event.hit = hit;
+		event.bytes = bytes;
+		event.commit();
+	}
+
+	static void l2Set(String cacheName, String cacheKey, int bytes, long elapsed) {
+		L2SetEvent event = new L2SetEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		fill(event, cacheName, cacheKey, elapsed);
+		event.bytes = bytes;
+		event.commit();
+	}
+
+	static void loader(String cacheName, String cacheKey, boolean success, long elapsed) {
+		LoaderEvent event = new LoaderEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		fill(event, cacheName, cacheKey, elapsed);
+		event.success = success;
+		event.commit();
+	}
+
+	static void lockWait(String cacheName, String cacheKey, String lock, long elapsed) {
+		LockWaitEvent event = new LockWaitEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		fill(event, cacheName, cacheKey, elapsed);
+		event.lock = lock;
+		event.commit();
+	}
+
+	static void clear(String cacheName, boolean local, long elapsed) {
+		ClearEvent event = new ClearEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		fill(event, cacheName, null, elapsed);
+		event.local = local;
+		event.commit();
+	}
+
+	static void invalidation(String cacheName, String cacheKey, int keys, long elapsed) {
+		InvalidationEvent event = new InvalidationEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		fill(event, cacheName, cacheKey, elapsed);
+		event.keys = keys;
+		event.commit();
+	}
+
+	private static void fill(CacheEvent event, String cacheName, String cacheKey, long elapsed) {
+		event.cacheName = cacheName;
+		event.keyHash = hash(cacheKey);
+		event.elapsed = elapsed;
+	}
+
+	/**
+	 * 64位FNV-1a，事件中不记录key原文，只记录hash用于关联同一个key的多个事件
+	 */
+	private static long hash(String cacheKey) {
+		if (cacheKey == null) {
+			return 0;
+		}
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < cacheKey.length(); i++) {
+			hash ^= cacheKey.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,17 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  一级缓存查询事件
+ */
+@Name("com.jincou.cache.L1Lookup")
+@Label("L1 Lookup")
+@Description("Caffeine lookup of a cache key")
+class L1LookupEvent extends CacheEvent {
+
+	@Label("Hit")
+	boolean hit;
+}
@@ -0,0 +1,22 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  二级缓存读取事件
+ */
+@Name("com.jincou.cache.L2Get")
+@Label("L2 Get")
+@Description("Redis GET of a cache key, including deserialization")
+class L2GetEvent extends CacheEvent {
+
+	@Label("Hit")
+	boolean hit;
+
+	@Label("Payload")
+	@DataAmount
+	long bytes;
+}
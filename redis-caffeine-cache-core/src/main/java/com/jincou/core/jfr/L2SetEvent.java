@@ -0,0 +1,19 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  二级缓存写入事件
+ */
+@Name("com.jincou.cache.L2Set")
+@Label("L2 Set")
+@Description("Redis SET of a cache key, including serialization")
+class L2SetEvent extends CacheEvent {
+
+	@Label("Payload")
+	@DataAmount
+	long bytes;
+}
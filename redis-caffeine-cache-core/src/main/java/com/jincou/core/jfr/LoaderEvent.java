@@ -0,0 +1,17 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  加载器执行事件
+ */
+@Name("com.jincou.cache.Loader")
+@Label("Loader")
+@Description("Value loader execution on cache miss")
+class LoaderEvent extends CacheEvent {
+
+	@Label("Success")
+	boolean success;
+}
@@ -0,0 +1,17 @@
+package com.jincou.core.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  等待事件，等待同一个key正在进行的读取、加载或加载器许可
+ */
+@Name("com.jincou.cache.LockWait")
+@Label("Lock Wait")
+@Description("Wait for an in-flight read or load of the same key, or for a loader permit")
+class LockWaitEvent extends CacheEvent {
+
+	@Label("Lock")
+	String lock;
+}
@@ -0,0 +1,168 @@
+package com.jincou.core.spring;
+
+/**
+ *  缓存key编码
+ *  <p>
+ *  二级缓存key：cacheName前缀只拼接一次并复用，每次缓存操作只构建一次 cacheName:key；
+ *  该String同时用于读取合并、异步写缓冲、热点副本与失效消息，并且需经过模板配置的key序列化器，
+ *  因此不预编码前缀字节绕过序列化器直接写入，String key与SimpleKey仍按toString拼接，保证与已有redis key兼容；
+ *  一级缓存key：数值型key及十进制整数字符串统一转为Long存储，同一个redis key在一级缓存中只对应一个条目，
+ *  并且toString结果与原key一致，按redis key匹配清理时不受影响；
+ *  多个cacheName共用一个一级缓存实例时，一级缓存key为cacheName与key组成的复合key。
+ */
+public class CacheKeyEncoder {
+
+	/**
+	 * cacheName:
+	 */
+	private final String prefix;
+
+	/**
+	 * 是否压缩一级缓存key，注册了加载器的缓存需保留原始key传给加载器，不压缩
+	 */
+	private final boolean compactL1Key;
+
+	/**
+	 * 是否与其他cacheName共用一级缓存实例
+	 */
+	private final boolean sharedL1;
+
+	private final String cacheName;
+
+	public CacheKeyEncoder(String cacheName, boolean compactL1Key) {
+		this(cacheName, compactL1Key, false);
+	}
+
+	public CacheKeyEncoder(String cacheName, boolean compactL1Key, boolean sharedL1) {
+		this.cacheName = cacheName.intern();
+		this.prefix = cacheName.concat(":");
+		this.compactL1Key = compactL1Key;
+		this.sharedL1 = sharedL1;
+	}
+
+	/**
+	 * redis中的缓存key
+	 */
+	public String toL2Key(Object key) {
+		return prefix.concat(key.toString());
+	}
+
+	/**
+	 * 还原redis key中的业务key，只能还原为字符串
+	 */
+	public String fromL2Key(String cacheKey) {
+		if (!cacheKey.startsWith(prefix)) {
+			throw new IllegalArgumentException("the cache key does not belong to cache " + cacheName + " : " + cacheKey);
+		}
+		return cacheKey.substring(prefix.length());
+	}
+
+	/**
+	 * 一级缓存中的key
+	 */
+	public Object toL1Key(Object key) {
+		Object l1Key = compact(key);
+		return sharedL1 ? new SharedKey(cacheName, l1Key) : l1Key;
+	}
+
+	/**
+	 * 一级缓存中的key是否属于当前cacheName，未共用一级缓存实例时恒为true
+	 */
+	public boolean owns(Object l1Key) {
+		return !sharedL1 || (l1Key instanceof SharedKey && ((SharedKey) l1Key).cacheName == cacheName);
+	}
+
+	/**
+	 * 还原一级缓存key中的业务key（压缩后的key与原key的toString一致）
+	 */
+	public Object fromL1Key(Object l1Key) {
+		return l1Key instanceof SharedKey ? ((SharedKey) l1Key).key : l1Key;
+	}
+
+	public boolean isSharedL1() {
+		return sharedL1;
+	}
+
+	private Object compact(Object key) {
+		if (!compactL1Key || key == null || key instanceof Long) {
+			return key;
+		}
+		if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+			return ((Number) key).longValue();
+		}
+		if (key instanceof String) {
+			Long longKey = parseCanonicalLong((String) key);
+			return longKey == null ? key : longKey;
+		}
+		return key;
+	}
+
+	/**
+	 * 解析规范的十进制整数字符串（无前导0、无+号），转换后toString与原字符串一致，否则返回null
+	 */
+	static Long parseCanonicalLong(String value) {
+		int length = value.length();
+		if (length == 0 || length > 20) {
+			return null;
+		}
+		int start = value.charAt(0) == '-' ? 1 : 0;
+		if (start == length || (value.charAt(start) == '0' && (length - start > 1 || start == 1))) {
+			return null;
+		}
+		for (int i = start; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return null;
+			}
+		}
+		if (length - start < 19) {
+			return Long.parseLong(value);
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 共用一级缓存实例时的复合key，cacheName已intern，比较时使用引用相等
+	 */
+	static final class SharedKey {
+
+		private final String cacheName;
+
+		private final Object key;
+
+		SharedKey(String cacheName, Object key) {
+			this.cacheName = cacheName;
+			this.key = key;
+		}
+
+		String getCacheName() {
+			return cacheName;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof SharedKey)) {
+				return false;
+			}
+			SharedKey other = (SharedKey) o;
+			return cacheName == other.cacheName && key.equals(other.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * cacheName.hashCode() + key.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return cacheName + ":" + key;
+		}
+	}
+}
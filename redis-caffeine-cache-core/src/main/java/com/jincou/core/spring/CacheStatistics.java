@@ -0,0 +1,103 @@
+package com.jincou.core.spring;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ *  单个cacheName的缓存统计
+ */
+@Data
+public class CacheStatistics {
+
+    /** 缓存名称 */
+    private String cacheName;
+
+    /** 缓存类型 */
+    private String cacheMode;
+
+    /** 一级缓存条目数 */
+    private long l1Size;
+
+    /** 按抽样条目序列化后的平均大小估算的一级缓存字节数，无法估算时为-1 */
+    private long l1EstimatedBytes;
+
+    /** 一级缓存命中率 */
+    private double l1HitRatio;
+
+    private long l1HitCount;
+
+    private long l1MissCount;
+
+    /** 一级缓存淘汰数 */
+    private long l1EvictionCount;
+
+    /** 通过SCAN统计的二级缓存key数量，未统计、统计失败或只使用一级缓存时为-1 */
+    private long l2KeyCount;
+
+    /** 二级缓存key数量是否达到统计上限，为true时实际数量更多 */
+    private boolean l2KeyCountTruncated;
+
+    /** 最近一分钟平均每秒收到的一级缓存清理次数 */
+    private double invalidationsPerSecond;
+
+    /** 一级缓存中的热点key，按访问频率从高到低 */
+    private List<String> hotKeys;
+
+    /** 异步写积压的key数量，未开启异步写时为null */
+    private Integer writeBehindPending;
+
+    /** 异步写缓冲区已满、刷新失败后改为同步写入的次数，未开启异步写时为null */
+    private Long writeBehindWriteThroughCount;
+
+    /** 滑动过期续期的key数量，未开启滑动过期时为null */
+    private Long slidingRenewedCount;
+
+    /** 分区一级缓存的成员数，未开启分区时为null，下同 */
+    private Integer partitionMembers;
+
+    /** 近端缓存的key数量 */
+    private Long nearCacheSize;
+
+    /** 节点间查询次数 */
+    private Long peerFetchCount;
+
+    /** 节点间查询失败改为读取redis的次数 */
+    private Long peerFetchFailedCount;
+
+    /** 加载器当前并发上限，未开启加载器隔离时为null，下同 */
+    private Integer loaderLimit;
+
+    /** 正在执行的加载器数量 */
+    private Integer loaderInFlight;
+
+    /** 正在排队等待的加载数量 */
+    private Integer loaderWaiting;
+
+    /** 排队等待过的加载次数 */
+    private Long loaderQueuedCount;
+
+    /** 平均排队时间(微秒) */
+    private Double loaderAverageQueueMicros;
+
+    /** 超过并发上限被拒绝的加载次数 */
+    private Long loaderRejectedCount;
+
+    /** 超过并发上限时返回旧值的次数 */
+    private Long loaderStaleCount;
+
+    /** 通过一级缓存准入的次数，未开启准入时为null */
+    private Long admittedCount;
+
+    /** 未通过一级缓存准入的次数，未开启准入时为null */
+    private Long rejectedCount;
+
+    /** 读合并发送的MGET次数，未开启读合并时为null */
+    private Long readBatchCount;
+
+    /** 读合并平均每次MGET的key数量，未开启读合并时为null */
+    private Double readBatchAverageSize;
+
+    /** 读合并平均每批等待的时间(微秒)，未开启读合并时为null */
+    private Double readBatchAverageWaitMicros;
+}
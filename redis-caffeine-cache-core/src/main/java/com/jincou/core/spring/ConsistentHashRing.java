@@ -0,0 +1,66 @@
+package com.jincou.core.spring;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ *  一致性hash环
+ *  <p>
+ *  每个成员在环上放置多个虚拟节点，key归属顺时针方向的第一个虚拟节点对应的成员。
+ *  成员增减时只有相邻区间的key改变归属。构建后不可变，成员变化时整体替换。
+ */
+final class ConsistentHashRing {
+
+	private final TreeMap<Long, String> ring = new TreeMap<>();
+
+	private final List<String> members;
+
+	ConsistentHashRing(Collection<String> members, int virtualNodes) {
+		List<String> sorted = new ArrayList<>(members);
+		Collections.sort(sorted);
+		this.members = Collections.unmodifiableList(sorted);
+		int replicas = Math.max(1, virtualNodes);
+		for (String member : sorted) {
+			for (int i = 0; i < replicas; i++) {
+				ring.put(hash(member + "#" + i), member);
+			}
+		}
+	}
+
+	/**
+	 * key归属的成员，环为空时返回null
+	 */
+	String ownerOf(String key) {
+		if (ring.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+		return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+	}
+
+	List<String> getMembers() {
+		return members;
+	}
+
+	/**
+	 * 64位FNV-1a，再经过murmur3的fmix64打散，避免相近的字符串落在环上相邻的位置
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
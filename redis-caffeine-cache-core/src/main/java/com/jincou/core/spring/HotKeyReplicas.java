@@ -0,0 +1,175 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  二级缓存热点key副本
+ *  <p>
+ *  热点key来自配置或自动识别：各节点统计每个key读取redis的次数，超过阈值的key登记到redis有序集合（分数为过期时间），
+ *  所有节点定时读取登记，写入与删除原key时同步处理副本；写入节点尚未读到最新登记时只更新原key，副本最长在replicaExpiration后过期。
+ *  副本key为原key加#r序号后缀，原key中包含{hashtag}时副本与原key落在同一个slot，无法分散。
+ */
+public class HotKeyReplicas implements Runnable {
+
+	private final Logger logger = LoggerFactory.getLogger(HotKeyReplicas.class);
+
+	private static final String REPLICA_SUFFIX = "#r";
+
+	/**
+	 * 单个统计周期最多统计的key数量，超过后新的key不再统计
+	 */
+	private static final int MAX_TRACKED_KEYS = 10000;
+
+	private final L2CacheConfig.HotKey hotKeyConfig;
+
+	/**
+	 * 登记自动识别热点key的redis
+	 */
+	private final RedisCache registry;
+
+	private final Set<String> configuredKeys;
+
+	/**
+	 * 各节点登记的自动识别热点key，定时整体替换
+	 */
+	private volatile Set<String> detectedKeys = Collections.emptySet();
+
+	/**
+	 * 当前统计周期内各key读取redis的次数
+	 */
+	private volatile ConcurrentMap<String, LongAdder> readCounts = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService scheduler;
+
+	public HotKeyReplicas(L2CacheConfig.HotKey hotKeyConfig, RedisCache registry) {
+		this.hotKeyConfig = hotKeyConfig;
+		this.registry = registry;
+		this.configuredKeys = new HashSet<>(hotKeyConfig.getKeys());
+	}
+
+	/**
+	 * 开启自动识别时定时统计并同步登记
+	 */
+	void start() {
+		if (hotKeyConfig.getDetectThreshold() <= 0) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "l2cache-hot-key");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long refreshMillis = Math.max(100, hotKeyConfig.getRefreshMillis());
+		scheduler.scheduleWithFixedDelay(this, 0, refreshMillis, TimeUnit.MILLISECONDS);
+	}
+
+	void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	public boolean isHot(String cacheKey) {
+		return configuredKeys.contains(cacheKey) || detectedKeys.contains(cacheKey);
+	}
+
+	/**
+	 * 记录一次redis读取，用于自动识别热点key
+	 */
+	void recordRead(String cacheKey) {
+		if (scheduler == null) {
+			return;
+		}
+		ConcurrentMap<String, LongAdder> counts = readCounts;
+		LongAdder count = counts.get(cacheKey);
+		if (count == null) {
+			if (counts.size() >= MAX_TRACKED_KEYS) {
+				return;
+			}
+			count = counts.computeIfAbsent(cacheKey, key -> new LongAdder());
+		}
+		count.increment();
+	}
+
+	/**
+	 * 所有副本key
+	 */
+	List<String> replicaKeys(String cacheKey) {
+		int replicas = Math.max(1, hotKeyConfig.getReplicas());
+		List<String> replicaKeys = new ArrayList<>(replicas);
+		for (int i = 0; i < replicas; i++) {
+			replicaKeys.add(cacheKey.concat(REPLICA_SUFFIX) + i);
+		}
+		return replicaKeys;
+	}
+
+	/**
+	 * 随机选择一个副本key读取
+	 */
+	String randomReplicaKey(String cacheKey) {
+		return cacheKey.concat(REPLICA_SUFFIX) + ThreadLocalRandom.current().nextInt(Math.max(1, hotKeyConfig.getReplicas()));
+	}
+
+	/**
+	 * 副本的过期时间，不超过原key的过期时间
+	 *
+	 * @param expire 原key的过期时间，小于等于0表示不过期
+	 */
+	long replicaExpire(long expire) {
+		long replicaExpiration = hotKeyConfig.getReplicaExpiration();
+		return expire > 0 && expire < replicaExpiration ? expire : replicaExpiration;
+	}
+
+	public Set<String> getHotKeys() {
+		Set<String> hotKeys = new HashSet<>(configuredKeys);
+		hotKeys.addAll(detectedKeys);
+		return hotKeys;
+	}
+
+	@Override
+	public void run() {
+		try {
+			ConcurrentMap<String, LongAdder> counts = readCounts;
+			readCounts = new ConcurrentHashMap<>();
+			long now = System.currentTimeMillis();
+			long refreshMillis = Math.max(100, hotKeyConfig.getRefreshMillis());
+			long threshold = Math.max(1, hotKeyConfig.getDetectThreshold() * refreshMillis / 1000);
+			for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+				if (entry.getValue().sum() >= threshold && !configuredKeys.contains(entry.getKey())) {
+					if (!detectedKeys.contains(entry.getKey())) {
+						logger.info("detect hot key, the cache key is : {}, reads={}", entry.getKey(), entry.getValue().sum());
+					}
+					registry.zsetAdd(hotKeyConfig.getRegistryKey(), entry.getKey(), now + hotKeyConfig.getDetectedExpiration());
+				}
+			}
+			registry.zsetRemoveRangeByScore(hotKeyConfig.getRegistryKey(), 0, now);
+			Set<?> members = registry.zsetRangeByScore(hotKeyConfig.getRegistryKey(), now, Double.MAX_VALUE);
+			Set<String> keys = new HashSet<>();
+			if (members != null) {
+				for (Object member : members) {
+					keys.add(member.toString());
+				}
+			}
+			detectedKeys = keys;
+		} catch (Exception e) {
+			logger.warn("refresh hot keys failed", e);
+		}
+	}
+}
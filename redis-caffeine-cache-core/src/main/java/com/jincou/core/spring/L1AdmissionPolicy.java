@@ -0,0 +1,222 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.config.L2CacheConfig;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  一级缓存准入策略
+ *  <p>
+ *  用count-min sketch统计key在窗口内的访问次数，每个窗口结束时计数减半；
+ *  从二级缓存读到的值只有访问次数达到阈值，或反序列化耗时（每字节）超过阈值时才放入一级缓存，
+ *  耗时不含网络往返，否则一次redis往返就足以让大多数小value绕过频率过滤。
+ *  开启自适应时，每个窗口结束根据一级缓存命中率的变化调整阈值（爬山法）：
+ *  命中率下降则反转调整方向，命中率上升则沿原方向继续调整。
+ */
+public class L1AdmissionPolicy {
+
+	private static final int DEPTH = 4;
+
+	private static final int MAX_FREQUENCY = 15;
+
+	private static final long MIN_COST_NANOS_PER_BYTE = 1;
+
+	private static final long MAX_COST_NANOS_PER_BYTE = 100000;
+
+	/** 窗口内访问次数少于此值时不调整阈值，样本太少命中率没有参考意义*/
+	private static final long MIN_TUNE_SAMPLES = 100;
+
+	private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+	private final L2CacheConfig.Admission admissionConfig;
+
+	private final AtomicIntegerArray table;
+
+	private final int mask;
+
+	private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+
+	private final AtomicBoolean rolling = new AtomicBoolean();
+
+	private final AtomicLong windowHits = new AtomicLong();
+
+	private final AtomicLong windowMisses = new AtomicLong();
+
+	private final AtomicLong admitted = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private volatile int minFrequency;
+
+	private volatile long costNanosPerByte;
+
+	private volatile double hitRate = -1;
+
+	/** 调整方向，1表示提高阈值（更严格），-1表示降低阈值*/
+	private int direction = 1;
+
+	public L1AdmissionPolicy(L2CacheConfig.Admission admissionConfig) {
+		this.admissionConfig = admissionConfig;
+		int width = Integer.highestOneBit(Math.max(64, admissionConfig.getSketchWidth() - 1)) << 1;
+		this.table = new AtomicIntegerArray(width);
+		this.mask = width - 1;
+		this.minFrequency = Math.max(1, Math.min(MAX_FREQUENCY, admissionConfig.getMinFrequency()));
+		this.costNanosPerByte = admissionConfig.getCostNanosPerByte();
+	}
+
+	/**
+	 * 记录一次一级缓存命中
+	 *
+	 * @param cacheKey redis中的缓存key
+	 */
+	public void recordHit(String cacheKey) {
+		increment(cacheKey);
+		windowHits.incrementAndGet();
+		rollWindowIfNecessary();
+	}
+
+	/**
+	 * 记录一次一级缓存未命中
+	 *
+	 * @param cacheKey redis中的缓存key
+	 */
+	public void recordMiss(String cacheKey) {
+		increment(cacheKey);
+		windowMisses.incrementAndGet();
+		rollWindowIfNecessary();
+	}
+
+	/**
+	 * 从二级缓存读到的值是否放入一级缓存
+	 *
+	 * @param cacheKey  redis中的缓存key
+	 * @param costNanos 反序列化的耗时，不含读取redis的网络耗时，未知时传0
+	 * @param bytes     value序列化后的字节数，未知时传0
+	 */
+	public boolean admit(String cacheKey, long costNanos, int bytes) {
+		long threshold = costNanosPerByte;
+		if (frequency(cacheKey) >= minFrequency
+				|| (threshold > 0 && bytes > 0 && costNanos / bytes >= threshold)) {
+			admitted.incrementAndGet();
+			return true;
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	public int getMinFrequency() {
+		return minFrequency;
+	}
+
+	public long getCostNanosPerByte() {
+		return costNanosPerByte;
+	}
+
+	/**
+	 * 上一个窗口的一级缓存命中率，尚未结束任何窗口时为-1
+	 */
+	public double getHitRate() {
+		return hitRate;
+	}
+
+	public long getAdmittedCount() {
+		return admitted.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	int frequency(String cacheKey) {
+		return frequency(spread(cacheKey.hashCode()));
+	}
+
+	private int frequency(int hash) {
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			frequency = Math.min(frequency, table.get(indexOf(hash, i)));
+		}
+		return frequency;
+	}
+
+	/**
+	 * 只增加各行中最小的计数（conservative update），降低哈希冲突带来的高估；
+	 * 每次一级缓存访问都会调用，行下标重新计算而不缓存到数组，避免分配
+	 */
+	private void increment(String cacheKey) {
+		int hash = spread(cacheKey.hashCode());
+		int min = frequency(hash);
+		if (min >= MAX_FREQUENCY) {
+			return;
+		}
+		for (int i = 0; i < DEPTH; i++) {
+			int index = indexOf(hash, i);
+			int current = table.get(index);
+			if (current == min) {
+				table.compareAndSet(index, current, current + 1);
+			}
+		}
+	}
+
+	private void rollWindowIfNecessary() {
+		long start = windowStart.get();
+		long now = System.currentTimeMillis();
+		if (now - start < admissionConfig.getWindowMillis() || !rolling.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			if (!windowStart.compareAndSet(start, now)) {
+				return;
+			}
+			age();
+			long hits = windowHits.getAndSet(0);
+			long misses = windowMisses.getAndSet(0);
+			if (admissionConfig.isAdaptive()) {
+				tune(hits, misses);
+			}
+		} finally {
+			rolling.set(false);
+		}
+	}
+
+	/**
+	 * 所有计数减半，使频率只反映最近的窗口
+	 */
+	private void age() {
+		for (int i = 0; i < table.length(); i++) {
+			table.set(i, table.get(i) >>> 1);
+		}
+	}
+
+	private void tune(long hits, long misses) {
+		long total = hits + misses;
+		if (total < MIN_TUNE_SAMPLES) {
+			return;
+		}
+		double current = (double) hits / total;
+		if (hitRate >= 0 && current < hitRate) {
+			direction = -direction;
+		}
+		hitRate = current;
+		minFrequency = Math.max(1, Math.min(MAX_FREQUENCY, minFrequency + direction));
+		long threshold = costNanosPerByte;
+		if (threshold > 0) {
+			threshold = direction > 0 ? threshold << 1 : threshold >>> 1;
+			costNanosPerByte = Math.max(MIN_COST_NANOS_PER_BYTE, Math.min(MAX_COST_NANOS_PER_BYTE, threshold));
+		}
+	}
+
+	private int indexOf(int hash, int row) {
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h += h >>> 32;
+		return (int) h & mask;
+	}
+
+	private static int spread(int hash) {
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		return (hash >>> 16) ^ hash;
+	}
+}
@@ -0,0 +1,103 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.config.L2CacheConfig;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *  一级缓存路由
+ *  <p>
+ *  将组合缓存配置复制为不可变快照，查询时无锁读取，运行时调整开关时整体原子替换，
+ *  避免并发读取可变的HashSet以及开关调整过程中读到半更新的配置。
+ */
+public class L1CacheRouting {
+
+	private final AtomicReference<Snapshot> snapshot;
+
+	public L1CacheRouting(L2CacheConfig.Composite composite) {
+		this.snapshot = new AtomicReference<>(new Snapshot(composite));
+	}
+
+	/**
+	 * 查询是否开启一级缓存
+	 *
+	 * @param cacheName 缓存名称
+	 * @param cacheKey  redis中的缓存key，即 cacheName:key
+	 */
+	public boolean isL1Open(String cacheName, String cacheKey) {
+		Snapshot current = snapshot.get();
+		return current.isL1Open(cacheName) || current.isL1OpenByKey(cacheKey);
+	}
+
+	/**
+	 * cacheName维度是否开启一级缓存
+	 */
+	public boolean isL1Open(String cacheName) {
+		return snapshot.get().isL1Open(cacheName);
+	}
+
+	public Snapshot getSnapshot() {
+		return snapshot.get();
+	}
+
+	/**
+	 * 原子替换路由配置
+	 *
+	 * @return 替换前的快照
+	 */
+	public Snapshot update(L2CacheConfig.Composite composite) {
+		return snapshot.getAndSet(new Snapshot(composite));
+	}
+
+	/**
+	 * 路由配置快照，创建后不再变化
+	 */
+	public static final class Snapshot {
+
+		private final boolean l1AllOpen;
+
+		private final boolean l1Manual;
+
+		private final Set<String> l1ManualKeySet;
+
+		private final Set<String> l1ManualCacheNameSet;
+
+		Snapshot(L2CacheConfig.Composite composite) {
+			this.l1AllOpen = composite.isL1AllOpen();
+			this.l1Manual = composite.isL1Manual();
+			this.l1ManualKeySet = copy(composite.getL1ManualKeySet());
+			this.l1ManualCacheNameSet = copy(composite.getL1ManualCacheNameSet());
+		}
+
+		public boolean isL1Open(String cacheName) {
+			return l1AllOpen || (l1Manual && l1ManualCacheNameSet.contains(cacheName));
+		}
+
+		public boolean isL1OpenByKey(String cacheKey) {
+			return l1Manual && l1ManualKeySet.contains(cacheKey);
+		}
+
+		public boolean isL1AllOpen() {
+			return l1AllOpen;
+		}
+
+		public boolean isL1Manual() {
+			return l1Manual;
+		}
+
+		public Set<String> getL1ManualKeySet() {
+			return l1ManualKeySet;
+		}
+
+		public Set<String> getL1ManualCacheNameSet() {
+			return l1ManualCacheNameSet;
+		}
+
+		private static Set<String> copy(Set<String> set) {
+			return set == null || set.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(set));
+		}
+	}
+}
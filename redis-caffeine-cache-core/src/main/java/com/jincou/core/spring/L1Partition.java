@@ -0,0 +1,181 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ *  分区一级缓存
+ *  <p>
+ *  各节点定时把自己的地址和心跳时间写入redis有序集合（分数为心跳时间），并读取心跳未超时的成员构建一致性hash环，
+ *  每个缓存key只由环上归属的节点放入一级缓存，其他节点通过节点间查询从归属节点读取，只在本地保留很小的近端缓存。
+ *  集群整体的一级缓存容量随节点数增长，新节点加入时只接管一部分key。
+ *  各节点看到的成员短时间内可能不一致，此时同一个key可能被两个节点放入一级缓存，缓存变更仍广播到所有节点，不会读到旧值。
+ */
+public class L1Partition implements Runnable {
+
+	private final Logger logger = LoggerFactory.getLogger(L1Partition.class);
+
+	private final L2CacheConfig.Partition config;
+
+	/**
+	 * 登记成员的redis
+	 */
+	private final RedisCache registry;
+
+	private final BiFunction<String, String, byte[]> handler;
+
+	private PeerFetchServer server;
+
+	private PeerFetchClient client;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * 当前节点地址，host:port
+	 */
+	private String self;
+
+	private volatile ConsistentHashRing ring;
+
+	/**
+	 * @param handler 处理其他节点的查询，参数为cacheName与redis key，返回序列化的存储值，未命中时返回null
+	 */
+	public L1Partition(L2CacheConfig.Partition config, RedisCache registry, BiFunction<String, String, byte[]> handler) {
+		this.config = config;
+		this.registry = registry;
+		this.handler = handler;
+	}
+
+	/**
+	 * 启动查询服务，登记当前节点并开始定时心跳
+	 * <p>
+	 * 未配置secret时查询服务只允许监听回环地址，避免其他机器不经校验读取缓存内容
+	 */
+	void start() throws IOException {
+		server = new PeerFetchServer(config.getBindHost(), config.getPort(), config.getMaxServerConnections(), config.getSecret(), handler);
+		InetAddress address = server.getAddress();
+		if (PeerFetchServer.secretBytes(config.getSecret()) == null && !address.isLoopbackAddress()) {
+			server.close();
+			throw new IllegalStateException("l2cache.config.partition.secret is required when bindHost is not a loopback address, the bindHost is : "
+					+ config.getBindHost());
+		}
+		client = new PeerFetchClient(config.getFetchTimeoutMillis(), config.getMaxIdleConnections(), config.getSecret());
+		String host = config.getHost();
+		if (host == null || host.isEmpty()) {
+			host = address.isAnyLocalAddress() ? InetAddress.getLocalHost().getHostAddress() : address.getHostAddress();
+		}
+		self = host + ":" + server.getPort();
+		ring = new ConsistentHashRing(Collections.singleton(self), config.getVirtualNodes());
+		run();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "l2cache-partition");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long heartbeatMillis = Math.max(100, config.getHeartbeatMillis());
+		scheduler.scheduleWithFixedDelay(this, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+		logger.info("l1 partition started, the member is : {}", self);
+	}
+
+	/**
+	 * 停止心跳并从成员中移除当前节点，其他节点随后接管其负责的key
+	 */
+	void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		try {
+			registry.zsetRemove(config.getMembersKey(), self);
+		} catch (Exception e) {
+			logger.warn("remove partition member failed, the member is : {}", self, e);
+		}
+		if (client != null) {
+			client.close();
+		}
+		if (server != null) {
+			try {
+				server.close();
+			} catch (IOException e) {
+				logger.warn("close peer fetch server failed", e);
+			}
+		}
+	}
+
+	/**
+	 * 缓存key归属的节点
+	 */
+	String ownerOf(String cacheKey) {
+		return ring.ownerOf(cacheKey);
+	}
+
+	boolean isSelf(String member) {
+		return self.equals(member);
+	}
+
+	/**
+	 * 缓存key是否由当前节点放入一级缓存
+	 */
+	boolean owns(String cacheKey) {
+		return isSelf(ownerOf(cacheKey));
+	}
+
+	/**
+	 * 向归属节点查询
+	 *
+	 * @return 序列化的存储值，未命中时返回null
+	 * @throws IOException 连接失败、超时或对方处理失败
+	 */
+	byte[] fetch(String owner, String cacheName, String cacheKey) throws IOException {
+		return client.fetch(owner, cacheName, cacheKey);
+	}
+
+	L2CacheConfig.Partition getConfig() {
+		return config;
+	}
+
+	public String getSelf() {
+		return self;
+	}
+
+	public List<String> getMembers() {
+		return ring.getMembers();
+	}
+
+	@Override
+	public void run() {
+		try {
+			long now = System.currentTimeMillis();
+			String membersKey = config.getMembersKey();
+			registry.zsetAdd(membersKey, self, now);
+			registry.zsetRemoveRangeByScore(membersKey, 0, now - config.getMemberTimeoutMillis());
+			Set<?> alive = registry.zsetRangeByScore(membersKey, now - config.getMemberTimeoutMillis(), Double.MAX_VALUE);
+			Set<String> members = new TreeSet<>();
+			members.add(self);
+			if (alive != null) {
+				for (Object member : alive) {
+					members.add(member.toString());
+				}
+			}
+			if (!members.equals(new TreeSet<>(ring.getMembers()))) {
+				logger.info("partition members changed, the members are : {}", members);
+				ring = new ConsistentHashRing(members, config.getVirtualNodes());
+				client.retain(members);
+			}
+		} catch (Exception e) {
+			logger.warn("refresh partition members failed", e);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.jincou.core.spring;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ *  二级缓存读合并
+ *  <p>
+ *  窗口内不同线程对不同key的单个查询合并为一次MGET：第一个到达的线程开启一批并等待窗口结束后发送，
+ *  其余线程加入当前批次后等待结果；批次达到maxBatchSize时由加入的线程立即发送。不使用额外的调度线程。
+ *  没有其他线程在读取时不等待窗口，直接发送，低并发下不增加延迟；等待窗口的线程被中断时立即发送。
+ */
+public class Level2ReadBatcher {
+
+	private final long windowNanos;
+
+	private final int maxBatchSize;
+
+	/**
+	 * 批量读取，返回值与key一一对应，不存在的key为null
+	 */
+	private final Function<List<String>, List<byte[]>> multiGet;
+
+	private final Object lock = new Object();
+
+	/**
+	 * 正在收集的批次，为null时下一个查询开启新批次
+	 */
+	private Batch current;
+
+	/**
+	 * 正在读取（等待批次结果）的线程数，只在持有lock时修改
+	 */
+	private int readers;
+
+	/** 发送的MGET次数 */
+	private final LongAdder batchCount = new LongAdder();
+
+	/** 合并的key总数 */
+	private final LongAdder keyCount = new LongAdder();
+
+	/** 批次从开启到发送的等待时间总和(纳秒) */
+	private final LongAdder waitNanos = new LongAdder();
+
+	/** 最大的批次 */
+	private final AtomicLong maxBatch = new AtomicLong();
+
+	Level2ReadBatcher(long windowMicros, int maxBatchSize, Function<List<String>, List<byte[]>> multiGet) {
+		this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.multiGet = multiGet;
+	}
+
+	/**
+	 * 读取未反序列化的value，阻塞到所在批次返回
+	 *
+	 * @return 不存在时返回null
+	 */
+	byte[] get(String cacheKey) {
+		Batch batch;
+		boolean leader = false;
+		boolean full;
+		CompletableFuture<byte[]> future;
+		synchronized (lock) {
+			readers++;
+			if (current == null) {
+				current = new Batch(System.nanoTime(), Thread.currentThread());
+				leader = true;
+			}
+			batch = current;
+			future = batch.futures.computeIfAbsent(cacheKey, key -> new CompletableFuture<>());
+			full = batch.futures.size() >= maxBatchSize;
+			if (full) {
+				current = null;
+				batch.closed = true;
+			}
+		}
+		try {
+			if (full) {
+				dispatch(batch);
+				// 开启批次的线程仍在等待窗口结束，结果已返回，唤醒它
+				LockSupport.unpark(batch.leader);
+			} else if (leader) {
+				awaitWindow(batch);
+			}
+			return future.join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		} finally {
+			synchronized (lock) {
+				readers--;
+			}
+		}
+	}
+
+	/**
+	 * 等待窗口结束，批次未被其他线程发送时由当前线程发送
+	 * <p>
+	 * 批次中只有当前线程的key且没有其他线程在读取时不等待；被中断时停止等待，发送后恢复中断状态
+	 */
+	private void awaitWindow(Batch batch) {
+		boolean alone;
+		synchronized (lock) {
+			alone = batch.futures.size() == 1 && readers == 1;
+			if (alone) {
+				current = null;
+				batch.closed = true;
+			}
+		}
+		boolean interrupted = false;
+		try {
+			if (!alone) {
+				long remaining;
+				while (!batch.closed && (remaining = batch.createdAt + windowNanos - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(this, remaining);
+					if (Thread.interrupted()) {
+						// 中断状态下parkNanos立即返回，继续等待会空转
+						interrupted = true;
+						break;
+					}
+				}
+				synchronized (lock) {
+					if (batch.closed) {
+						return;
+					}
+					current = null;
+					batch.closed = true;
+				}
+			}
+			dispatch(batch);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void dispatch(Batch batch) {
+		List<String> keys = new ArrayList<>(batch.futures.keySet());
+		waitNanos.add(System.nanoTime() - batch.createdAt);
+		batchCount.increment();
+		keyCount.add(keys.size());
+		long size;
+		while (keys.size() > (size = maxBatch.get()) && !maxBatch.compareAndSet(size, keys.size())) {
+			// retry
+		}
+		try {
+			List<byte[]> values = multiGet.apply(keys);
+			for (int i = 0; i < keys.size(); i++) {
+				batch.futures.get(keys.get(i)).complete(values == null ? null : values.get(i));
+			}
+		} catch (RuntimeException e) {
+			batch.futures.values().forEach(future -> future.completeExceptionally(e));
+		}
+	}
+
+	public long getBatchCount() {
+		return batchCount.sum();
+	}
+
+	public double getAverageBatchSize() {
+		long batches = batchCount.sum();
+		return batches == 0 ? 0 : (double) keyCount.sum() / batches;
+	}
+
+	public double getAverageWaitMicros() {
+		long batches = batchCount.sum();
+		return batches == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(waitNanos.sum()) / batches;
+	}
+
+	public long getMaxBatchSize() {
+		return maxBatch.get();
+	}
+
+	private static final class Batch {
+
+		private final long createdAt;
+
+		/**
+		 * 开启批次并等待窗口的线程
+		 */
+		private final Thread leader;
+
+		/**
+		 * 只在持有lock时修改，批次关闭后只读
+		 */
+		private final Map<String, CompletableFuture<byte[]>> futures = new LinkedHashMap<>();
+
+		private volatile boolean closed;
+
+		Batch(long createdAt, Thread leader) {
+			this.createdAt = createdAt;
+			this.leader = leader;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package com.jincou.core.spring;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jincou.core.config.L2CacheConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  加载器隔离
+ *  <p>
+ *  限制单个cacheName同时执行的加载器数量，超过上限时按配置排队等待、返回旧值或立即拒绝。
+ *  开启自适应时按加载耗时调整上限（AIMD）：耗时超过无负载耗时的latencyTolerance倍或加载失败时上限乘以backoffRatio，
+ *  同一批并发加载只下调一次；否则每完成一次加载上调1/limit，即每完成约一轮加载上调1。
+ *  无负载耗时取最近一个统计窗口内的最小耗时，窗口结束后替换，数据库本身变慢后基准随之调整。
+ */
+public class LoaderBulkhead {
+
+	/**
+	 * 无负载耗时的统计窗口，单位为加载次数
+	 */
+	private static final int BASELINE_WINDOW = 1000;
+
+	private final String cacheName;
+
+	private final L2CacheConfig.Bulkhead config;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition available = lock.newCondition();
+
+	/**
+	 * 当前并发上限，自适应时为小数，取整后生效
+	 */
+	private double limit;
+
+	private int inFlight;
+
+	private int waiting;
+
+	/**
+	 * 无负载耗时，未统计时为0
+	 */
+	private long baselineNanos;
+
+	private long windowMinNanos = Long.MAX_VALUE;
+
+	private int windowSamples;
+
+	/**
+	 * 最近一次下调时间，此前开始的加载不再触发下调
+	 */
+	private long lastBackoffNanos;
+
+	/**
+	 * 最近加载的存储值，仅STALE方式使用
+	 */
+	private final Cache<String, Object> staleValues;
+
+	/** 排队等待过的加载次数 */
+	private final LongAdder queuedCount = new LongAdder();
+
+	/** 排队等待的总时间(纳秒) */
+	private final LongAdder queuedNanos = new LongAdder();
+
+	/** 拒绝的加载次数 */
+	private final LongAdder rejectedCount = new LongAdder();
+
+	/** 返回旧值的次数 */
+	private final LongAdder staleCount = new LongAdder();
+
+	LoaderBulkhead(String cacheName, L2CacheConfig.Bulkhead config) {
+		this.cacheName = cacheName;
+		this.config = config;
+		this.limit = Math.max(1, config.getLimits().getOrDefault(cacheName, config.getMaxConcurrency()));
+		this.lastBackoffNanos = System.nanoTime();
+		this.staleValues = config.getOverflowAction() == L2CacheConfig.OverflowAction.STALE
+				? Caffeine.newBuilder().maximumSize(Math.max(1, config.getStaleMaxSize())).build()
+				: null;
+	}
+
+	/**
+	 * 获取执行加载器的许可
+	 *
+	 * @param staleAvailable 是否有旧值可以返回，有旧值时不排队
+	 * @return 获得许可的时间，用于释放时统计耗时；未获得许可时返回-1
+	 */
+	long acquire(boolean staleAvailable) {
+		L2CacheConfig.OverflowAction action = config.getOverflowAction();
+		boolean wait = action == L2CacheConfig.OverflowAction.WAIT
+				|| (action == L2CacheConfig.OverflowAction.STALE && !staleAvailable);
+		long start = System.nanoTime();
+		lock.lock();
+		try {
+			if (inFlight < currentLimit()) {
+				inFlight++;
+				return start;
+			}
+			if (!wait) {
+				rejectedCount.increment();
+				return -1;
+			}
+			queuedCount.increment();
+			waiting++;
+			try {
+				long remaining = TimeUnit.MILLISECONDS.toNanos(config.getWaitMillis());
+				while (inFlight >= currentLimit()) {
+					if (remaining <= 0) {
+						rejectedCount.increment();
+						return -1;
+					}
+					remaining = available.awaitNanos(remaining);
+				}
+				inFlight++;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				rejectedCount.increment();
+				return -1;
+			} finally {
+				waiting--;
+				queuedNanos.add(System.nanoTime() - start);
+			}
+			return System.nanoTime();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 释放许可，开启自适应时根据本次耗时调整上限
+	 *
+	 * @param start   获得许可的时间
+	 * @param success 加载是否成功
+	 */
+	void release(long start, boolean success) {
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			inFlight--;
+			if (config.isAdaptive()) {
+				adjust(start, now - start, success);
+			}
+			if (inFlight < currentLimit()) {
+				available.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void adjust(long start, long latencyNanos, boolean success) {
+		if (success) {
+			windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+			if (baselineNanos == 0 || ++windowSamples >= BASELINE_WINDOW) {
+				baselineNanos = windowMinNanos;
+				windowMinNanos = Long.MAX_VALUE;
+				windowSamples = 0;
+			}
+		}
+		int min = Math.max(1, config.getMinConcurrency());
+		int max = Math.max(min, config.getAdaptiveMaxConcurrency());
+		boolean overloaded = !success || latencyNanos > baselineNanos * config.getLatencyTolerance();
+		if (overloaded) {
+			if (start - lastBackoffNanos > 0) {
+				limit = Math.max(min, limit * config.getBackoffRatio());
+				lastBackoffNanos = System.nanoTime();
+			}
+		} else {
+			limit = Math.min(max, limit + 1 / limit);
+		}
+	}
+
+	private int currentLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * 获取该key最近一次加载的存储值，非STALE方式时返回null
+	 */
+	Object getStale(String cacheKey) {
+		return staleValues == null ? null : staleValues.getIfPresent(cacheKey);
+	}
+
+	/**
+	 * 记录加载结果，供超过上限时作为旧值返回
+	 */
+	void recordLoaded(String cacheKey, Object storeValue) {
+		if (staleValues != null && storeValue != null) {
+			staleValues.put(cacheKey, storeValue);
+		}
+	}
+
+	/**
+	 * 返回旧值时计数
+	 */
+	void recordStale() {
+		staleCount.increment();
+	}
+
+	LoaderRejectedException rejected() {
+		return new LoaderRejectedException(cacheName, getLimit());
+	}
+
+	public int getLimit() {
+		lock.lock();
+		try {
+			return currentLimit();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getWaiting() {
+		lock.lock();
+		try {
+			return waiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getQueuedCount() {
+		return queuedCount.sum();
+	}
+
+	public double getAverageQueueMicros() {
+		long queued = queuedCount.sum();
+		return queued == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(queuedNanos.sum()) / queued;
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	public long getStaleCount() {
+		return staleCount.sum();
+	}
+}
@@ -0,0 +1,18 @@
+package com.jincou.core.spring;
+
+/**
+ *  加载器超过并发上限被拒绝
+ */
+public class LoaderRejectedException extends RuntimeException {
+
+	private final String cacheName;
+
+	public LoaderRejectedException(String cacheName, int limit) {
+		super("loader concurrency limit exceeded, cacheName=" + cacheName + ", limit=" + limit);
+		this.cacheName = cacheName;
+	}
+
+	public String getCacheName() {
+		return cacheName;
+	}
+}
@@ -0,0 +1,238 @@
+package com.jincou.core.spring;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.jfr.CacheEvents;
+import com.jincou.core.sync.CacheMessagePublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *  读穿透缓存
+ *  <p>
+ *  通过{@link RedisCaffeineCacheManager#registerLoader(String, CacheLoader)}为cacheName注册加载器后，
+ *  该cacheName的所有读取（包括非sync的@Cacheable及编程式调用）在一二级缓存都未命中时由加载器加载，
+ *  同一个key并发未命中时只会加载一次，其余线程等待同一个加载结果；
+ *  配置了refreshAfterWrite时，一级缓存过期前由同一个加载器异步刷新。
+ */
+public class LoadingRedisCaffeineCache extends RedisCaffeineCache {
+
+	private final Logger logger = LoggerFactory.getLogger(LoadingRedisCaffeineCache.class);
+
+	private final CacheLoader<Object, Object> loader;
+
+	/**
+	 * 正在加载中的key，value为加载结果(存储值)
+	 */
+	private final ConcurrentMap<Object, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+
+	public LoadingRedisCaffeineCache(String cacheName, RedisCache level2Cache,
+									 Cache<Object, Object> level1Cache, L2CacheConfig l2CacheConfig,
+									 CacheMessagePublisher cacheMessagePublisher,
+									 CacheLoader<Object, Object> loader) {
+		super(cacheName, level2Cache, level1Cache, l2CacheConfig, cacheMessagePublisher);
+		this.loader = loader;
+		// refreshAfterWrite刷新时一级缓存key直接传给加载器，必须保留原始key
+		setKeyEncoder(new CacheKeyEncoder(cacheName, false));
+	}
+
+	@Override
+	protected Object lookup(Object key) {
+		Object value = super.lookup(key);
+		if (value != null) {
+			return value;
+		}
+		return load(key);
+	}
+
+	/**
+	 * 批量获取，一级缓存未命中的key通过mget从二级缓存批量获取，仍未命中的key交给加载器的loadAll批量加载
+	 *
+	 * @param keys 缓存key集合
+	 * @return 命中或加载到的值，不包含值为null的key
+	 */
+	public Map<Object, Object> getAll(Collection<?> keys) {
+		Map<Object, Object> result = new LinkedHashMap<>(keys.size());
+		List<Object> level2Keys = new ArrayList<>();
+		for (Object key : keys) {
+			String cacheKey = getKey(key);
+			Object value = null;
+			if (ifL1Open(cacheKey)) {
+				value = getLevel1Cache().getIfPresent(getL1Key(key));
+				recordL1Access(cacheKey, value != null);
+			}
+			if (value != null) {
+				putResult(result, key, value);
+			} else {
+				level2Keys.add(key);
+			}
+		}
+		if (level2Keys.isEmpty()) {
+			return result;
+		}
+		if (!hasLevel2()) {
+			loadAll(level2Keys).forEach((key, value) -> putResult(result, key, value));
+			return result;
+		}
+
+		List<String> cacheKeys = new ArrayList<>(level2Keys.size());
+		for (Object key : level2Keys) {
+			cacheKeys.add(getKey(key));
+		}
+		List<?> values = getLevel2Reader().multiGet(cacheKeys);
+		List<Object> missingKeys = new ArrayList<>();
+		for (int i = 0; i < level2Keys.size(); i++) {
+			Object key = level2Keys.get(i);
+			Object level2Value = values == null ? null : values.get(i);
+			Object value = readLevel2(cacheKeys.get(i), level2Value);
+			if (value == null) {
+				missingKeys.add(key);
+				continue;
+			}
+			if (ifL1Open(cacheKeys.get(i)) && allowL1(level2Value) && admitL1(cacheKeys.get(i), 0, 0)) {
+				getLevel1Cache().put(getL1Key(key), value);
+			}
+			putResult(result, key, value);
+		}
+		if (!missingKeys.isEmpty()) {
+			loadAll(missingKeys).forEach((key, value) -> putResult(result, key, value));
+		}
+		return result;
+	}
+
+	/**
+	 * 一级缓存refreshAfterWrite触发的异步刷新，重新加载后写回二级缓存并通知其他节点，一级缓存由caffeine以返回值更新
+	 *
+	 * @return 存储值，返回null时一级缓存中的条目被移除
+	 */
+	Object reload(Object key) throws Exception {
+		Object storeValue = storeValue(callLoader(() -> loader.load(key)));
+		if (storeValue != null && !putLevel2(key, storeValue)) {
+			// value过大不允许放入一级缓存
+			return null;
+		}
+		return storeValue;
+	}
+
+	/**
+	 * 单个key的加载，同一个key同一时刻只有一个线程执行加载器
+	 */
+	private Object load(Object key) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> loading = loadingMap.putIfAbsent(key, future);
+		if (loading != null) {
+			return join(key, loading);
+		}
+		try {
+			// 加载前再查一次，其他线程或节点可能刚写入二级缓存
+			Object storeValue = super.lookup(key);
+			if (storeValue == null) {
+				storeValue = loadAndPut(key, getKey(key), () -> storeValue(loader.load(key)));
+			}
+			future.complete(storeValue);
+			return storeValue;
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw new ValueRetrievalException(key, null, e);
+		} finally {
+			loadingMap.remove(key, future);
+		}
+	}
+
+	/**
+	 * 批量加载，已在加载中的key等待其结果，其余的key一次性交给加载器
+	 *
+	 * @return key -> 存储值
+	 */
+	private Map<Object, Object> loadAll(List<Object> keys) {
+		Map<Object, CompletableFuture<Object>> owned = new LinkedHashMap<>();
+		Map<Object, CompletableFuture<Object>> futures = new LinkedHashMap<>();
+		for (Object key : keys) {
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			CompletableFuture<Object> loading = loadingMap.putIfAbsent(key, future);
+			if (loading == null) {
+				owned.put(key, future);
+			}
+			futures.put(key, loading == null ? future : loading);
+		}
+
+		if (!owned.isEmpty()) {
+			try {
+				Map<Object, Object> loaded = callLoader(() -> bulkLoad(owned.keySet()));
+				owned.forEach((key, future) -> {
+					Object storeValue = storeValue(loaded.get(key));
+					if (storeValue != null) {
+						put(key, storeValue);
+					}
+					future.complete(storeValue);
+				});
+			} catch (Throwable e) {
+				owned.values().forEach(future -> future.completeExceptionally(e));
+			} finally {
+				owned.forEach(loadingMap::remove);
+			}
+		}
+
+		Map<Object, Object> result = new HashMap<>(futures.size());
+		futures.forEach((key, future) -> result.put(key, join(key, future)));
+		return result;
+	}
+
+	/**
+	 * 优先使用加载器的批量加载，未实现loadAll时逐个加载
+	 */
+	private Map<Object, Object> bulkLoad(Collection<Object> keys) throws Exception {
+		try {
+			Map<Object, Object> loaded = loader.loadAll(keys);
+			return loaded == null ? new HashMap<>() : loaded;
+		} catch (UnsupportedOperationException e) {
+			Map<Object, Object> loaded = new HashMap<>(keys.size());
+			for (Object key : keys) {
+				loaded.put(key, loader.load(key));
+			}
+			return loaded;
+		}
+	}
+
+	private Object join(Object key, CompletableFuture<Object> future) {
+		long waitStart = CacheEvents.start();
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw new ValueRetrievalException(key, null, e.getCause());
+		} finally {
+			CacheEvents.lockWait(getName(), getKey(key), CacheEvents.LOCK_VALUE_LOAD, waitStart);
+		}
+	}
+
+	/**
+	 * 不允许存储空值时，加载结果为null则不写入缓存
+	 */
+	private Object storeValue(Object value) {
+		if (value == null && !isAllowNullValues()) {
+			logger.debug("loader returned null and null values are not allowed, skip cache, cacheName={}", getName());
+			return null;
+		}
+		return toStoreValue(value);
+	}
+
+	private void putResult(Map<Object, Object> result, Object key, Object storeValue) {
+		Object value = fromStoreValue(storeValue);
+		if (value != null) {
+			result.put(key, value);
+		}
+	}
+}
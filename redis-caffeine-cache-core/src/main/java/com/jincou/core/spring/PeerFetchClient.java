@@ -0,0 +1,176 @@
+package com.jincou.core.spring;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *  分区一级缓存的节点间查询客户端
+ *  <p>
+ *  每个节点保留有限数量的空闲连接复用，并发超过时临时新建连接，用完后空闲连接已满则关闭。
+ *  配置了secret时新建连接先与对方握手，双方互相校验持有相同的密钥。
+ *  连接与读取都有超时，任何异常都关闭连接并抛出，由调用方改为读取redis。
+ */
+class PeerFetchClient implements Closeable {
+
+	private final int timeoutMillis;
+
+	private final int maxIdle;
+
+	/**
+	 * 共享密钥，为null时不握手
+	 */
+	private final byte[] secret;
+
+	/**
+	 * 节点地址(host:port) -> 空闲连接
+	 */
+	private final ConcurrentMap<String, BlockingQueue<Connection>> idleConnections = new ConcurrentHashMap<>();
+
+	private volatile boolean closed;
+
+	PeerFetchClient(int timeoutMillis, int maxIdle, String secret) {
+		this.timeoutMillis = Math.max(1, timeoutMillis);
+		this.maxIdle = Math.max(1, maxIdle);
+		this.secret = PeerFetchServer.secretBytes(secret);
+	}
+
+	/**
+	 * 向归属节点查询
+	 *
+	 * @param peer      节点地址，host:port
+	 * @param cacheName 缓存名称
+	 * @param cacheKey  redis中的缓存key
+	 * @return 序列化的存储值，未命中时返回null
+	 * @throws IOException 连接失败、超时、握手失败或对方处理失败
+	 */
+	byte[] fetch(String peer, String cacheName, String cacheKey) throws IOException {
+		BlockingQueue<Connection> idle = idleConnections.computeIfAbsent(peer, p -> new ArrayBlockingQueue<>(maxIdle));
+		Connection connection = idle.poll();
+		if (connection == null) {
+			connection = connect(peer);
+		}
+		byte[] value;
+		try {
+			value = connection.fetch(cacheName, cacheKey.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException | RuntimeException e) {
+			connection.close();
+			throw e;
+		}
+		if (closed || !idle.offer(connection)) {
+			connection.close();
+		}
+		return value;
+	}
+
+	/**
+	 * 关闭已离开的节点的空闲连接
+	 */
+	void retain(Collection<String> peers) {
+		idleConnections.entrySet().removeIf(entry -> {
+			if (peers.contains(entry.getKey())) {
+				return false;
+			}
+			entry.getValue().forEach(Connection::close);
+			return true;
+		});
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		idleConnections.values().forEach(idle -> idle.forEach(Connection::close));
+		idleConnections.clear();
+	}
+
+	private Connection connect(String peer) throws IOException {
+		int index = peer.lastIndexOf(':');
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(timeoutMillis);
+			socket.connect(new InetSocketAddress(peer.substring(0, index), Integer.parseInt(peer.substring(index + 1))), timeoutMillis);
+			Connection connection = new Connection(socket);
+			if (secret != null) {
+				connection.handshake(secret);
+			}
+			return connection;
+		} catch (IOException | RuntimeException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	private static final class Connection {
+
+		private final Socket socket;
+
+		private final DataInputStream in;
+
+		private final DataOutputStream out;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		/**
+		 * 请求方握手，先证明自己持有密钥，再校验对方的证明
+		 */
+		void handshake(byte[] secret) throws IOException {
+			byte[] serverNonce = new byte[PeerFetchServer.NONCE_BYTES];
+			in.readFully(serverNonce);
+			byte[] clientNonce = PeerFetchServer.nonce();
+			out.write(clientNonce);
+			out.write(PeerFetchServer.proof(secret, "client", serverNonce));
+			out.flush();
+			byte[] serverProof = new byte[PeerFetchServer.PROOF_BYTES];
+			in.readFully(serverProof);
+			if (!MessageDigest.isEqual(serverProof, PeerFetchServer.proof(secret, "server", clientNonce))) {
+				throw new IOException("peer authentication failed, remote=" + socket.getRemoteSocketAddress());
+			}
+		}
+
+		byte[] fetch(String cacheName, byte[] key) throws IOException {
+			out.writeUTF(cacheName);
+			out.writeInt(key.length);
+			out.write(key);
+			out.flush();
+			byte status = in.readByte();
+			if (status == PeerFetchServer.STATUS_MISS) {
+				return null;
+			}
+			if (status != PeerFetchServer.STATUS_HIT) {
+				throw new IOException("peer fetch failed, status=" + status);
+			}
+			int length = in.readInt();
+			if (length < 0 || length > PeerFetchServer.MAX_VALUE_BYTES) {
+				throw new IOException("invalid peer response, value length=" + length);
+			}
+			byte[] value = new byte[length];
+			in.readFully(value);
+			return value;
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package com.jincou.core.spring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ *  分区一级缓存的节点间查询服务
+ *  <p>
+ *  握手：配置了secret时，服务端先发送随机数，请求方回复自己的随机数及对服务端随机数的HMAC，服务端校验后回复对请求方随机数的HMAC，
+ *  双方都校验通过才处理请求；握手只做身份校验，不加密传输内容。
+ *  协议：请求为cacheName(writeUTF)、key长度(int)、UTF-8编码的redis key；响应为状态(byte)，命中时再跟value长度(int)、序列化的存储值。
+ *  连接由请求方复用，由有界的线程池为每个连接顺序处理请求，连接数超过上限时直接关闭新连接，请求方改为读取redis。
+ */
+class PeerFetchServer implements Closeable {
+
+	static final byte STATUS_MISS = 0;
+
+	static final byte STATUS_HIT = 1;
+
+	static final byte STATUS_ERROR = 2;
+
+	/**
+	 * 请求中key的最大字节数，超过时视为非法请求
+	 */
+	static final int MAX_KEY_BYTES = 64 * 1024;
+
+	/**
+	 * 响应中value的最大字节数，超过时返回失败，请求方改为读取redis
+	 */
+	static final int MAX_VALUE_BYTES = 16 * 1024 * 1024;
+
+	static final int NONCE_BYTES = 16;
+
+	static final int PROOF_BYTES = 32;
+
+	/**
+	 * 握手的读取超时，避免未完成握手的连接长期占用线程
+	 */
+	private static final int HANDSHAKE_TIMEOUT_MILLIS = 1000;
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Logger logger = LoggerFactory.getLogger(PeerFetchServer.class);
+
+	private final ServerSocket serverSocket;
+
+	/**
+	 * 查询处理，参数为cacheName与redis key，返回序列化的存储值，未命中时返回null
+	 */
+	private final BiFunction<String, String, byte[]> handler;
+
+	/**
+	 * 共享密钥，为null时不握手
+	 */
+	private final byte[] secret;
+
+	private final ThreadPoolExecutor workers;
+
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean running = true;
+
+	PeerFetchServer(String bindHost, int port, int maxConnections, String secret, BiFunction<String, String, byte[]> handler) throws IOException {
+		this.serverSocket = new ServerSocket(port, 128, bindHost == null || bindHost.isEmpty() ? null : InetAddress.getByName(bindHost));
+		this.handler = handler;
+		this.secret = secretBytes(secret);
+		AtomicInteger threadIndex = new AtomicInteger();
+		// 每个连接占用一个线程，线程数即连接数上限，超过时拒绝新连接
+		this.workers = new ThreadPoolExecutor(0, Math.max(1, maxConnections), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "l2cache-peer-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Thread acceptor = new Thread(this::accept, "l2cache-peer-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * 监听的地址，未指定bindHost时为通配地址
+	 */
+	InetAddress getAddress() {
+		return serverSocket.getInetAddress();
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		serverSocket.close();
+		workers.shutdownNow();
+		for (Socket socket : connections) {
+			closeQuietly(socket);
+		}
+	}
+
+	private void accept() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				connections.add(socket);
+				try {
+					workers.execute(() -> serve(socket));
+				} catch (RejectedExecutionException e) {
+					logger.warn("too many peer connections, close the new one, maxConnections={}", workers.getMaximumPoolSize());
+					connections.remove(socket);
+					closeQuietly(socket);
+				}
+			} catch (IOException e) {
+				if (running) {
+					logger.error("accept peer connection failed", e);
+				}
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			if (secret != null && !handshake(socket, in, out)) {
+				logger.warn("peer authentication failed, remote={}", socket.getRemoteSocketAddress());
+				return;
+			}
+			while (running) {
+				String cacheName;
+				try {
+					cacheName = in.readUTF();
+				} catch (EOFException e) {
+					return;
+				}
+				int length = in.readInt();
+				if (length < 0 || length > MAX_KEY_BYTES) {
+					return;
+				}
+				byte[] key = new byte[length];
+				in.readFully(key);
+				byte[] value;
+				try {
+					value = handler.apply(cacheName, new String(key, StandardCharsets.UTF_8));
+				} catch (RuntimeException e) {
+					logger.warn("handle peer fetch failed, cacheName={}", cacheName, e);
+					out.writeByte(STATUS_ERROR);
+					out.flush();
+					continue;
+				}
+				if (value == null) {
+					out.writeByte(STATUS_MISS);
+				} else if (value.length > MAX_VALUE_BYTES) {
+					out.writeByte(STATUS_ERROR);
+				} else {
+					out.writeByte(STATUS_HIT);
+					out.writeInt(value.length);
+					out.write(value);
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			if (running) {
+				logger.debug("peer connection closed, remote={}", socket.getRemoteSocketAddress(), e);
+			}
+		} finally {
+			connections.remove(socket);
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * 服务端握手，校验请求方持有相同的密钥，并向请求方证明自己持有密钥
+	 */
+	private boolean handshake(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+		socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+		byte[] serverNonce = nonce();
+		out.write(serverNonce);
+		out.flush();
+		byte[] clientNonce = new byte[NONCE_BYTES];
+		in.readFully(clientNonce);
+		byte[] clientProof = new byte[PROOF_BYTES];
+		in.readFully(clientProof);
+		if (!MessageDigest.isEqual(clientProof, proof(secret, "client", serverNonce))) {
+			return false;
+		}
+		out.write(proof(secret, "server", clientNonce));
+		out.flush();
+		socket.setSoTimeout(0);
+		return true;
+	}
+
+	/**
+	 * 密钥为空时返回null，表示不握手
+	 */
+	static byte[] secretBytes(String secret) {
+		return secret == null || secret.isEmpty() ? null : secret.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static byte[] nonce() {
+		byte[] nonce = new byte[NONCE_BYTES];
+		RANDOM.nextBytes(nonce);
+		return nonce;
+	}
+
+	/**
+	 * 对随机数的HMAC，role区分请求方与服务端，避免把对方发来的证明原样返回
+	 */
+	static byte[] proof(byte[] secret, String role, byte[] nonce) {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+			mac.update(role.getBytes(StandardCharsets.UTF_8));
+			return mac.doFinal(nonce);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("compute peer proof failed", e);
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
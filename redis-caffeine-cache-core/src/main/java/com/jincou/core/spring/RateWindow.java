@@ -0,0 +1,48 @@
+package com.jincou.core.spring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  最近一段时间内的事件速率
+ *  <p>
+ *  按秒分桶的环形计数，桶被复用时清零，只统计最近windowSeconds秒内的事件
+ */
+public class RateWindow {
+
+	private final int windowSeconds;
+
+	private final AtomicLongArray counts;
+
+	/** 每个桶当前对应的秒数*/
+	private final AtomicLongArray seconds;
+
+	public RateWindow(int windowSeconds) {
+		this.windowSeconds = windowSeconds;
+		this.counts = new AtomicLongArray(windowSeconds);
+		this.seconds = new AtomicLongArray(windowSeconds);
+	}
+
+	public void record() {
+		long second = System.currentTimeMillis() / 1000;
+		int index = (int) (second % windowSeconds);
+		long bucketSecond = seconds.get(index);
+		if (bucketSecond != second && seconds.compareAndSet(index, bucketSecond, second)) {
+			counts.set(index, 0);
+		}
+		counts.incrementAndGet(index);
+	}
+
+	/**
+	 * 最近windowSeconds秒内平均每秒的事件数
+	 */
+	public double getRatePerSecond() {
+		long now = System.currentTimeMillis() / 1000;
+		long total = 0;
+		for (int i = 0; i < windowSeconds; i++) {
+			if (now - seconds.get(i) < windowSeconds) {
+				total += counts.get(i);
+			}
+		}
+		return (double) total / windowSeconds;
+	}
+}
@@ -1,21 +1,40 @@
 package com.jincou.core.spring;
 
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.jincou.core.cache.RedisCache;
+import com.jincou.core.cache.ValueSizeGuard;
 import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.jfr.CacheEvents;
 import com.jincou.core.sync.CacheMessage;
+import com.jincou.core.sync.CacheMessagePublisher;
+import com.jincou.core.sync.RedisTopicCacheMessagePublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.support.AbstractValueAdaptingCache;
-import org.springframework.util.CollectionUtils;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * TODO
@@ -25,6 +44,13 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 
+	/**
+	 * 最多记录的待读取主节点的key数量，超过时淘汰的key按读策略读取
+	 */
+	private static final int PRIMARY_READ_KEYS_MAX_SIZE = 100000;
+
+	private static final String TAG_INDEX_SUFFIX = "#tags";
+
 	private final Logger logger = LoggerFactory.getLogger(RedisCaffeineCache.class);
 
 	/**
@@ -47,21 +73,136 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 
 	private Map<String, Long> expires;
 
-	private L2CacheConfig.Composite composite;
-
 	private L2CacheConfig.Redis redisConfig;
 
 	/**
-	 * 记录是否启用过一级缓存，只要启用过，则记录为true
+	 * 一级缓存路由，由缓存管理器统一持有，运行时调整开关时原子替换
 	 * <p>
 	 * 以下情况可能造成本地缓存与redis缓存不一致的情况 : 开启本地缓存，更新用户数据后，关闭本地缓存,更新用户信息到redis，开启本地缓存
-	 * 解决方法：put、evict的情况下，判断配置中心一级缓存开关已关闭且本地一级缓存开关已开启的情况下，清除一级缓存
+	 * 解决方法：关闭一级缓存时由缓存管理器通知所有节点清除被关闭部分的一级缓存，见{@link RedisCaffeineCacheManager#updateL1Routing}
+	 */
+	private L1CacheRouting l1CacheRouting;
+
+	private CacheMessagePublisher cacheMessagePublisher;
+
+	/**
+	 * 异步写缓冲区，未开启异步写时为null
+	 */
+	private WriteBehindBuffer writeBehindBuffer;
+
+	/**
+	 * 加载器隔离，未开启时为null
+	 */
+	private LoaderBulkhead loaderBulkhead;
+
+	/**
+	 * 二级缓存滑动过期，未开启时为null
+	 */
+	private SlidingExpirationRenewer slidingExpirationRenewer;
+
+	/**
+	 * key与value大小防护，未开启时为null
+	 */
+	private ValueSizeGuard valueSizeGuard;
+
+	/**
+	 * 缓存类型，只使用一级缓存时不读写redis，只使用二级缓存时不读写caffeine
+	 */
+	private L2CacheConfig.CacheMode cacheMode = L2CacheConfig.CacheMode.COMPOSITE;
+
+	/**
+	 * 当前节点标识，发送不需要本节点处理的通知时使用
+	 */
+	private String nodeId;
+
+	/**
+	 * 二级缓存读策略，为null时按默认的读连接读取
+	 */
+	private L2CacheConfig.ReadPolicy readPolicy;
+
+	/**
+	 * 一级缓存准入策略，未开启时从二级缓存读到的值都放入一级缓存
+	 */
+	private L1AdmissionPolicy admissionPolicy;
+
+	/**
+	 * 最近一分钟收到的一级缓存清理
+	 */
+	private final RateWindow invalidationRate = new RateWindow(60);
+
+	/**
+	 * 热点key副本，未开启时为null
+	 */
+	private HotKeyReplicas hotKeyReplicas;
+
+	/**
+	 * 二级缓存读合并，未开启时为null
+	 */
+	private Level2ReadBatcher readBatcher;
+
+	/**
+	 * 缓存key编码
+	 */
+	private CacheKeyEncoder keyEncoder;
+
+	/**
+	 * 正在从二级缓存读取的key，同一个key并发未命中时只发送一次GET，其余线程等待同一个结果
+	 */
+	private final ConcurrentMap<String, CompletableFuture<Object>> level2ReadMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 最近被更新或清理的key，首次读取二级缓存时访问主节点，避免从节点尚未同步时把旧值放入一级缓存；
+	 * 读取从节点时才有意义，未开启时为null
+	 */
+	private Cache<String, Boolean> primaryReadKeys;
+
+	/**
+	 * clear后的一段时间内所有key的读取都访问主节点，为此时间之前
+	 */
+	private volatile long primaryReadUntil;
+
+	private long primaryReadAfterInvalidationMillis;
+
+	/**
+	 * 共用一级缓存实例或开启分区时，按redis key索引本cacheName的一级缓存key，按redis key清理与处理其他节点的查询时不必遍历一级缓存；
+	 * 其他情况为null
+	 */
+	private ConcurrentMap<String, Object> l1KeyIndex;
+
+	/**
+	 * 共用一级缓存实例时本cacheName的命中、未命中与淘汰次数，共享实例自身的统计是所有cacheName合计的
+	 */
+	private final LongAdder sharedL1HitCount = new LongAdder();
+
+	private final LongAdder sharedL1MissCount = new LongAdder();
+
+	private final LongAdder sharedL1EvictionCount = new LongAdder();
+
+	/**
+	 * 正在通过get(key, valueLoader)加载的key，加载完成后移除
+	 */
+	private final ConcurrentMap<String, CompletableFuture<Object>> valueLoadMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 分区一级缓存，未开启时为null
+	 */
+	private L1Partition partition;
+
+	/**
+	 * 分区模式下非归属key的近端缓存，key为redis key
 	 */
-	private AtomicBoolean openedL1Cache = new AtomicBoolean();
+	private Cache<String, Object> nearCache;
 
-	private String topic = "cache:redis:caffeine:topic";
+	/**
+	 * 近端缓存清理次数，节点间查询期间发生清理时查询结果不放入近端缓存
+	 */
+	private final AtomicLong nearGeneration = new AtomicLong();
 
-	private Map<String, ReentrantLock> keyLockMap = new ConcurrentHashMap<String, ReentrantLock>();
+	/** 节点间查询次数 */
+	private final LongAdder peerFetchCount = new LongAdder();
+
+	/** 节点间查询失败改为读取redis的次数 */
+	private final LongAdder peerFetchFailedCount = new LongAdder();
 
 	protected RedisCaffeineCache(boolean allowNullValues) {
 		super(allowNullValues);
@@ -69,15 +210,23 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 
 	public RedisCaffeineCache(String cacheName, RedisCache level2Cache,
 							  Cache<Object, Object> level1Cache, L2CacheConfig l2CacheConfig) {
+		this(cacheName, level2Cache, level1Cache, l2CacheConfig,
+				new RedisTopicCacheMessagePublisher(level2Cache, l2CacheConfig.getRedis().getTopic()));
+	}
+
+	public RedisCaffeineCache(String cacheName, RedisCache level2Cache,
+							  Cache<Object, Object> level1Cache, L2CacheConfig l2CacheConfig,
+							  CacheMessagePublisher cacheMessagePublisher) {
 		super(l2CacheConfig.isAllowNullValues());
 		this.cacheName = cacheName;
 		this.level2Cache = level2Cache;
 		this.level1Cache = level1Cache;
 		this.defaultExpiration = l2CacheConfig.getRedis().getDefaultExpiration();
 		this.expires = l2CacheConfig.getRedis().getExpires();
-		this.topic = l2CacheConfig.getRedis().getTopic();
-		this.composite = l2CacheConfig.getComposite();
+		this.cacheMessagePublisher = cacheMessagePublisher;
+		this.l1CacheRouting = new L1CacheRouting(l2CacheConfig.getComposite());
 		this.redisConfig = l2CacheConfig.getRedis();
+		this.keyEncoder = new CacheKeyEncoder(cacheName, l2CacheConfig.getCaffeine().isCompactKeys());
 	}
 
 	@Override
@@ -95,30 +244,111 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 	public <T> T get(Object key, Callable<T> valueLoader) {
 		Object value = lookup(key);
 		if (value != null) {
-			return (T) value;
+			return (T) fromStoreValue(value);
 		}
 
-		ReentrantLock lock = keyLockMap.get(key.toString());
-		if (lock == null) {
-			logger.debug("create lock for key : {}", key);
-			lock = new ReentrantLock();
-			keyLockMap.putIfAbsent(key.toString(), lock);
+		// 同一个key只有一个线程执行加载，其余线程等待同一个加载结果，加载完成后移除，不会无限增长
+		String cacheKey = getKey(key);
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> loading = valueLoadMap.putIfAbsent(cacheKey, future);
+		if (loading != null) {
+			long waitStart = CacheEvents.start();
+			try {
+				return (T) fromStoreValue(loading.join());
+			} catch (CompletionException e) {
+				throw new ValueRetrievalException(key, valueLoader, e.getCause());
+			} finally {
+				CacheEvents.lockWait(this.cacheName, cacheKey, CacheEvents.LOCK_VALUE_LOAD, waitStart);
+			}
 		}
 		try {
-			lock.lock();
 			value = lookup(key);
-			if (value != null) {
-				return (T) value;
+			if (value == null) {
+				//代表走被拦截的方法逻辑,并返回方法的返回结果
+				value = loadAndPut(key, cacheKey, () -> toStoreValue(valueLoader.call()));
 			}
-			//代表走被拦截的方法逻辑,并返回方法的返回结果
-			value = valueLoader.call();
-			Object storeValue = toStoreValue(value);
+			future.complete(value);
+			return (T) fromStoreValue(value);
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw new ValueRetrievalException(key, valueLoader, e);
+		} finally {
+			valueLoadMap.remove(cacheKey, future);
+		}
+	}
+
+	/**
+	 * 执行加载器并写入缓存，开启加载器隔离时受并发上限限制，耗时只统计加载器本身
+	 *
+	 * @param loader 返回存储值，返回null时不写入缓存
+	 * @return 存储值，超过并发上限时可能是该key最近一次加载的旧值，旧值不写入缓存
+	 */
+	protected Object loadAndPut(Object key, String cacheKey, Callable<Object> loader) throws Exception {
+		Object storeValue;
+		if (loaderBulkhead == null) {
+			storeValue = callAndRecord(cacheKey, loader);
+		} else {
+			Object stale = loaderBulkhead.getStale(cacheKey);
+			long waitStart = CacheEvents.start();
+			long start = loaderBulkhead.acquire(stale != null);
+			CacheEvents.lockWait(this.cacheName, cacheKey, CacheEvents.LOCK_BULKHEAD, waitStart);
+			if (start < 0) {
+				if (stale == null) {
+					throw loaderBulkhead.rejected();
+				}
+				loaderBulkhead.recordStale();
+				return stale;
+			}
+			boolean success = false;
+			try {
+				storeValue = callAndRecord(cacheKey, loader);
+				success = true;
+			} finally {
+				loaderBulkhead.release(start, success);
+			}
+			loaderBulkhead.recordLoaded(cacheKey, storeValue);
+		}
+		if (storeValue != null) {
 			put(key, storeValue);
-			return (T) value;
-		} catch (Exception e) {
-			throw new ValueRetrievalException(key, valueLoader, e.getCause());
+		}
+		return storeValue;
+	}
+
+	/**
+	 * 执行不写入缓存的加载，如批量加载与异步刷新，开启加载器隔离时占用一个许可，超过上限时不返回旧值
+	 */
+	protected <T> T callLoader(Callable<T> loader) throws Exception {
+		if (loaderBulkhead == null) {
+			return callAndRecord(null, loader);
+		}
+		long waitStart = CacheEvents.start();
+		long start = loaderBulkhead.acquire(false);
+		CacheEvents.lockWait(this.cacheName, null, CacheEvents.LOCK_BULKHEAD, waitStart);
+		if (start < 0) {
+			throw loaderBulkhead.rejected();
+		}
+		boolean success = false;
+		try {
+			T result = callAndRecord(null, loader);
+			success = true;
+			return result;
 		} finally {
-			lock.unlock();
+			loaderBulkhead.release(start, success);
+		}
+	}
+
+	/**
+	 * 执行加载器并记录JFR事件
+	 */
+	private <T> T callAndRecord(String cacheKey, Callable<T> loader) throws Exception {
+		long start = CacheEvents.start();
+		boolean success = false;
+		try {
+			T result = loader.call();
+			success = true;
+			return result;
+		} finally {
+			CacheEvents.loader(this.cacheName, cacheKey, success, start);
 		}
 	}
 
@@ -129,20 +359,89 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 			this.evict(key);
 			return;
 		}
+		String cacheKey = getKey(key);
+		if (valueSizeGuard != null && valueSizeGuard.isKeyTooLarge(this.cacheName, cacheKey)) {
+			return;
+		}
+		Object storeValue = toStoreValue(value);
 		long expire = getExpire();
-		if (expire > 0) {
-			level2Cache.set(getKey(key), toStoreValue(value), expire);
-		} else {
-			level2Cache.set(getKey(key), toStoreValue(value));
+		// 进行中的二级缓存读取可能读到旧值，不再放入一级缓存
+		cancelLevel2Read(cacheKey);
+		if (writeBehindBuffer != null) {
+			// 异步写：redis写入与通知其他节点由缓冲区批量完成；缓冲区已满且redis不可用时抛出异常，不更新一级缓存
+			boolean allowL1 = offerWriteBehind(cacheKey, key, storeValue, expire);
+			if (ifL1Open(cacheKey) && allowL1) {
+				putL1(key, cacheKey, storeValue);
+			} else if (ifL1Open(cacheKey)) {
+				invalidateL1(key, cacheKey);
+			}
+			return;
 		}
+		boolean allowL1 = setLevel2(cacheKey, storeValue, expire);
 
 		// 是否开启一级缓存
-		boolean ifL1Open = ifL1Open(getKey(key));
-		if (ifL1Open) {
+		boolean ifL1Open = ifL1Open(cacheKey);
+		if (ifL1Open && !allowL1) {
+			// value过大不放入一级缓存，清除可能存在的旧值
+			push(new CacheMessage(this.cacheName, key));
+			invalidateL1(key, cacheKey);
+		} else if (ifL1Open) {
 			//通知其它节点
 			push(new CacheMessage(this.cacheName, key));
-			level1Cache.put(key, toStoreValue(value));
+			putL1(key, cacheKey, storeValue);
+		}
+	}
+
+	/**
+	 * 一级缓存由调用方更新时只写入二级缓存，并只通知其他节点，供一级缓存refreshAfterWrite刷新使用；
+	 * 通过put写入时本节点也会收到通知，刚刷新的一级缓存条目随即被清除
+	 *
+	 * @return value是否允许放入一级缓存
+	 */
+	protected boolean putLevel2(Object key, Object storeValue) {
+		String cacheKey = getKey(key);
+		if (valueSizeGuard != null && valueSizeGuard.isKeyTooLarge(this.cacheName, cacheKey)) {
+			return false;
+		}
+		cancelLevel2Read(cacheKey);
+		if (writeBehindBuffer != null) {
+			return offerWriteBehind(cacheKey, key, storeValue, getExpire());
 		}
+		boolean allowL1 = setLevel2(cacheKey, storeValue, getExpire());
+		pushToOthers(new CacheMessage(this.cacheName, key));
+		return allowL1;
+	}
+
+	/**
+	 * 写入缓存并打上标签，之后可通过{@link RedisCaffeineCacheManager#evictByTag}按标签清除
+	 * <p>
+	 * 标签以redis set记录缓存key，同时在 key#tags 中记录key所在的标签集合，删除key时据此将其移出标签集合；
+	 * 标签集合的过期时间不短于缓存的过期时间，只使用一级缓存的cacheName不记录标签
+	 *
+	 * @param tags 标签，如同一个用户衍生的多个缓存都打上user:1
+	 */
+	public void put(Object key, Object value, String... tags) {
+		put(key, value);
+		if (tags.length == 0 || !hasLevel2()) {
+			return;
+		}
+		List<String> tagKeys = new ArrayList<>(tags.length);
+		for (String tag : tags) {
+			tagKeys.add(redisConfig.getTagKeyPrefix().concat(tag));
+		}
+		long tagExpiration = redisConfig.getTagExpiration();
+		if (tagExpiration > 0) {
+			tagExpiration = Math.max(tagExpiration, getExpire());
+		}
+		String cacheKey = getKey(key);
+		level2Cache.pipelineTag(tagKeys, cacheKey, tagIndexKey(cacheKey), tagExpiration);
+	}
+
+	/**
+	 * 缓存key的标签索引，记录key所在的标签集合
+	 */
+	static String tagIndexKey(String cacheKey) {
+		return cacheKey.concat(TAG_INDEX_SUFFIX);
 	}
 
 	/**
@@ -154,18 +453,19 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 		Object prevValue = null;
 		// 考虑使用分布式锁，或者将redis的setIfAbsent改为原子性操作
 		synchronized (key) {
-			prevValue = level2Cache.get(cacheKey);
+			prevValue = writeBehindBuffer == null ? null : writeBehindBuffer.get(cacheKey);
+			if (prevValue != null) {
+				return toValueWrapper(prevValue);
+			}
+			prevValue = hasLevel2() ? getLevel2(cacheKey) : level1Cache.getIfPresent(getL1Key(key));
 			if (prevValue == null) {
-				long expire = getExpire();
-				if (expire > 0) {
-					level2Cache.set(getKey(key), toStoreValue(value), expire);
-				} else {
-					level2Cache.set(getKey(key), toStoreValue(value));
-				}
+				boolean allowL1 = setLevel2(cacheKey, toStoreValue(value), getExpire());
 
 				push(new CacheMessage(this.cacheName, key));
 
-				level1Cache.put(key, toStoreValue(value));
+				if (allowL1 && ifL1Open(cacheKey)) {
+					putL1(key, cacheKey, toStoreValue(value));
+				}
 			}
 		}
 		return toValueWrapper(prevValue);
@@ -174,24 +474,150 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 	@Override
 	public void evict(Object key) {
 		// 先清除redis中缓存数据，然后清除caffeine中的缓存，避免短时间内如果先清除caffeine缓存后其他请求会再从redis里加载到caffeine中
-		level2Cache.delete(getKey(key));
+		String cacheKey = getKey(key);
+		cancelLevel2Read(cacheKey);
+		if (writeBehindBuffer != null) {
+			writeBehindBuffer.remove(cacheKey, () -> deleteLevel2(cacheKey));
+		} else {
+			deleteLevel2(cacheKey);
+		}
 
 		push(new CacheMessage(this.cacheName, key));
 
-		level1Cache.invalidate(key);
+		invalidateL1(key, cacheKey);
 	}
 
 	@Override
 	public void clear() {
+		long start = CacheEvents.start();
 		// 先清除redis中缓存数据，然后清除caffeine中的缓存，避免短时间内如果先清除caffeine缓存后其他请求会再从redis里加载到caffeine中
-		Set<String> keys = level2Cache.keys(this.cacheName.concat(":*"));
-		for (String key : keys) {
-			level2Cache.delete(key);
+		if (writeBehindBuffer != null) {
+			writeBehindBuffer.clear(this::clearLevel2);
+		} else {
+			clearLevel2();
 		}
 
 		push(new CacheMessage(this.cacheName, null));
 
-		level1Cache.invalidateAll();
+		cancelAllLevel2Reads();
+		invalidateAllL1();
+		CacheEvents.clear(this.cacheName, false, start);
+	}
+
+	/**
+	 * 放入异步写缓冲区；开启大小防护时在写入线程序列化，用于判断能否放入一级缓存，刷新时直接写入序列化结果
+	 *
+	 * @return value是否允许放入一级缓存
+	 */
+	private boolean offerWriteBehind(String cacheKey, Object key, Object storeValue, long expire) {
+		byte[] raw = valueSizeGuard == null ? null : valueSizeGuard.serialize(storeValue);
+		writeBehindBuffer.offer(cacheKey, key, storeValue, raw, expire);
+		return valueSizeGuard == null || valueSizeGuard.allowL1(raw == null ? 0 : raw.length);
+	}
+
+	/**
+	 * 写入二级缓存
+	 *
+	 * @return value是否允许放入一级缓存
+	 */
+	private boolean setLevel2(String cacheKey, Object storeValue, long expire) {
+		if (!hasLevel2()) {
+			return true;
+		}
+		if (valueSizeGuard != null) {
+			return setGuardedLevel2(cacheKey, valueSizeGuard.serialize(storeValue), expire);
+		}
+		long start = CacheEvents.start();
+		// 与模板的value序列化方式一致，自行序列化以便记录写入的字节数
+		byte[] raw = level2Cache.serializeValue(storeValue);
+		if (hotKeyReplicas != null && hotKeyReplicas.isHot(cacheKey)) {
+			// 热点key的原key与所有副本通过一次pipeline写入
+			level2Cache.pipelineSetRawWithReplicas(cacheKey, raw, expire, hotKeyReplicas.replicaKeys(cacheKey), hotKeyReplicas.replicaExpire(expire));
+		} else {
+			level2Cache.setRaw(cacheKey, raw, expire);
+		}
+		CacheEvents.l2Set(this.cacheName, cacheKey, raw == null ? 0 : raw.length, start);
+		return true;
+	}
+
+	/**
+	 * 开启大小防护时写入二级缓存，异步写缓冲区刷新时也按此写入
+	 * <p>
+	 * 热点key的副本复制原key中实际存储的内容
+	 *
+	 * @param raw 序列化后的value
+	 * @return value是否允许放入一级缓存
+	 */
+	boolean setGuardedLevel2(String cacheKey, byte[] raw, long expire) {
+		long start = CacheEvents.start();
+		int size = valueSizeGuard.write(this.cacheName, cacheKey, raw, expire);
+		if (hotKeyReplicas != null && hotKeyReplicas.isHot(cacheKey)) {
+			List<String> replicaKeys = hotKeyReplicas.replicaKeys(cacheKey);
+			byte[] stored = level2Cache.getRaw(cacheKey);
+			if (stored == null) {
+				level2Cache.pipelineDelete(replicaKeys);
+			} else {
+				Map<String, byte[]> replicas = new LinkedHashMap<>(replicaKeys.size());
+				for (String replicaKey : replicaKeys) {
+					replicas.put(replicaKey, stored);
+				}
+				level2Cache.pipelineSetRaw(replicas, hotKeyReplicas.replicaExpire(expire));
+			}
+		}
+		CacheEvents.l2Set(this.cacheName, cacheKey, size, start);
+		return valueSizeGuard.allowL1(size);
+	}
+
+	/**
+	 * 从二级缓存读取，压缩或拆分存储的value还原后返回
+	 */
+	protected Object getLevel2(String cacheKey) {
+		if (!hasLevel2()) {
+			return null;
+		}
+		return readLevel2(cacheKey, level2Cache.get(cacheKey));
+	}
+
+	/**
+	 * 还原从二级缓存读到的value
+	 */
+	protected Object readLevel2(String cacheKey, Object value) {
+		return valueSizeGuard == null ? value : valueSizeGuard.read(cacheKey, value);
+	}
+
+	/**
+	 * 从二级缓存读到的value是否允许放入一级缓存
+	 */
+	protected boolean allowL1(Object level2Value) {
+		return valueSizeGuard == null || valueSizeGuard.allowL1(level2Value);
+	}
+
+	private void deleteLevel2(String cacheKey) {
+		if (!hasLevel2()) {
+			return;
+		}
+		List<String> keys = hotKeyReplicas != null && hotKeyReplicas.isHot(cacheKey)
+				? hotKeyReplicas.replicaKeys(cacheKey) : new ArrayList<>(1);
+		if (valueSizeGuard != null) {
+			valueSizeGuard.delete(cacheKey);
+		} else {
+			keys.add(cacheKey);
+		}
+		// 标签索引与key在同一次pipeline中删除，key打过标签时再从标签集合中移除，避免标签集合只增不减
+		Set<Object> tagKeys = level2Cache.pipelineDeleteWithTagIndex(keys, tagIndexKey(cacheKey));
+		if (!tagKeys.isEmpty()) {
+			level2Cache.pipelineSetRemove(tagKeys, cacheKey);
+		}
+	}
+
+	private void clearLevel2() {
+		if (!hasLevel2()) {
+			return;
+		}
+		Set<String> keys = level2Cache.keys(this.cacheName.concat(":*"));
+		for (String key : keys) {
+			level2Cache.delete(key);
+		}
 	}
 
 	/**
@@ -199,39 +625,468 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 	 */
 	@Override
 	protected Object lookup(Object key) {
+		return lookup(key, true);
+	}
+
+	/**
+	 * @param routeToOwner 分区模式下非归属key是否向归属节点查询，处理其他节点的查询时为false，避免成员不一致时来回转发
+	 */
+	private Object lookup(Object key, boolean routeToOwner) {
 		Object value = null;
         //处理key
 		String cacheKey = getKey(key);
+		Object l1Key = getL1Key(key);
+		if (valueSizeGuard != null && valueSizeGuard.isKeyTooLarge(this.cacheName, cacheKey)) {
+			return null;
+		}
 
 		// 是否开启一级缓存
 		boolean ifL1Open = ifL1Open(cacheKey);
+		if (ifL1Open && routeToOwner && partition != null) {
+			String owner = partition.ownerOf(cacheKey);
+			if (!partition.isSelf(owner)) {
+				return lookupFromOwner(key, cacheKey, l1Key, owner);
+			}
+		}
 		if (ifL1Open) {
 			// 从L1获取缓存
-			value = level1Cache.getIfPresent(key);
-			if (value != null) {
-				if (logger.isDebugEnabled()) {
-					logger.debug("level1Cache get cache, cacheName={}, key={}, value={}", this.getName(), key, value);
+			long start = CacheEvents.start();
+			value = level1Cache.getIfPresent(l1Key);
+			CacheEvents.l1Lookup(this.cacheName, cacheKey, value != null, start);
+			recordL1Access(cacheKey, value != null);
+			if (keyEncoder.isSharedL1()) {
+				if (value != null) {
+					sharedL1HitCount.increment();
+				} else {
+					sharedL1MissCount.increment();
 				}
+			}
+			if (value != null) {
+				logger.debug("level1Cache get cache, cacheName={}, key={}", this.cacheName, key);
+				touchLevel2(cacheKey);
+				return value;
+			}
+		}
+
+		// 异步写尚未写入redis的值
+		if (writeBehindBuffer != null) {
+			value = writeBehindBuffer.get(cacheKey);
+			if (value != null) {
+				return value;
+			}
+		}
+
+		return lookupLevel2(key, cacheKey, l1Key, ifL1Open);
+	}
+
+	/**
+	 * 从二级缓存读取，同一个key并发未命中时只有一个线程读取redis
+	 */
+	private Object lookupLevel2(Object key, String cacheKey, Object l1Key, boolean ifL1Open) {
+		if (!hasLevel2()) {
+			return null;
+		}
+
+		// 同一个key并发未命中时只有一个线程读取redis
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> reading = level2ReadMap.putIfAbsent(cacheKey, future);
+		if (reading != null) {
+			long waitStart = CacheEvents.start();
+			try {
+				return reading.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			} finally {
+				CacheEvents.lockWait(this.cacheName, cacheKey, CacheEvents.LOCK_LEVEL2_READ, waitStart);
+			}
+		}
+		try {
+			Object value = fetchLevel2(key, cacheKey, l1Key, ifL1Open, future);
+			future.complete(value);
+			if (value != null) {
+				touchLevel2(cacheKey);
+			}
+			return value;
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			level2ReadMap.remove(cacheKey, future);
+		}
+	}
+
+	/**
+	 * 分区模式下读取非归属key：先查近端缓存，未命中时向归属节点查询，归属节点未命中时由其读取redis并放入一级缓存；
+	 * 查询失败时直接读取redis，结果不放入一级缓存
+	 */
+	private Object lookupFromOwner(Object key, String cacheKey, Object l1Key, String owner) {
+		Object value = nearCache.getIfPresent(cacheKey);
+		if (value != null) {
+			touchLevel2(cacheKey);
+			return value;
+		}
+		if (writeBehindBuffer != null) {
+			value = writeBehindBuffer.get(cacheKey);
+			if (value != null) {
 				return value;
 			}
 		}
+		long generation = nearGeneration.get();
+		peerFetchCount.increment();
+		try {
+			byte[] raw = partition.fetch(owner, this.cacheName, cacheKey);
+			if (raw == null) {
+				return null;
+			}
+			value = level2Cache.deserializeValue(raw);
+		} catch (IOException | RuntimeException e) {
+			peerFetchFailedCount.increment();
+			logger.debug("peer fetch failed, read level2Cache instead, cacheName={}, key={}, owner={}", this.cacheName, key, owner, e);
+			return lookupLevel2(key, cacheKey, l1Key, false);
+		}
+		if (value != null && nearGeneration.get() == generation) {
+			nearCache.put(cacheKey, value);
+		}
+		return value;
+	}
+
+	/**
+	 * 处理其他节点的查询，当前节点按归属节点处理：一级缓存未命中时读取redis并放入一级缓存
+	 * <p>
+	 * 请求中只有redis key，先按索引查找一级缓存，未命中时按redis key中的业务key字符串读取；
+	 * 字符串与数值key与原key对应同一个一级缓存条目，其他类型的key由索引保证同一个redis key只保留一个条目
+	 *
+	 * @param cacheKey redis中的缓存key
+	 * @return 序列化的存储值，未命中时返回null
+	 */
+	byte[] lookupForPeer(String cacheKey) {
+		Object l1Key = l1KeyIndex.get(cacheKey);
+		Object value = l1Key == null ? null : level1Cache.getIfPresent(l1Key);
+		if (value != null) {
+			touchLevel2(cacheKey);
+		} else {
+			value = lookup(keyEncoder.fromL2Key(cacheKey), false);
+		}
+		return value == null ? null : level2Cache.serializeValue(value);
+	}
 
-		// 从L2获取缓存
-		value = level2Cache.get(cacheKey);
-		if (value != null && ifL1Open) {
-			if (logger.isDebugEnabled()) {
-				logger.debug("level2Cache get cache and put in level1Cache, cacheName={}, key={}, value={}", this.getName(), key, value);
+	/**
+	 * 放入一级缓存，分区模式下非归属key放入近端缓存
+	 */
+	private void putL1(Object key, String cacheKey, Object storeValue) {
+		if (partition != null && !partition.owns(cacheKey)) {
+			nearCache.put(cacheKey, storeValue);
+		} else {
+			Object l1Key = getL1Key(key);
+			level1Cache.put(l1Key, storeValue);
+			indexL1Key(cacheKey, l1Key);
+		}
+	}
+
+	/**
+	 * 记录redis key对应的一级缓存key，同一个redis key只保留一个一级缓存条目
+	 */
+	private void indexL1Key(String cacheKey, Object l1Key) {
+		if (l1KeyIndex == null) {
+			return;
+		}
+		Object previous = l1KeyIndex.put(cacheKey, l1Key);
+		if (previous != null && !previous.equals(l1Key)) {
+			level1Cache.invalidate(previous);
+		}
+	}
+
+	/**
+	 * 一级缓存中本cacheName的条目被移除，由一级缓存实例的移除监听回调
+	 */
+	void onL1Removal(Object l1Key, RemovalCause cause) {
+		if (l1KeyIndex == null || cause == RemovalCause.REPLACED) {
+			return;
+		}
+		if (cause.wasEvicted()) {
+			sharedL1EvictionCount.increment();
+		}
+		String cacheKey = getKey(keyEncoder.fromL1Key(l1Key));
+		// 回调是异步的，期间同一个key可能已重新放入，此时恢复索引
+		if (l1KeyIndex.remove(cacheKey, l1Key) && level1Cache.asMap().containsKey(l1Key)) {
+			l1KeyIndex.putIfAbsent(cacheKey, l1Key);
+		}
+	}
+
+	/**
+	 * 从一级缓存及近端缓存中移除
+	 */
+	private void invalidateL1(Object key, String cacheKey) {
+		Object l1Key = getL1Key(key);
+		level1Cache.invalidate(l1Key);
+		if (l1KeyIndex != null) {
+			Object indexed = l1KeyIndex.remove(cacheKey);
+			if (indexed != null && !indexed.equals(l1Key)) {
+				level1Cache.invalidate(indexed);
+			}
+		}
+		if (nearCache != null) {
+			nearGeneration.incrementAndGet();
+			nearCache.invalidate(cacheKey);
+		}
+	}
+
+	/**
+	 * 读取二级缓存，允许时放入一级缓存
+	 *
+	 * @param future 本次读取登记的结果，读取期间收到清理消息时已被移除，此时读到的可能是旧值，不放入一级缓存
+	 */
+	private Object fetchLevel2(Object key, String cacheKey, Object l1Key, boolean ifL1Open, CompletableFuture<Object> future) {
+		RedisCache reader = getLevel2Reader();
+		// 更新或清理后的首次读取访问主节点，不参与读合并（读合并按读策略访问从节点）
+		boolean primaryRead = reader != level2Cache && isPrimaryRead(cacheKey);
+		if (primaryRead) {
+			reader = level2Cache;
+		}
+		long eventStart = CacheEvents.start();
+		String readKey = cacheKey;
+		if (hotKeyReplicas != null) {
+			hotKeyReplicas.recordRead(cacheKey);
+			if (hotKeyReplicas.isHot(cacheKey)) {
+				// 热点key随机读取一个副本，分散到不同分片
+				readKey = hotKeyReplicas.randomReplicaKey(cacheKey);
+			}
+		}
+		byte[] raw = readRaw(reader, readKey, primaryRead);
+		if (raw == null && !readKey.equals(cacheKey)) {
+			// 副本尚未写入或已被删除，读取原key后补写该副本
+			raw = readRaw(reader, cacheKey, primaryRead);
+			// 读取期间收到更新或清理消息时读到的可能是旧值，不补写副本；补写后才收到消息时删除刚写入的副本
+			if (raw != null && level2ReadMap.get(cacheKey) == future) {
+				level2Cache.setRaw(readKey, raw, hotKeyReplicas.replicaExpire(getExpire()));
+				if (level2ReadMap.get(cacheKey) != future) {
+					level2Cache.delete(readKey);
+				}
 			}
-			level1Cache.put(key, toStoreValue(value));
+		}
+		int level2Bytes = raw == null ? 0 : raw.length;
+		// 准入只看反序列化耗时，网络耗时与value的重建成本无关
+		long deserializeStart = System.nanoTime();
+		Object level2Value = reader.deserializeValue(raw);
+		long deserializeNanos = System.nanoTime() - deserializeStart;
+		Object value = readLevel2(cacheKey, level2Value);
+		CacheEvents.l2Get(this.cacheName, cacheKey, value != null, level2Bytes, eventStart);
+		if (value != null && ifL1Open && allowL1(level2Value) && level2ReadMap.get(cacheKey) == future
+				&& admitL1(cacheKey, deserializeNanos, level2Bytes)) {
+			logger.debug("level2Cache get cache and put in level1Cache, cacheName={}, key={}", this.cacheName, key);
+			level1Cache.put(l1Key, toStoreValue(value));
+			indexL1Key(cacheKey, l1Key);
 		}
 		return value;
 	}
 
-	private String getKey(Object key) {
-		return this.cacheName.concat(":").concat(key.toString());
+	/**
+	 * 开启滑动过期时记录读取命中的key，由后台批量续期
+	 */
+	private void touchLevel2(String cacheKey) {
+		if (slidingExpirationRenewer != null) {
+			slidingExpirationRenewer.touch(cacheKey);
+		}
+	}
+
+	/**
+	 * 读取未反序列化的value，开启读合并时与其他线程的查询合并为一次MGET，反序列化在各自线程中进行
+	 *
+	 * @param direct 是否不参与读合并，直接读取reader
+	 */
+	private byte[] readRaw(RedisCache reader, String key, boolean direct) {
+		return readBatcher != null && !direct ? readBatcher.get(key) : reader.getRaw(key);
+	}
+
+	/**
+	 * 取消进行中的二级缓存读取，并标记该key的下一次读取访问主节点
+	 */
+	private void cancelLevel2Read(String cacheKey) {
+		level2ReadMap.remove(cacheKey);
+		if (primaryReadKeys != null) {
+			primaryReadKeys.put(cacheKey, Boolean.TRUE);
+		}
+	}
+
+	private void cancelAllLevel2Reads() {
+		level2ReadMap.clear();
+		if (primaryReadKeys != null) {
+			primaryReadUntil = System.currentTimeMillis() + primaryReadAfterInvalidationMillis;
+		}
+	}
+
+	/**
+	 * 是否应读取主节点，标记只使用一次，之后的读取由一级缓存中的新值或从节点满足
+	 */
+	private boolean isPrimaryRead(String cacheKey) {
+		if (primaryReadKeys == null) {
+			return false;
+		}
+		return primaryReadKeys.asMap().remove(cacheKey) != null || System.currentTimeMillis() < primaryReadUntil;
+	}
+
+	/**
+	 * 记录一级缓存的访问，供准入策略统计访问频率与命中率
+	 */
+	protected void recordL1Access(String cacheKey, boolean hit) {
+		if (admissionPolicy == null) {
+			return;
+		}
+		if (hit) {
+			admissionPolicy.recordHit(cacheKey);
+		} else {
+			admissionPolicy.recordMiss(cacheKey);
+		}
+	}
+
+	/**
+	 * 从二级缓存读到的值是否通过一级缓存准入
+	 *
+	 * @param costNanos 反序列化耗时，未知时传0
+	 * @param bytes     value字节数，未知时传0
+	 */
+	protected boolean admitL1(String cacheKey, long costNanos, int bytes) {
+		return admissionPolicy == null || admissionPolicy.admit(cacheKey, costNanos, bytes);
+	}
+
+	void setHotKeyReplicas(HotKeyReplicas hotKeyReplicas) {
+		this.hotKeyReplicas = hotKeyReplicas;
+	}
+
+	void setReadBatcher(Level2ReadBatcher readBatcher) {
+		this.readBatcher = readBatcher;
+	}
+
+	public Level2ReadBatcher getReadBatcher() {
+		return readBatcher;
+	}
+
+	void setAdmissionPolicy(L1AdmissionPolicy admissionPolicy) {
+		this.admissionPolicy = admissionPolicy;
+	}
+
+	public L1AdmissionPolicy getAdmissionPolicy() {
+		return admissionPolicy;
+	}
+
+	void setValueSizeGuard(ValueSizeGuard valueSizeGuard) {
+		this.valueSizeGuard = valueSizeGuard;
+	}
+
+	void setWriteBehindBuffer(WriteBehindBuffer writeBehindBuffer) {
+		this.writeBehindBuffer = writeBehindBuffer;
+	}
+
+	/**
+	 * 将异步写缓冲区中积压的数据写入redis
+	 */
+	public void flushWriteBehind() {
+		if (writeBehindBuffer != null) {
+			writeBehindBuffer.flush();
+		}
+	}
+
+	/**
+	 * 停止异步写与滑动过期的定时任务，并将异步写缓冲区中积压的数据写入redis，缓存实例被替换或关闭时调用
+	 */
+	void close() {
+		if (slidingExpirationRenewer != null) {
+			slidingExpirationRenewer.stop();
+		}
+		if (writeBehindBuffer != null) {
+			writeBehindBuffer.stop();
+		}
+	}
+
+	public WriteBehindBuffer getWriteBehindBuffer() {
+		return writeBehindBuffer;
+	}
+
+	void setPartition(L1Partition partition) {
+		this.partition = partition;
+		if (l1KeyIndex == null) {
+			l1KeyIndex = new ConcurrentHashMap<>();
+		}
+		L2CacheConfig.Partition partitionConfig = partition.getConfig();
+		this.nearCache = Caffeine.newBuilder()
+				.maximumSize(partitionConfig.getNearCacheSize())
+				.expireAfterWrite(partitionConfig.getNearCacheExpireMillis(), TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	public L1Partition getPartition() {
+		return partition;
+	}
+
+	void setLoaderBulkhead(LoaderBulkhead loaderBulkhead) {
+		this.loaderBulkhead = loaderBulkhead;
+	}
+
+	public LoaderBulkhead getLoaderBulkhead() {
+		return loaderBulkhead;
+	}
+
+	void setSlidingExpirationRenewer(SlidingExpirationRenewer slidingExpirationRenewer) {
+		this.slidingExpirationRenewer = slidingExpirationRenewer;
+	}
+
+	public SlidingExpirationRenewer getSlidingExpirationRenewer() {
+		return slidingExpirationRenewer;
 	}
 
-	private long getExpire() {
+	protected Cache<Object, Object> getLevel1Cache() {
+		return level1Cache;
+	}
+
+	protected RedisCache getLevel2Cache() {
+		return level2Cache;
+	}
+
+	/**
+	 * 缓存查询使用的二级缓存，配置了读连接时可能读取从节点
+	 */
+	protected RedisCache getLevel2Reader() {
+		return level2Cache.getReader(readPolicy);
+	}
+
+	void setReadPolicy(L2CacheConfig.ReadPolicy readPolicy) {
+		this.readPolicy = readPolicy;
+	}
+
+	/**
+	 * @param millis 更新或清理后多长时间内的首次读取访问主节点，小于等于0表示不处理
+	 */
+	void setPrimaryReadAfterInvalidation(long millis) {
+		if (millis <= 0) {
+			return;
+		}
+		this.primaryReadAfterInvalidationMillis = millis;
+		this.primaryReadKeys = Caffeine.newBuilder()
+				.expireAfterWrite(millis, TimeUnit.MILLISECONDS)
+				.maximumSize(PRIMARY_READ_KEYS_MAX_SIZE)
+				.build();
+	}
+
+	protected String getKey(Object key) {
+		return keyEncoder.toL2Key(key);
+	}
+
+	/**
+	 * 一级缓存中的key
+	 */
+	protected Object getL1Key(Object key) {
+		return keyEncoder.toL1Key(key);
+	}
+
+	/**
+	 * 注册了加载器的缓存需保留原始key传给加载器，不压缩一级缓存key
+	 */
+	void setKeyEncoder(CacheKeyEncoder keyEncoder) {
+		this.keyEncoder = keyEncoder;
+		this.l1KeyIndex = keyEncoder.isSharedL1() ? new ConcurrentHashMap<>() : null;
+	}
+
+	long getExpire() {
 		long expire = defaultExpiration;
 		Long cacheNameExpire = expires.get(this.cacheName);
 		return cacheNameExpire == null ? expire : cacheNameExpire.longValue();
@@ -245,7 +1100,20 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 	 * @version 1.0.0
 	 */
 	private void push(CacheMessage message) {
-		level2Cache.getRedisTemplate().convertAndSend(redisConfig.getTopic(), message);
+		if (cacheMode == L2CacheConfig.CacheMode.L1) {
+			// 只使用一级缓存时本节点的值没有redis副本，不能被自己的通知清除
+			pushToOthers(message);
+			return;
+		}
+		cacheMessagePublisher.publish(message);
+	}
+
+	/**
+	 * 只通知其他节点，本节点已在本地完成变更
+	 */
+	protected void pushToOthers(CacheMessage message) {
+		message.setOrigin(nodeId);
+		cacheMessagePublisher.publish(message);
 	}
 
 	/**
@@ -257,70 +1125,304 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 	 */
 	public void clearLocal(Object key) {
 		logger.debug("clear local cache, the key is : {}", key);
+		invalidationRate.record();
+		long start = CacheEvents.start();
 		if (key == null) {
-			level1Cache.invalidateAll();
+			cancelAllLevel2Reads();
+			invalidateAllL1();
+			CacheEvents.clear(this.cacheName, true, start);
 		} else {
-			level1Cache.invalidate(key);
+			String cacheKey = getKey(key);
+			cancelLevel2Read(cacheKey);
+			invalidateL1(key, cacheKey);
+			CacheEvents.invalidation(this.cacheName, cacheKey, 1, start);
 		}
 	}
 
 	/**
-	 * 查询是否开启一级缓存
+	 * 按redis中的缓存key清理本地缓存，原始key对象无法跨节点还原时使用
 	 *
-	 * @param key 缓存key
-	 * @return
+	 * @param cacheKey cacheName:key
 	 */
-	private boolean ifL1Open(Object key) {
-		// 检测开关与缓存名称
-		if (ifL1Open()) {
-			return true;
+	public void clearLocalByCacheKey(String cacheKey) {
+		logger.debug("clear local cache, the cache key is : {}", cacheKey);
+		invalidationRate.record();
+		long start = CacheEvents.start();
+		cancelLevel2Read(cacheKey);
+		if (nearCache != null) {
+			nearGeneration.incrementAndGet();
+			nearCache.invalidate(cacheKey);
+		}
+		if (l1KeyIndex != null) {
+			Object l1Key = l1KeyIndex.remove(cacheKey);
+			if (l1Key != null) {
+				level1Cache.invalidate(l1Key);
+			}
+		} else {
+			level1Cache.asMap().keySet().removeIf(l1Key -> getKey(l1Key).equals(cacheKey));
 		}
+		CacheEvents.invalidation(this.cacheName, cacheKey, 1, start);
+	}
 
-		// 检测key
-		return ifL1OpenByKey(key);
+	/**
+	 * 按redis中的缓存key批量清理本地缓存，只处理属于当前cacheName的key，有一级缓存key索引时按索引清理，否则遍历一次一级缓存
+	 *
+	 * @param cacheKeys cacheName:key，可包含其他cacheName的key
+	 */
+	public void clearLocalByCacheKeys(Collection<String> cacheKeys) {
+		Set<String> ownedKeys = ownedCacheKeys(cacheKeys);
+		if (ownedKeys.isEmpty()) {
+			return;
+		}
+		logger.debug("clear local cache, the cache keys size is : {}", ownedKeys.size());
+		invalidationRate.record();
+		long start = CacheEvents.start();
+		for (String cacheKey : ownedKeys) {
+			cancelLevel2Read(cacheKey);
+		}
+		if (nearCache != null) {
+			nearGeneration.incrementAndGet();
+			nearCache.invalidateAll(ownedKeys);
+		}
+		if (l1KeyIndex != null) {
+			for (String cacheKey : ownedKeys) {
+				Object l1Key = l1KeyIndex.remove(cacheKey);
+				if (l1Key != null) {
+					level1Cache.invalidate(l1Key);
+				}
+			}
+		} else {
+			level1Cache.asMap().keySet().removeIf(l1Key -> ownedKeys.contains(getKey(l1Key)));
+		}
+		CacheEvents.invalidation(this.cacheName, null, ownedKeys.size(), start);
 	}
 
 	/**
-	 * 本地缓存检测，检测开关与缓存名称
+	 * 丢弃异步写缓冲区中尚未写入redis的值，避免批量删除后又被写回
 	 *
-	 * @return
+	 * @param cacheKeys cacheName:key，可包含其他cacheName的key
 	 */
-	private boolean ifL1Open() {
-		// 判断是否开启过本地缓存
-		if (composite.isL1AllOpen() || composite.isL1Manual()) {
-			openedL1Cache.compareAndSet(false, true);
+	void discardPendingWrites(Collection<String> cacheKeys) {
+		if (writeBehindBuffer == null) {
+			return;
 		}
-		// 是否启用一级缓存
-		if (composite.isL1AllOpen()) {
-			return true;
+		for (String cacheKey : ownedCacheKeys(cacheKeys)) {
+			writeBehindBuffer.remove(cacheKey, () -> { });
 		}
-		// 是否使用手动匹配开关
-		if (composite.isL1Manual()) {
-			// 手动匹配缓存名字集合，针对cacheName维度
-			Set<String> l1ManualCacheNameSet = composite.getL1ManualCacheNameSet();
-			if (!CollectionUtils.isEmpty(l1ManualCacheNameSet) && composite.getL1ManualCacheNameSet().contains(this.getName())) {
-				return true;
+	}
+
+	private Set<String> ownedCacheKeys(Collection<String> cacheKeys) {
+		String prefix = this.cacheName.concat(":");
+		Set<String> ownedKeys = new HashSet<>();
+		for (String cacheKey : cacheKeys) {
+			if (cacheKey.startsWith(prefix)) {
+				ownedKeys.add(cacheKey);
 			}
 		}
-		return false;
+		return ownedKeys;
 	}
 
 	/**
-	 * 本地缓存检测，检测key
+	 * 预热，从二级缓存（注册了加载器时由加载器）读取后放入一级缓存，不经过一级缓存准入
 	 *
-	 * @param key
-	 * @return
+	 * @return 成功放入一级缓存的key数量
 	 */
-	private boolean ifL1OpenByKey(Object key) {
-		// 是否使用手动匹配开关
-		if (composite.isL1Manual()) {
-			// 手动匹配缓存key集合，针对单个key维度
-			Set<String> l1ManualKeySet = composite.getL1ManualKeySet();
-			if (!CollectionUtils.isEmpty(l1ManualKeySet) && l1ManualKeySet.contains(getKey(key))) {
-				return true;
+	public int warm(Collection<?> keys) {
+		int warmed = 0;
+		for (Object key : keys) {
+			String cacheKey = getKey(key);
+			if (!ifL1Open(cacheKey)) {
+				continue;
+			}
+			Object value = lookup(key);
+			if (value != null) {
+				putL1(key, cacheKey, value);
+				warmed++;
 			}
 		}
+		return warmed;
+	}
 
-		return false;
+	/**
+	 * 缓存统计
+	 *
+	 * @param hotKeyLimit 返回的热点key数量
+	 * @param scanLimit   SCAN统计二级缓存key数量的上限，小于等于0时不统计；SCAN按上限遍历redis，开销与key数量成正比，只应按需调用
+	 * @param sampleSize  估算一级缓存字节数时抽样的条目数
+	 */
+	public CacheStatistics getStatistics(int hotKeyLimit, long scanLimit, int sampleSize) {
+		CacheStatistics statistics = new CacheStatistics();
+		statistics.setCacheName(this.cacheName);
+		statistics.setCacheMode(cacheMode.name());
+		statistics.setL1Size(keyEncoder.isSharedL1() ? l1KeyIndex.size() : level1Cache.estimatedSize());
+		statistics.setL1EstimatedBytes(estimateL1Bytes(statistics.getL1Size(), sampleSize));
+		if (keyEncoder.isSharedL1()) {
+			// 共享实例的统计是所有cacheName合计的，使用本cacheName自己的计数
+			long hits = sharedL1HitCount.sum();
+			long misses = sharedL1MissCount.sum();
+			statistics.setL1HitRatio(hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+			statistics.setL1HitCount(hits);
+			statistics.setL1MissCount(misses);
+			statistics.setL1EvictionCount(sharedL1EvictionCount.sum());
+		} else {
+			CacheStats stats = level1Cache.stats();
+			statistics.setL1HitRatio(stats.hitRate());
+			statistics.setL1HitCount(stats.hitCount());
+			statistics.setL1MissCount(stats.missCount());
+			statistics.setL1EvictionCount(stats.evictionCount());
+		}
+		statistics.setL2KeyCount(-1);
+		if (hasLevel2() && scanLimit > 0) {
+			try {
+				long l2KeyCount = level2Cache.scanCount(this.cacheName.concat(":*"), scanLimit);
+				statistics.setL2KeyCount(l2KeyCount);
+				statistics.setL2KeyCountTruncated(l2KeyCount >= scanLimit);
+			} catch (RuntimeException e) {
+				// 集群模式不支持跨节点SCAN
+				logger.warn("scan level2 key count failed, cacheName={}", this.cacheName, e);
+			}
+		}
+		statistics.setInvalidationsPerSecond(invalidationRate.getRatePerSecond());
+		statistics.setHotKeys(hotKeys(hotKeyLimit));
+		if (writeBehindBuffer != null) {
+			statistics.setWriteBehindPending(writeBehindBuffer.getPendingCount());
+			statistics.setWriteBehindWriteThroughCount(writeBehindBuffer.getWriteThroughCount());
+		}
+		if (slidingExpirationRenewer != null) {
+			statistics.setSlidingRenewedCount(slidingExpirationRenewer.getRenewedCount());
+		}
+		if (partition != null) {
+			statistics.setPartitionMembers(partition.getMembers().size());
+			statistics.setNearCacheSize(nearCache.estimatedSize());
+			statistics.setPeerFetchCount(peerFetchCount.sum());
+			statistics.setPeerFetchFailedCount(peerFetchFailedCount.sum());
+		}
+		if (loaderBulkhead != null) {
+			statistics.setLoaderLimit(loaderBulkhead.getLimit());
+			statistics.setLoaderInFlight(loaderBulkhead.getInFlight());
+			statistics.setLoaderWaiting(loaderBulkhead.getWaiting());
+			statistics.setLoaderQueuedCount(loaderBulkhead.getQueuedCount());
+			statistics.setLoaderAverageQueueMicros(loaderBulkhead.getAverageQueueMicros());
+			statistics.setLoaderRejectedCount(loaderBulkhead.getRejectedCount());
+			statistics.setLoaderStaleCount(loaderBulkhead.getStaleCount());
+		}
+		if (admissionPolicy != null) {
+			statistics.setAdmittedCount(admissionPolicy.getAdmittedCount());
+			statistics.setRejectedCount(admissionPolicy.getRejectedCount());
+		}
+		if (readBatcher != null) {
+			statistics.setReadBatchCount(readBatcher.getBatchCount());
+			statistics.setReadBatchAverageSize(readBatcher.getAverageBatchSize());
+			statistics.setReadBatchAverageWaitMicros(readBatcher.getAverageWaitMicros());
+		}
+		return statistics;
+	}
+
+	/**
+	 * 一级缓存中的热点key：配置了maximumSize时取淘汰策略中频率最高的key，否则取最近访问的key
+	 */
+	private List<String> hotKeys(int limit) {
+		// 共用一级缓存实例时热点key包含其他cacheName，多取一些再过滤
+		int fetchLimit = keyEncoder.isSharedL1() ? limit * 10 : limit;
+		Map<Object, Object> hottest = level1Cache.policy().eviction()
+				.map(eviction -> eviction.hottest(fetchLimit))
+				.orElseGet(() -> level1Cache.policy().expireAfterAccess()
+						.map(expiration -> expiration.youngest(fetchLimit))
+						.orElse(Collections.emptyMap()));
+		List<String> hotKeys = new ArrayList<>(hottest.size());
+		for (Object l1Key : hottest.keySet()) {
+			if (hotKeys.size() >= limit) {
+				break;
+			}
+			if (keyEncoder.owns(l1Key)) {
+				hotKeys.add(keyEncoder.fromL1Key(l1Key).toString());
+			}
+		}
+		return hotKeys;
+	}
+
+	/**
+	 * 抽样序列化一级缓存条目，按平均大小估算总字节数
+	 */
+	@SuppressWarnings("unchecked")
+	private long estimateL1Bytes(long size, int sampleSize) {
+		if (size == 0 || sampleSize <= 0) {
+			return 0;
+		}
+		RedisSerializer<Object> serializer = (RedisSerializer<Object>) level2Cache.getRedisTemplate().getValueSerializer();
+		long sampledBytes = 0;
+		int sampled = 0;
+		try {
+			for (Map.Entry<Object, Object> entry : level1Cache.asMap().entrySet()) {
+				if (sampled >= sampleSize) {
+					break;
+				}
+				if (!keyEncoder.owns(entry.getKey())) {
+					continue;
+				}
+				byte[] bytes = serializer.serialize(entry.getValue());
+				sampledBytes += entry.getKey().toString().length() + (bytes == null ? 0 : bytes.length);
+				sampled++;
+			}
+		} catch (SerializationException e) {
+			logger.debug("estimate level1Cache bytes failed, cacheName={}", this.cacheName, e);
+			return -1;
+		}
+		return sampled == 0 ? 0 : sampledBytes * size / sampled;
+	}
+
+	/**
+	 * 清空当前cacheName的一级缓存，共用一级缓存实例时只移除属于当前cacheName的key
+	 */
+	private void invalidateAllL1() {
+		if (nearCache != null) {
+			nearGeneration.incrementAndGet();
+			nearCache.invalidateAll();
+		}
+		if (keyEncoder.isSharedL1()) {
+			l1KeyIndex.clear();
+			level1Cache.asMap().keySet().removeIf(keyEncoder::owns);
+		} else {
+			if (l1KeyIndex != null) {
+				l1KeyIndex.clear();
+			}
+			level1Cache.invalidateAll();
+		}
+	}
+
+	void setCacheMode(L2CacheConfig.CacheMode cacheMode) {
+		this.cacheMode = cacheMode;
+	}
+
+	void setNodeId(String nodeId) {
+		this.nodeId = nodeId;
+	}
+
+	public L2CacheConfig.CacheMode getCacheMode() {
+		return cacheMode;
+	}
+
+	/**
+	 * 是否使用二级缓存
+	 */
+	protected boolean hasLevel2() {
+		return cacheMode != L2CacheConfig.CacheMode.L1;
+	}
+
+	void setL1CacheRouting(L1CacheRouting l1CacheRouting) {
+		this.l1CacheRouting = l1CacheRouting;
+	}
+
+	/**
+	 * 查询是否开启一级缓存
+	 *
+	 * @param cacheKey redis中的缓存key
+	 * @return
+	 */
+	protected boolean ifL1Open(String cacheKey) {
+		if (cacheMode != L2CacheConfig.CacheMode.COMPOSITE) {
+			return cacheMode == L2CacheConfig.CacheMode.L1;
+		}
+		return l1CacheRouting.isL1Open(this.cacheName, cacheKey);
 	}
 }
@@ -1,18 +1,36 @@
 package com.jincou.core.spring;
 
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.jincou.core.cache.RedisCache;
+import com.jincou.core.cache.ValueSizeGuard;
 import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.jfr.CacheEvents;
+import com.jincou.core.sync.CacheMessage;
+import com.jincou.core.sync.CacheMessagePublisher;
+import com.jincou.core.sync.RedisTopicCacheMessagePublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
@@ -21,29 +39,123 @@ import java.util.concurrent.TimeUnit;
  * @author xub
  * @date 2022/3/16 下午3:12
  */
-public class RedisCaffeineCacheManager implements CacheManager {
+public class RedisCaffeineCacheManager implements CacheManager, DisposableBean {
 
 	private final Logger logger = LoggerFactory.getLogger(RedisCaffeineCacheManager.class);
 
+	/**
+	 * 按标签清除时每批SSCAN读取及pipeline删除的key数量
+	 */
+	private static final int TAG_EVICT_BATCH_SIZE = 500;
+
+	/**
+	 * 拒绝动态创建的告警间隔，单位毫秒
+	 */
+	private static final long REFUSED_DYNAMIC_CACHE_WARN_MILLIS = 60000;
+
 	private ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<String, Cache>();
 
+	/**
+	 * 已动态创建（未在cacheNames中配置）的缓存实例数
+	 */
+	private final AtomicInteger dynamicCacheCount = new AtomicInteger();
+
+	/**
+	 * 超过动态创建上限被拒绝的次数，及上一次打印告警的时间，告警按间隔打印，避免每次getCache都打印
+	 */
+	private final AtomicLong refusedDynamicCacheCount = new AtomicLong();
+
+	private final AtomicLong refusedDynamicCacheWarnMillis = new AtomicLong();
+
+	/**
+	 * 当前节点标识，用于识别自己发出的缓存通知
+	 */
+	private final String nodeId = UUID.randomUUID().toString();
+
 	private L2CacheConfig l2CacheConfig;
 
 
 	private RedisCache redisService;
 
+	private CacheMessagePublisher cacheMessagePublisher;
+
 
 	private boolean dynamic = true;
 
 	private Set<String> cacheNames;
 
+	/**
+	 * 一级缓存路由，所有cacheName共用，运行时可原子替换
+	 */
+	private L1CacheRouting l1CacheRouting;
+
+	/**
+	 * key与value大小防护，未开启时为null
+	 */
+	private ValueSizeGuard valueSizeGuard;
+
+	/**
+	 * 二级缓存使用的redis实例，key为实例名称，默认实例为spring.redis配置的连接
+	 */
+	private ConcurrentMap<String, RedisInstance> redisInstances = new ConcurrentHashMap<>();
+
+	/**
+	 * 按cacheName注册的加载器，注册了加载器的cacheName创建为读穿透缓存
+	 */
+	private ConcurrentMap<String, CacheLoader<Object, Object>> loaderMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 共享一级缓存，开启sharedL1时才创建
+	 */
+	private volatile com.github.benmanes.caffeine.cache.Cache<Object, Object> sharedLevel1Cache;
+
+	/**
+	 * 异步写刷新与滑动过期续期线程，存在开启异步写或滑动过期的cacheName时才创建
+	 */
+	private volatile ScheduledExecutorService writeBehindScheduler;
+
+	/**
+	 * 热点key副本，开启hotKey时才创建，所有cacheName共用
+	 */
+	private HotKeyReplicas hotKeyReplicas;
+
+	/**
+	 * 分区一级缓存，开启partition时才创建，所有cacheName共用
+	 */
+	private L1Partition partition;
+
 	public RedisCaffeineCacheManager(L2CacheConfig l2CacheConfig,
 									 RedisCache redisService) {
+		this(l2CacheConfig, redisService, new RedisTopicCacheMessagePublisher(redisService, l2CacheConfig.getRedis().getTopic()));
+	}
+
+	public RedisCaffeineCacheManager(L2CacheConfig l2CacheConfig,
+									 RedisCache redisService,
+									 CacheMessagePublisher cacheMessagePublisher) {
 		super();
 		this.l2CacheConfig = l2CacheConfig;
 		this.redisService = redisService;
+		this.cacheMessagePublisher = cacheMessagePublisher;
 		this.dynamic = l2CacheConfig.isDynamic();
 		this.cacheNames = l2CacheConfig.getCacheNames();
+		this.l1CacheRouting = new L1CacheRouting(l2CacheConfig.getComposite());
+		if (l2CacheConfig.getGuard().isEnabled()) {
+			this.valueSizeGuard = new ValueSizeGuard(redisService, l2CacheConfig.getGuard());
+		}
+		this.redisInstances.put(RedisInstance.DEFAULT, new RedisInstance(RedisInstance.DEFAULT, redisService, cacheMessagePublisher, valueSizeGuard));
+		CacheEvents.configure(l2CacheConfig.getJfr());
+		if (l2CacheConfig.getHotKey().isEnabled()) {
+			this.hotKeyReplicas = new HotKeyReplicas(l2CacheConfig.getHotKey(), redisService);
+			this.hotKeyReplicas.start();
+		}
+		if (l2CacheConfig.getPartition().isEnabled()) {
+			this.partition = new L1Partition(l2CacheConfig.getPartition(), redisService, this::lookupForPeer);
+			try {
+				this.partition.start();
+			} catch (IOException e) {
+				throw new IllegalStateException("start l1 partition failed", e);
+			}
+		}
 	}
 
 	@Override
@@ -52,18 +164,325 @@ public class RedisCaffeineCacheManager implements CacheManager {
 		if(cache != null) {
 			return cache;
 		}
-		if(!dynamic && !cacheNames.contains(name)) {
+		boolean configured = cacheNames.contains(name);
+		if(!dynamic && !configured) {
 			return cache;
 		}
+		// 同一个cacheName只构建一次，避免并发首次访问时重复创建caffeine实例
+		return cacheMap.computeIfAbsent(name, cacheName -> configured ? createCache(cacheName) : createDynamicCache(cacheName));
+	}
 
-		cache = new RedisCaffeineCache(name, redisService, caffeineCache(), l2CacheConfig);
-		Cache oldCache = cacheMap.putIfAbsent(name, cache);
+	/**
+	 * 在创建函数内检查上限并占位，并发创建不同的cacheName时也不会超过上限，超过时返回null不创建
+	 */
+	private Cache createDynamicCache(String name) {
+		int maxDynamicCaches = l2CacheConfig.getMaxDynamicCaches();
+		if (maxDynamicCaches <= 0) {
+			return createCache(name);
+		}
+		if (dynamicCacheCount.incrementAndGet() > maxDynamicCaches) {
+			dynamicCacheCount.decrementAndGet();
+			warnRefusedDynamicCache(name, maxDynamicCaches);
+			return null;
+		}
+		try {
+			return createCache(name);
+		} catch (RuntimeException e) {
+			dynamicCacheCount.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * 每分钟最多打印一次，附带期间被拒绝的次数
+	 */
+	private void warnRefusedDynamicCache(String name, int maxDynamicCaches) {
+		long refused = refusedDynamicCacheCount.incrementAndGet();
+		long now = System.currentTimeMillis();
+		long lastWarn = refusedDynamicCacheWarnMillis.get();
+		if (now - lastWarn < REFUSED_DYNAMIC_CACHE_WARN_MILLIS || !refusedDynamicCacheWarnMillis.compareAndSet(lastWarn, now)) {
+			return;
+		}
+		logger.warn("too many cache instances, refuse to create cache dynamically, the cache name is : {}, maxDynamicCaches={}, refusedCount={}",
+				name, maxDynamicCaches, refused);
+	}
+
+	private Cache createCache(String name) {
+		RedisCaffeineCache cache;
+		RedisInstance redisInstance = redisInstance(name);
+		CacheLoader<Object, Object> loader = loaderMap.get(name);
+		L2CacheConfig.CacheMode cacheMode = l2CacheConfig.getCacheModes().getOrDefault(name, L2CacheConfig.CacheMode.COMPOSITE);
+		L2CacheConfig.Partition partitionConfig = l2CacheConfig.getPartition();
+		boolean partitioned = partition != null && loader == null && cacheMode == L2CacheConfig.CacheMode.COMPOSITE
+				&& (partitionConfig.getCacheNames().isEmpty() || partitionConfig.getCacheNames().contains(name));
+		if (loader == null && l2CacheConfig.getCaffeine().isSharedL1()) {
+			cache = new RedisCaffeineCache(name, redisInstance.getRedisCache(), sharedCaffeineCache(), l2CacheConfig,
+					redisInstance.getCacheMessagePublisher());
+			cache.setKeyEncoder(new CacheKeyEncoder(name, l2CacheConfig.getCaffeine().isCompactKeys(), true));
+		} else if (loader == null) {
+			cache = new RedisCaffeineCache(name, redisInstance.getRedisCache(), partitioned ? partitionedCaffeineCache(name) : caffeineCache(),
+					l2CacheConfig, redisInstance.getCacheMessagePublisher());
+		} else {
+			// refreshAfterWrite需要按cacheName回调各自的加载器，读穿透缓存始终使用独立的caffeine实例
+			cache = loadingCache(name, loader, redisInstance);
+		}
+		cache.setCacheMode(cacheMode);
+		cache.setNodeId(nodeId);
+		L2CacheConfig.ReadPolicy readPolicy = l2CacheConfig.getRedis().getConnection().getReadPolicies().get(name);
+		cache.setReadPolicy(readPolicy);
+		if (cacheMode != L2CacheConfig.CacheMode.L1 && redisInstance.getRedisCache().hasReplicaReader(readPolicy)) {
+			cache.setPrimaryReadAfterInvalidation(l2CacheConfig.getRedis().getConnection().getPrimaryReadAfterInvalidationMillis());
+		}
+		cache.setL1CacheRouting(l1CacheRouting);
+		cache.setValueSizeGuard(redisInstance.getValueSizeGuard());
+		L2CacheConfig.Admission admission = l2CacheConfig.getAdmission();
+		if (admission.isEnabled() && (admission.getCacheNames().isEmpty() || admission.getCacheNames().contains(name))) {
+			cache.setAdmissionPolicy(new L1AdmissionPolicy(admission));
+		}
+		L2CacheConfig.ReadBatch readBatch = l2CacheConfig.getReadBatch();
+		long windowMicros = readBatch.getWindows().getOrDefault(name, readBatch.getWindowMicros());
+		if (cacheMode != L2CacheConfig.CacheMode.L1 && readBatch.isEnabled() && windowMicros > 0
+				&& (readBatch.getCacheNames().isEmpty() || readBatch.getCacheNames().contains(name))) {
+			RedisCaffeineCache batchedCache = cache;
+			cache.setReadBatcher(new Level2ReadBatcher(windowMicros, readBatch.getMaxBatchSize(),
+					keys -> batchedCache.getLevel2Reader().multiGetRaw(keys)));
+		}
+		if (cacheMode != L2CacheConfig.CacheMode.L1) {
+			cache.setHotKeyReplicas(hotKeyReplicas);
+		}
+		if (cacheMode != L2CacheConfig.CacheMode.L1 && l2CacheConfig.getRedis().getWriteBehindCacheNames().contains(name)) {
+			L2CacheConfig.Redis redisConfig = l2CacheConfig.getRedis();
+			WriteBehindBuffer writeBehindBuffer = new WriteBehindBuffer(name, redisInstance.getRedisCache(), redisInstance.getCacheMessagePublisher(), writeBehindScheduler(),
+					redisConfig.getWriteBehindFlushMillis(), redisConfig.getWriteBehindBatchSize(), redisConfig.getWriteBehindMaxPending());
+			writeBehindBuffer.setHotKeyReplicas(hotKeyReplicas);
+			if (redisInstance.getValueSizeGuard() != null) {
+				writeBehindBuffer.setGuardedWriter(cache::setGuardedLevel2);
+			}
+			cache.setWriteBehindBuffer(writeBehindBuffer);
+			writeBehindBuffer.start();
+		}
+		if (partitioned) {
+			cache.setPartition(partition);
+		}
+		L2CacheConfig.Bulkhead bulkhead = l2CacheConfig.getBulkhead();
+		if (bulkhead.isEnabled() && (bulkhead.getCacheNames().isEmpty() || bulkhead.getCacheNames().contains(name))) {
+			cache.setLoaderBulkhead(new LoaderBulkhead(name, bulkhead));
+		}
+		long expire = cache.getExpire();
+		if (cacheMode != L2CacheConfig.CacheMode.L1 && expire > 0 && l2CacheConfig.getRedis().getSlidingExpirationCacheNames().contains(name)) {
+			L2CacheConfig.Redis redisConfig = l2CacheConfig.getRedis();
+			SlidingExpirationRenewer renewer = new SlidingExpirationRenewer(name, redisInstance.getRedisCache(), writeBehindScheduler(),
+					expire, redisConfig.getSlidingRenewMillis(), redisConfig.getSlidingMaxPending());
+			renewer.setValueSizeGuard(redisInstance.getValueSizeGuard());
+			renewer.setTagExpiration(redisConfig.getTagExpiration());
+			cache.setSlidingExpirationRenewer(renewer);
+			renewer.start();
+		}
 		logger.debug("create cache instance, the cache name is : {}", name);
-		return oldCache == null ? cache : oldCache;
+		return cache;
+	}
+
+	/**
+	 * 所有cacheName共用的一级缓存，key为cacheName与原始key组成的复合key，maximumSize为全局上限
+	 */
+	private com.github.benmanes.caffeine.cache.Cache<Object, Object> sharedCaffeineCache() {
+		if (sharedLevel1Cache == null) {
+			synchronized (this) {
+				if (sharedLevel1Cache == null) {
+					// 移除时回调所属的缓存实例，维护其key索引与淘汰计数
+					sharedLevel1Cache = caffeineBuilder()
+							.removalListener((Object key, Object value, RemovalCause cause) -> {
+								if (key instanceof CacheKeyEncoder.SharedKey) {
+									Cache cache = cacheMap.get(((CacheKeyEncoder.SharedKey) key).getCacheName());
+									if (cache != null) {
+										((RedisCaffeineCache) cache).onL1Removal(key, cause);
+									}
+								}
+							})
+							.build();
+				}
+			}
+		}
+		return sharedLevel1Cache;
+	}
+
+	/**
+	 * 分区的缓存实例按redis key索引一级缓存key，移除时回调缓存实例维护索引
+	 */
+	private com.github.benmanes.caffeine.cache.Cache<Object, Object> partitionedCaffeineCache(String name) {
+		return caffeineBuilder()
+				.removalListener((Object key, Object value, RemovalCause cause) -> {
+					Cache cache = cacheMap.get(name);
+					if (cache != null) {
+						((RedisCaffeineCache) cache).onL1Removal(key, cause);
+					}
+				})
+				.build();
+	}
+
+	/**
+	 * 注册命名redis实例，通过cacheNameInstances配置路由到该实例的cacheName使用其连接与通知通道
+	 * <p>
+	 * 应在路由到该实例的cacheName首次使用前注册
+	 *
+	 * @param instanceName          实例名称
+	 * @param redisCache            该实例的redis操作
+	 * @param cacheMessagePublisher 该实例的缓存更新通知
+	 */
+	public void registerRedisInstance(String instanceName, RedisCache redisCache, CacheMessagePublisher cacheMessagePublisher) {
+		ValueSizeGuard instanceValueSizeGuard = l2CacheConfig.getGuard().isEnabled()
+				? new ValueSizeGuard(redisCache, l2CacheConfig.getGuard()) : null;
+		redisInstances.put(instanceName, new RedisInstance(instanceName, redisCache, cacheMessagePublisher, instanceValueSizeGuard));
+	}
+
+	/**
+	 * cacheName路由到的redis实例
+	 */
+	public RedisInstance redisInstance(String cacheName) {
+		String instanceName = l2CacheConfig.getRedis().getCacheNameInstances().getOrDefault(cacheName, RedisInstance.DEFAULT);
+		RedisInstance redisInstance = redisInstances.get(instanceName);
+		if (redisInstance == null) {
+			throw new IllegalStateException("redis instance [" + instanceName + "] of cache [" + cacheName + "] is not registered");
+		}
+		return redisInstance;
+	}
+
+	public Collection<RedisInstance> getRedisInstances() {
+		return redisInstances.values();
+	}
+
+	private ScheduledExecutorService writeBehindScheduler() {
+		if (writeBehindScheduler == null) {
+			synchronized (this) {
+				if (writeBehindScheduler == null) {
+					writeBehindScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+						Thread thread = new Thread(runnable, "l2cache-write-behind");
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+			}
+		}
+		return writeBehindScheduler;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public HotKeyReplicas getHotKeyReplicas() {
+		return hotKeyReplicas;
+	}
+
+	public L1Partition getPartition() {
+		return partition;
+	}
+
+	/**
+	 * 处理其他节点的查询，当前节点作为归属节点读取
+	 */
+	private byte[] lookupForPeer(String cacheName, String cacheKey) {
+		// 只查询已创建的缓存实例，其他节点的请求不能在当前节点动态创建cacheName
+		RedisCaffeineCache cache = getExistingCache(cacheName);
+		if (cache == null || cache.getPartition() == null) {
+			throw new IllegalStateException("cache is not partitioned on this node, the cache name is : " + cacheName);
+		}
+		return cache.lookupForPeer(cacheKey);
+	}
+
+	/**
+	 * 关闭时停止热点key识别，退出分区一级缓存，并将异步写缓冲区中积压的数据全部写入redis
+	 */
+	@Override
+	public void destroy() {
+		if (hotKeyReplicas != null) {
+			hotKeyReplicas.stop();
+		}
+		if (partition != null) {
+			partition.stop();
+		}
+		if (writeBehindScheduler == null) {
+			return;
+		}
+		writeBehindScheduler.shutdown();
+		for (Cache cache : cacheMap.values()) {
+			try {
+				((RedisCaffeineCache) cache).close();
+			} catch (Exception e) {
+				logger.error("flush write behind cache failed on shutdown, the cache name is : {}", cache.getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * 为cacheName注册加载器，该cacheName的读取变为读穿透，并且可通过refreshAfterWrite提前异步刷新一级缓存
+	 * <p>
+	 * 应在该cacheName首次使用前注册，已创建的缓存实例会被替换，其一级缓存数据随之丢弃
+	 *
+	 * @param cacheName 缓存名称
+	 * @param loader    加载器，实现loadAll时批量读取使用批量加载
+	 */
+	public void registerLoader(String cacheName, CacheLoader<Object, Object> loader) {
+		loaderMap.put(cacheName, loader);
+		Cache oldCache = cacheMap.remove(cacheName);
+		if (oldCache != null) {
+			logger.info("replace cache instance with loading cache, the cache name is : {}", cacheName);
+			if (!cacheNames.contains(cacheName) && l2CacheConfig.getMaxDynamicCaches() > 0) {
+				dynamicCacheCount.decrementAndGet();
+			}
+			RedisCaffeineCache redisCaffeineCache = (RedisCaffeineCache) oldCache;
+			try {
+				// 与关闭时一致，写入积压数据并停止定时任务，避免丢失写入和任务泄漏
+				redisCaffeineCache.close();
+			} catch (Exception e) {
+				logger.error("close replaced cache failed, the cache name is : {}", cacheName, e);
+			}
+			// 共享一级缓存中旧实例的数据不会再被访问，一并清除
+			redisCaffeineCache.clearLocal(null);
+		}
+	}
+
+	/**
+	 * 获取读穿透缓存，未注册加载器时返回null
+	 */
+	public LoadingRedisCaffeineCache getLoadingCache(String name) {
+		Cache cache = getCache(name);
+		return cache instanceof LoadingRedisCaffeineCache ? (LoadingRedisCaffeineCache) cache : null;
+	}
+
+	private LoadingRedisCaffeineCache loadingCache(String name, CacheLoader<Object, Object> loader, RedisInstance redisInstance) {
+		// 一级缓存先于缓存实例创建，刷新时通过引用回调到缓存实例，写回二级缓存并通知其他节点
+		AtomicReference<LoadingRedisCaffeineCache> cacheRef = new AtomicReference<>();
+		com.github.benmanes.caffeine.cache.Cache<Object, Object> level1Cache = caffeineCache(key -> cacheRef.get().reload(key));
+		LoadingRedisCaffeineCache loadingCache = new LoadingRedisCaffeineCache(name, redisInstance.getRedisCache(), level1Cache,
+				l2CacheConfig, redisInstance.getCacheMessagePublisher(), loader);
+		cacheRef.set(loadingCache);
+		return loadingCache;
 	}
 
 	public com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeineCache(){
+		return caffeineCache(null);
+	}
+
+	/**
+	 * @param refreshLoader 不为空时创建LoadingCache，refreshAfterWrite仅对LoadingCache生效
+	 */
+	private com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeineCache(CacheLoader<Object, Object> refreshLoader){
+		Caffeine<Object, Object> cacheBuilder = caffeineBuilder();
+		if(refreshLoader == null) {
+			return cacheBuilder.build();
+		}
+		if(l2CacheConfig.getCaffeine().getRefreshAfterWrite() > 0) {
+			cacheBuilder.refreshAfterWrite(l2CacheConfig.getCaffeine().getRefreshAfterWrite(), TimeUnit.SECONDS);
+		}
+		return cacheBuilder.build(refreshLoader);
+	}
+
+	private Caffeine<Object, Object> caffeineBuilder(){
 		Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder();
+		if(l2CacheConfig.getCaffeine().isRecordStats()) {
+			cacheBuilder.recordStats();
+		}
 		if(l2CacheConfig.getCaffeine().getExpireAfterAccess() > 0) {
 			cacheBuilder.expireAfterAccess(l2CacheConfig.getCaffeine().getExpireAfterAccess(), TimeUnit.SECONDS);
 		}
@@ -76,10 +495,25 @@ public class RedisCaffeineCacheManager implements CacheManager {
 		if(l2CacheConfig.getCaffeine().getMaximumSize() > 0) {
 			cacheBuilder.maximumSize(l2CacheConfig.getCaffeine().getMaximumSize());
 		}
-		if(l2CacheConfig.getCaffeine().getRefreshAfterWrite() > 0) {
-			cacheBuilder.refreshAfterWrite(l2CacheConfig.getCaffeine().getRefreshAfterWrite(), TimeUnit.SECONDS);
+		return cacheBuilder;
+	}
+
+	/**
+	 * 已创建的缓存实例
+	 */
+	public Collection<RedisCaffeineCache> getCaches() {
+		List<RedisCaffeineCache> caches = new ArrayList<>(cacheMap.size());
+		for (Cache cache : cacheMap.values()) {
+			caches.add((RedisCaffeineCache) cache);
 		}
-		return cacheBuilder.build();
+		return caches;
+	}
+
+	/**
+	 * 获取已创建的缓存实例，不存在时返回null，不会创建新的实例
+	 */
+	public RedisCaffeineCache getExistingCache(String name) {
+		return (RedisCaffeineCache) cacheMap.get(name);
 	}
 
 	@Override
@@ -87,6 +521,74 @@ public class RedisCaffeineCacheManager implements CacheManager {
 		return this.cacheNames;
 	}
 
+	/**
+	 * 运行时调整一级缓存开关，新配置整体原子生效；
+	 * 被关闭的cacheName或key，通知所有节点清除其一级缓存，避免再次开启时读到关闭期间未同步的旧数据
+	 *
+	 * @param composite 新的组合缓存配置
+	 */
+	public void updateL1Routing(L2CacheConfig.Composite composite) {
+		L1CacheRouting.Snapshot oldSnapshot = l1CacheRouting.update(composite);
+		L1CacheRouting.Snapshot newSnapshot = l1CacheRouting.getSnapshot();
+		logger.info("update l1 cache routing, l1AllOpen={}, l1Manual={}, l1ManualCacheNameSet={}, l1ManualKeySet={}",
+				newSnapshot.isL1AllOpen(), newSnapshot.isL1Manual(), newSnapshot.getL1ManualCacheNameSet(), newSnapshot.getL1ManualKeySet());
+
+		for (String cacheName : cacheMap.keySet()) {
+			if (oldSnapshot.isL1Open(cacheName) && !newSnapshot.isL1Open(cacheName)) {
+				clearLocal(cacheName, null);
+				cacheMessagePublisher.publish(new CacheMessage(cacheName, null));
+			}
+		}
+		for (String cacheKey : oldSnapshot.getL1ManualKeySet()) {
+			int index = cacheKey.indexOf(':');
+			if (!oldSnapshot.isL1OpenByKey(cacheKey) || newSnapshot.isL1OpenByKey(cacheKey) || index < 0) {
+				continue;
+			}
+			String cacheName = cacheKey.substring(0, index);
+			if (newSnapshot.isL1Open(cacheName) || oldSnapshot.isL1Open(cacheName) || !cacheMap.containsKey(cacheName)) {
+				// cacheName维度仍然开启则不受影响，原本cacheName维度开启的已在上面整体清除
+				continue;
+			}
+			CacheMessage cacheMessage = new CacheMessage(cacheName, null, cacheKey);
+			clearLocal(cacheMessage);
+			cacheMessagePublisher.publish(cacheMessage);
+		}
+	}
+
+	public ValueSizeGuard getValueSizeGuard() {
+		return valueSizeGuard;
+	}
+
+	public L1CacheRouting getL1CacheRouting() {
+		return l1CacheRouting;
+	}
+
+	/**
+	 * 处理缓存变更消息，清理本地缓存
+	 */
+	public void clearLocal(CacheMessage cacheMessage) {
+		if (cacheMessage.getCacheKeys() != null) {
+			for (Cache cache : cacheMap.values()) {
+				((RedisCaffeineCache) cache).clearLocalByCacheKeys(cacheMessage.getCacheKeys());
+			}
+			return;
+		}
+		if (cacheMessage.getKeys() != null) {
+			for (Object key : cacheMessage.getKeys()) {
+				clearLocal(cacheMessage.getCacheName(), key);
+			}
+			return;
+		}
+		if (cacheMessage.getCacheKey() == null) {
+			clearLocal(cacheMessage.getCacheName(), cacheMessage.getKey());
+			return;
+		}
+		Cache cache = cacheMap.get(cacheMessage.getCacheName());
+		if (cache != null) {
+			((RedisCaffeineCache) cache).clearLocalByCacheKey(cacheMessage.getCacheKey());
+		}
+	}
+
 	public void clearLocal(String cacheName, Object key) {
 		Cache cache = cacheMap.get(cacheName);
 		if(cache == null) {
@@ -96,4 +598,72 @@ public class RedisCaffeineCacheManager implements CacheManager {
 		RedisCaffeineCache redisCaffeineCache = (RedisCaffeineCache) cache;
 		redisCaffeineCache.clearLocal(key);
 	}
+
+	/**
+	 * 清除打了指定标签的所有缓存，可跨多个cacheName
+	 * <p>
+	 * 每个redis实例通过SSCAN分批读取标签集合，每批通过pipeline删除缓存key（拆分存储的分片、热点副本、标签索引一并删除）
+	 * 并移出标签集合，再发送一条包含该批key的通知清理各节点的一级缓存
+	 *
+	 * @param tag 标签
+	 * @return 清除的缓存key数量
+	 */
+	public int evictByTag(String tag) {
+		String tagKey = tagKey(tag);
+		AtomicInteger evicted = new AtomicInteger();
+		for (RedisInstance redisInstance : redisInstances.values()) {
+			redisInstance.getRedisCache().scanSetMembers(tagKey, TAG_EVICT_BATCH_SIZE,
+					members -> evicted.addAndGet(evictTagged(redisInstance, tagKey, members)));
+		}
+		logger.debug("evict cache by tag, the tag is : {}, evicted={}", tag, evicted.get());
+		return evicted.get();
+	}
+
+	/**
+	 * 清除标签集合中的一批缓存key
+	 *
+	 * @return 清除的缓存key数量
+	 */
+	private int evictTagged(RedisInstance redisInstance, String tagKey, List<Object> members) {
+		Set<String> cacheKeys = new LinkedHashSet<>(members.size());
+		for (Object member : members) {
+			cacheKeys.add(member.toString());
+		}
+		for (Cache cache : cacheMap.values()) {
+			((RedisCaffeineCache) cache).discardPendingWrites(cacheKeys);
+		}
+		RedisCache redisCache = redisInstance.getRedisCache();
+		ValueSizeGuard instanceValueSizeGuard = redisInstance.getValueSizeGuard();
+		if (instanceValueSizeGuard != null) {
+			// 拆分存储的value需要同时删除分片
+			instanceValueSizeGuard.delete(new ArrayList<>(cacheKeys));
+		}
+		List<String> relatedKeys = new ArrayList<>(cacheKeys.size());
+		for (String cacheKey : cacheKeys) {
+			relatedKeys.add(RedisCaffeineCache.tagIndexKey(cacheKey));
+			if (hotKeyReplicas != null && hotKeyReplicas.isHot(cacheKey)) {
+				// 热点key同时删除副本，否则之后的读取仍会从副本读到旧值
+				relatedKeys.addAll(hotKeyReplicas.replicaKeys(cacheKey));
+			}
+		}
+		redisCache.pipelineDelete(relatedKeys);
+		redisCache.pipelineDeleteMembers(tagKey, cacheKeys);
+		CacheMessage cacheMessage = new CacheMessage(cacheKeys);
+		clearLocal(cacheMessage);
+		redisInstance.getCacheMessagePublisher().publish(cacheMessage);
+		return cacheKeys.size();
+	}
+
+	private String tagKey(String tag) {
+		return l2CacheConfig.getRedis().getTagKeyPrefix().concat(tag);
+	}
+
+	/**
+	 * 清空所有cacheName的一级缓存，用于无法确定丢失了哪些缓存消息的场景
+	 */
+	public void clearAllLocal() {
+		for (Cache cache : cacheMap.values()) {
+			((RedisCaffeineCache) cache).clearLocal(null);
+		}
+	}
 }
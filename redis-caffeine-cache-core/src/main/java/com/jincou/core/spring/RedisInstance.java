@@ -0,0 +1,53 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.cache.ValueSizeGuard;
+import com.jincou.core.sync.CacheMessagePublisher;
+
+/**
+ *  二级缓存使用的redis实例
+ *  <p>
+ *  每个实例有独立的连接、缓存更新通知通道及大小防护统计，通过cacheNameInstances配置将cacheName路由到指定实例。
+ */
+public class RedisInstance {
+
+	/**
+	 * 默认实例名称，即spring.redis配置的连接
+	 */
+	public static final String DEFAULT = "default";
+
+	private final String name;
+
+	private final RedisCache redisCache;
+
+	private final CacheMessagePublisher cacheMessagePublisher;
+
+	/**
+	 * key与value大小防护，未开启时为null
+	 */
+	private final ValueSizeGuard valueSizeGuard;
+
+	public RedisInstance(String name, RedisCache redisCache, CacheMessagePublisher cacheMessagePublisher,
+						 ValueSizeGuard valueSizeGuard) {
+		this.name = name;
+		this.redisCache = redisCache;
+		this.cacheMessagePublisher = cacheMessagePublisher;
+		this.valueSizeGuard = valueSizeGuard;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public RedisCache getRedisCache() {
+		return redisCache;
+	}
+
+	public CacheMessagePublisher getCacheMessagePublisher() {
+		return cacheMessagePublisher;
+	}
+
+	public ValueSizeGuard getValueSizeGuard() {
+		return valueSizeGuard;
+	}
+}
@@ -0,0 +1,199 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.cache.ValueSizeGuard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  二级缓存滑动过期
+ *  <p>
+ *  读取命中时只在本地记录key，按固定间隔去重后通过pipeline批量PEXPIRE续期，同一个key每个间隔最多续期一次，
+ *  经常读取的key一直留在redis中，不再读取的key按原过期时间淘汰。记录的key数量达到上限时新的key不再记录。
+ *  <p>
+ *  拆分存储的value同时续期分片版本记录与当前版本的分片，打过标签的key同时续期标签索引及其记录的标签集合，
+ *  与key在同一个pipeline中续期。热点key的副本不续期：未识别到热点的节点写入时只更新原key，副本需按replicaExpiration过期，
+ *  过期后读取原key补写。
+ */
+public class SlidingExpirationRenewer {
+
+	private final Logger logger = LoggerFactory.getLogger(SlidingExpirationRenewer.class);
+
+	/**
+	 * 单次pipeline的最大条数
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	private final String cacheName;
+
+	private final RedisCache level2Cache;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final long expire;
+
+	private final long renewMillis;
+
+	private final int maxPending;
+
+	/**
+	 * 开启大小防护时用于找到拆分存储的分片，为null时只续期key本身
+	 */
+	private ValueSizeGuard valueSizeGuard;
+
+	/**
+	 * 标签集合的过期时间，单位毫秒，小于等于0时标签集合不过期，无需续期
+	 */
+	private long tagExpiration;
+
+	/**
+	 * 本次间隔内读取过的redis key
+	 */
+	private final Set<String> touchedKeys = ConcurrentHashMap.newKeySet();
+
+	/** 续期的key数量 */
+	private final AtomicLong renewedCount = new AtomicLong();
+
+	/** 超过上限未记录的读取次数 */
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private volatile ScheduledFuture<?> renewTask;
+
+	/**
+	 * @param expire      续期后的过期时间，单位毫秒
+	 * @param renewMillis 续期间隔，单位毫秒，不超过过期时间的一半，保证续期前key不会过期
+	 */
+	SlidingExpirationRenewer(String cacheName, RedisCache level2Cache, ScheduledExecutorService scheduler,
+							 long expire, long renewMillis, int maxPending) {
+		this.cacheName = cacheName;
+		this.level2Cache = level2Cache;
+		this.scheduler = scheduler;
+		this.expire = expire;
+		this.renewMillis = Math.max(1, Math.min(renewMillis, expire / 2));
+		this.maxPending = Math.max(1, maxPending);
+	}
+
+	void setValueSizeGuard(ValueSizeGuard valueSizeGuard) {
+		this.valueSizeGuard = valueSizeGuard;
+	}
+
+	void setTagExpiration(long tagExpiration) {
+		this.tagExpiration = tagExpiration;
+	}
+
+	/**
+	 * 开始定时续期
+	 */
+	void start() {
+		renewTask = scheduler.scheduleWithFixedDelay(this::renewQuietly, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止定时续期，未续期的key按原过期时间淘汰
+	 */
+	void stop() {
+		if (renewTask != null) {
+			renewTask.cancel(false);
+		}
+	}
+
+	/**
+	 * 记录一次读取命中
+	 */
+	void touch(String cacheKey) {
+		if (touchedKeys.contains(cacheKey)) {
+			return;
+		}
+		if (touchedKeys.size() >= maxPending) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+		touchedKeys.add(cacheKey);
+	}
+
+	public int getPendingCount() {
+		return touchedKeys.size();
+	}
+
+	public long getRenewedCount() {
+		return renewedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * 为记录的key续期，只处理开始时已记录的数量，期间新的读取留到下一个间隔
+	 */
+	void renew() {
+		int remaining = touchedKeys.size();
+		Iterator<String> iterator = touchedKeys.iterator();
+		List<String> batch = new ArrayList<>(Math.min(remaining, BATCH_SIZE));
+		while (remaining-- > 0 && iterator.hasNext()) {
+			batch.add(iterator.next());
+			iterator.remove();
+			if (batch.size() >= BATCH_SIZE) {
+				renewBatch(batch);
+				batch = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+		if (!batch.isEmpty()) {
+			renewBatch(batch);
+		}
+	}
+
+	private void renewBatch(List<String> batch) {
+		// key已被删除或过期时PEXPIRE不会生效，无需与evict互斥
+		Map<String, Long> timeouts = new LinkedHashMap<>(batch.size() * 2);
+		for (String cacheKey : batch) {
+			timeouts.put(cacheKey, expire);
+		}
+		if (valueSizeGuard != null) {
+			// 清单续期而分片过期时读取视为未命中
+			for (String chunkKey : valueSizeGuard.chunkRelatedKeys(batch)) {
+				timeouts.put(chunkKey, expire);
+			}
+		}
+		if (tagExpiration > 0) {
+			// 标签集合先于key过期时按标签清除会漏掉该key，与写入时一致取不短于缓存的过期时间
+			long tagTimeout = Math.max(tagExpiration, expire);
+			List<String> tagIndexKeys = new ArrayList<>(batch.size());
+			for (String cacheKey : batch) {
+				tagIndexKeys.add(RedisCaffeineCache.tagIndexKey(cacheKey));
+			}
+			List<Set<Object>> tagKeys = level2Cache.pipelineSetMembers(tagIndexKeys);
+			for (int i = 0; i < tagIndexKeys.size(); i++) {
+				if (tagKeys.get(i).isEmpty()) {
+					continue;
+				}
+				timeouts.put(tagIndexKeys.get(i), tagTimeout);
+				for (Object tagKey : tagKeys.get(i)) {
+					timeouts.put(String.valueOf(tagKey), tagTimeout);
+				}
+			}
+		}
+		level2Cache.pipelineExpire(timeouts);
+		renewedCount.addAndGet(batch.size());
+	}
+
+	private void renewQuietly() {
+		try {
+			renew();
+		} catch (Exception e) {
+			logger.error("sliding expiration renew failed, the cache name is : {}", cacheName, e);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.sync.CacheMessage;
+import com.jincou.core.sync.CacheMessagePublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  异步写缓冲区
+ *  <p>
+ *  同一个key只保留最后一次写入的值，按固定间隔或积压数量达到阈值时，通过pipeline批量写入redis，写入确认后才移出缓冲区，
+ *  每批只发送一条通知；积压数量达到上限时由写入线程同步刷新，刷新失败（通常是redis不可用）后仍处于上限时，
+ *  新key不再进入缓冲区，改为同步写入redis，redis异常抛给写入方，避免缓冲区无限增长。
+ *  <p>
+ *  开启大小防护时逐个key按防护规则写入（压缩、拆分、清理旧分片），不使用pipeline批量写入。
+ */
+public class WriteBehindBuffer {
+
+	private final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+	private final String cacheName;
+
+	private final RedisCache level2Cache;
+
+	private final CacheMessagePublisher cacheMessagePublisher;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final long flushMillis;
+
+	private final int batchSize;
+
+	private final int maxPending;
+
+	/**
+	 * 待写入的数据，redis key -> 待写入的值
+	 */
+	private final ConcurrentMap<String, PendingWrite> pendingMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 刷新与evict、clear互斥，避免删除后又被正在刷新的旧值覆盖
+	 */
+	private final Object flushLock = new Object();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	private volatile ScheduledFuture<?> flushTask;
+
+	private HotKeyReplicas hotKeyReplicas;
+
+	/** 开启大小防护时的写入方式，为null时通过pipeline批量写入 */
+	private GuardedWriter guardedWriter;
+
+	/** 合并掉的写入次数 */
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/** 写入redis的次数 */
+	private final AtomicLong flushedCount = new AtomicLong();
+
+	/** 缓冲区已满改为同步写入的次数 */
+	private final AtomicLong writeThroughCount = new AtomicLong();
+
+	WriteBehindBuffer(String cacheName, RedisCache level2Cache, CacheMessagePublisher cacheMessagePublisher,
+					  ScheduledExecutorService scheduler, long flushMillis, int batchSize, int maxPending) {
+		this.cacheName = cacheName;
+		this.level2Cache = level2Cache;
+		this.cacheMessagePublisher = cacheMessagePublisher;
+		this.scheduler = scheduler;
+		this.flushMillis = Math.max(1, flushMillis);
+		this.batchSize = Math.max(1, batchSize);
+		this.maxPending = Math.max(this.batchSize, maxPending);
+	}
+
+	void setHotKeyReplicas(HotKeyReplicas hotKeyReplicas) {
+		this.hotKeyReplicas = hotKeyReplicas;
+	}
+
+	void setGuardedWriter(GuardedWriter guardedWriter) {
+		this.guardedWriter = guardedWriter;
+	}
+
+	/**
+	 * 开始定时刷新
+	 */
+	void start() {
+		flushTask = scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止定时刷新，并将积压的数据全部写入redis
+	 */
+	void stop() {
+		if (flushTask != null) {
+			flushTask.cancel(false);
+		}
+		flush();
+	}
+
+	/**
+	 * 缓冲一次写入
+	 *
+	 * @param cacheKey redis key
+	 * @param key      原始key，用于通知其他节点
+	 * @param value    存储值
+	 * @param raw      序列化后的存储值，开启大小防护时由写入线程序列化，否则为null
+	 * @param expire   过期时间，单位毫秒
+	 */
+	void offer(String cacheKey, Object key, Object value, byte[] raw, long expire) {
+		PendingWrite pendingWrite = new PendingWrite(key, value, raw, expire);
+		if (pendingMap.size() >= maxPending && !pendingMap.containsKey(cacheKey)) {
+			flushQuietly();
+			if (pendingMap.size() >= maxPending) {
+				// 刷新失败，缓冲区仍是满的：同步写入，redis不可用时由写入方感知异常，而不是继续堆积
+				writeThroughCount.incrementAndGet();
+				synchronized (flushLock) {
+					write(Collections.singletonMap(cacheKey, pendingWrite));
+				}
+				return;
+			}
+		}
+		if (pendingMap.put(cacheKey, pendingWrite) != null) {
+			coalescedCount.incrementAndGet();
+		}
+		int pending = pendingMap.size();
+		if (pending >= maxPending) {
+			// 反压：刷新跟不上写入速度时，由写入线程同步刷新，redis异常不抛给写入方
+			flushQuietly();
+		} else if (pending >= batchSize && flushScheduled.compareAndSet(false, true)) {
+			scheduler.execute(() -> {
+				flushScheduled.set(false);
+				flushQuietly();
+			});
+		}
+	}
+
+	/**
+	 * 获取尚未写入redis的值
+	 */
+	Object get(String cacheKey) {
+		PendingWrite pendingWrite = pendingMap.get(cacheKey);
+		return pendingWrite == null ? null : pendingWrite.value;
+	}
+
+	/**
+	 * 丢弃尚未写入的值后执行删除操作
+	 */
+	void remove(String cacheKey, Runnable delete) {
+		synchronized (flushLock) {
+			pendingMap.remove(cacheKey);
+			delete.run();
+		}
+	}
+
+	/**
+	 * 丢弃全部尚未写入的值后执行清空操作
+	 */
+	void clear(Runnable clear) {
+		synchronized (flushLock) {
+			pendingMap.clear();
+			clear.run();
+		}
+	}
+
+	public int getPendingCount() {
+		return pendingMap.size();
+	}
+
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	public long getFlushedCount() {
+		return flushedCount.get();
+	}
+
+	public long getWriteThroughCount() {
+		return writeThroughCount.get();
+	}
+
+	/**
+	 * 将积压的数据写入redis，只处理开始刷新时已积压的数量，避免持续写入时刷新无法结束
+	 */
+	void flush() {
+		synchronized (flushLock) {
+			int rounds = (pendingMap.size() + batchSize - 1) / batchSize;
+			for (int i = 0; i < rounds && !pendingMap.isEmpty(); i++) {
+				flushBatch();
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			logger.error("write behind flush failed, the cache name is : {}", cacheName, e);
+		}
+	}
+
+	private void flushBatch() {
+		Map<String, PendingWrite> taken = new LinkedHashMap<>();
+		Iterator<Map.Entry<String, PendingWrite>> iterator = pendingMap.entrySet().iterator();
+		while (iterator.hasNext() && taken.size() < batchSize) {
+			Map.Entry<String, PendingWrite> entry = iterator.next();
+			taken.put(entry.getKey(), entry.getValue());
+		}
+		if (taken.isEmpty()) {
+			return;
+		}
+		// 写入失败时数据仍在缓冲区中，下次刷新重试
+		write(taken);
+		// 写入确认后才移出缓冲区，期间读取仍能读到待写入的值；只移除写入的值，期间的新写入留到下一批
+		taken.forEach(pendingMap::remove);
+	}
+
+	/**
+	 * 写入redis并通知其他节点，调用方需持有flushLock
+	 */
+	private void write(Map<String, PendingWrite> writes) {
+		if (guardedWriter != null) {
+			List<Object> keys = new ArrayList<>(writes.size());
+			writes.forEach((cacheKey, pendingWrite) -> {
+				guardedWriter.write(cacheKey, pendingWrite.raw, pendingWrite.expire);
+				keys.add(pendingWrite.key);
+			});
+			flushedCount.addAndGet(writes.size());
+			publish(keys);
+			return;
+		}
+		// 按过期时间分组，通常同一个cacheName的过期时间相同
+		Map<Long, Map<String, Object>> batches = new LinkedHashMap<>();
+		List<Object> keys = new ArrayList<>(writes.size());
+		writes.forEach((cacheKey, pendingWrite) -> {
+			keys.add(pendingWrite.key);
+			batches.computeIfAbsent(pendingWrite.expire, expire -> new LinkedHashMap<>()).put(cacheKey, pendingWrite.value);
+			if (hotKeyReplicas != null && hotKeyReplicas.isHot(cacheKey)) {
+				// 热点key的副本与原key同批写入，避免副本保留旧值
+				Map<String, Object> replicas = batches.computeIfAbsent(hotKeyReplicas.replicaExpire(pendingWrite.expire),
+						expire -> new LinkedHashMap<>());
+				for (String replicaKey : hotKeyReplicas.replicaKeys(cacheKey)) {
+					replicas.put(replicaKey, pendingWrite.value);
+				}
+			}
+		});
+		batches.forEach((expire, values) -> level2Cache.pipelineSet(values, expire));
+		flushedCount.addAndGet(writes.size());
+		publish(keys);
+	}
+
+	private void publish(List<Object> keys) {
+		CacheMessage cacheMessage = new CacheMessage(cacheName, null);
+		cacheMessage.setKeys(keys);
+		cacheMessagePublisher.publish(cacheMessage);
+	}
+
+	/**
+	 * 按大小防护规则写入单个key，热点key的副本一并写入
+	 */
+	interface GuardedWriter {
+
+		void write(String cacheKey, byte[] raw, long expire);
+	}
+
+	private static class PendingWrite {
+
+		private final Object key;
+
+		private final Object value;
+
+		private final byte[] raw;
+
+		private final long expire;
+
+		PendingWrite(Object key, Object value, byte[] raw, long expire) {
+			this.key = key;
+			this.value = value;
+			this.raw = raw;
+			this.expire = expire;
+		}
+	}
+}
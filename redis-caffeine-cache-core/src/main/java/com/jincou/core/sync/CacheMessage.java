@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
 
 /**
  *  缓存信息
@@ -23,4 +25,31 @@ public class CacheMessage implements Serializable {
     /** 缓存key */
     private Object key;
 
+    /** redis中的缓存key，仅在无法还原原始key对象时使用（如按key关闭一级缓存），按key.toString()匹配清理 */
+    private String cacheKey;
+
+    /** 批量清理的redis缓存key，可跨多个cacheName，按标签清除时使用，不为空时忽略cacheName与key */
+    private Set<String> cacheKeys;
+
+    /** 批量清理的原始key，均属于cacheName，异步写批量刷新时使用，不为空时忽略key */
+    private List<Object> keys;
+
+    /** 发送节点标识，不为空时发送节点收到自己的消息直接忽略，为空时所有节点（包括发送节点）都处理 */
+    private String origin;
+
+    public CacheMessage(String cacheName, Object key) {
+        this.cacheName = cacheName;
+        this.key = key;
+    }
+
+    public CacheMessage(String cacheName, Object key, String cacheKey) {
+        this.cacheName = cacheName;
+        this.key = key;
+        this.cacheKey = cacheKey;
+    }
+
+    public CacheMessage(Set<String> cacheKeys) {
+        this.cacheKeys = cacheKeys;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.jincou.core.sync;
+
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.spring.RedisCaffeineCacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  缓存消息分发器
+ *  <p>
+ *  按cacheName分段，每个分段一个单线程有界队列，同一cacheName的消息按接收顺序处理；
+ *  分段队列满时不再排队，直接清空该cacheName的一级缓存，避免失效消息堆积导致脏读时间无界。
+ */
+public class CacheMessageDispatcher implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(CacheMessageDispatcher.class);
+
+    private final RedisCaffeineCacheManager redisCaffeineCacheManager;
+
+    private final ThreadPoolExecutor[] stripes;
+
+    /** 已处理的消息数 */
+    private final AtomicLong dispatchedCount = new AtomicLong();
+
+    /** 因队列满而降级为整体清空的次数 */
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    /** 消息从接收到处理完成的最大延迟(毫秒) */
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public CacheMessageDispatcher(L2CacheConfig.Listener listenerConfig,
+                                  RedisCaffeineCacheManager redisCaffeineCacheManager) {
+        this.redisCaffeineCacheManager = redisCaffeineCacheManager;
+        int threads = Math.max(1, listenerConfig.getDispatchThreads());
+        int queueCapacity = Math.max(1, listenerConfig.getQueueCapacity());
+        ThreadFactory threadFactory = threadFactory(listenerConfig.isVirtualThreads());
+        this.stripes = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * 分发消息，调用方为监听容器的线程，此处不做任何阻塞操作
+     */
+    public void dispatch(CacheMessage cacheMessage) {
+        if (redisCaffeineCacheManager.getNodeId().equals(cacheMessage.getOrigin())) {
+            // 发送节点已在本地完成变更，不能再按通知清除
+            return;
+        }
+        String cacheName = cacheMessage.getCacheName();
+        long receivedAt = System.currentTimeMillis();
+        try {
+            stripe(cacheName).execute(() -> {
+                redisCaffeineCacheManager.clearLocal(cacheMessage);
+                dispatchedCount.incrementAndGet();
+                recordLag(System.currentTimeMillis() - receivedAt);
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满或已关闭，清空整个cacheName的一级缓存，宁可少命中也不读脏数据
+            overflowCount.incrementAndGet();
+            logger.warn("cache message queue is full, clear all local cache, the cacheName is {}", cacheName);
+            if (cacheName == null) {
+                // 按标签批量清理的消息可能跨多个cacheName
+                redisCaffeineCacheManager.clearAllLocal();
+            } else {
+                redisCaffeineCacheManager.clearLocal(cacheName, null);
+            }
+        }
+    }
+
+    /**
+     * 当前所有分段排队中的消息数
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            depth += stripe.getQueue().size();
+        }
+        return depth;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    @Override
+    public void destroy() {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    private ThreadPoolExecutor stripe(String cacheName) {
+        int hash = cacheName == null ? 0 : cacheName.hashCode();
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private void recordLag(long lag) {
+        long current;
+        while (lag > (current = maxLagMillis.get())) {
+            if (maxLagMillis.compareAndSet(current, lag)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 优先使用虚拟线程，JDK不支持时回退为守护平台线程
+     */
+    private ThreadFactory threadFactory(boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "l2cache-listener-", 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (Exception e) {
+                logger.info("virtual threads are not supported by the current jdk, fall back to platform threads");
+            }
+        }
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "l2cache-listener-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -2,7 +2,6 @@ package com.jincou.core.sync;
 
 
 import com.jincou.core.cache.RedisCache;
-import com.jincou.core.spring.RedisCaffeineCacheManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
@@ -20,19 +19,19 @@ public class CacheMessageListener implements MessageListener {
 
     private RedisCache redisService;
 
-    private RedisCaffeineCacheManager redisCaffeineCacheManager;
+    private CacheMessageDispatcher cacheMessageDispatcher;
 
     public CacheMessageListener(RedisCache redisService,
-                                RedisCaffeineCacheManager redisCaffeineCacheManager) {
+                                CacheMessageDispatcher cacheMessageDispatcher) {
         super();
         this.redisService = redisService;
-        this.redisCaffeineCacheManager = redisCaffeineCacheManager;
+        this.cacheMessageDispatcher = cacheMessageDispatcher;
     }
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
         CacheMessage cacheMessage = (CacheMessage) redisService.getRedisTemplate().getValueSerializer().deserialize(message.getBody());
         logger.debug("recevice a redis topic message, clear local cache, the cacheName is {}, the key is {}", cacheMessage.getCacheName(), cacheMessage.getKey());
-        redisCaffeineCacheManager.clearLocal(cacheMessage.getCacheName(), cacheMessage.getKey());
+        cacheMessageDispatcher.dispatch(cacheMessage);
     }
 }
@@ -0,0 +1,14 @@
+package com.jincou.core.sync;
+
+/**
+ *  缓存变更消息发布
+ */
+public interface CacheMessagePublisher {
+
+    /**
+     * 缓存变更时通知其他节点清理本地缓存
+     *
+     * @param message 缓存消息
+     */
+    void publish(CacheMessage message);
+}
@@ -0,0 +1,37 @@
+package com.jincou.core.sync;
+
+import com.jincou.core.cache.RedisCache;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ *  基于redis stream的消息发布，stream按streamMaxLen裁剪，订阅方可按消息ID补偿断开期间的消息
+ */
+public class RedisStreamCacheMessagePublisher implements CacheMessagePublisher {
+
+    /** stream中存放消息体的字段名 */
+    static final byte[] MESSAGE_FIELD = "m".getBytes(StandardCharsets.UTF_8);
+
+    private RedisCache redisService;
+
+    private byte[] streamKey;
+
+    private RedisStreamCommands.XAddOptions addOptions;
+
+    public RedisStreamCacheMessagePublisher(RedisCache redisService, String streamKey, long streamMaxLen) {
+        this.redisService = redisService;
+        this.streamKey = streamKey.getBytes(StandardCharsets.UTF_8);
+        this.addOptions = streamMaxLen > 0 ? RedisStreamCommands.XAddOptions.maxlen(streamMaxLen) : RedisStreamCommands.XAddOptions.none();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void publish(CacheMessage message) {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisService.getRedisTemplate().getValueSerializer();
+        byte[] body = valueSerializer.serialize(message);
+        redisService.streamAdd(streamKey, Collections.singletonMap(MESSAGE_FIELD, body), addOptions);
+    }
+}
@@ -0,0 +1,179 @@
+package com.jincou.core.sync;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.spring.RedisCaffeineCacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  redis stream消息订阅
+ *  <p>
+ *  每个节点独立记录最后消费的消息ID，断线或长时间停顿（如GC）后从该ID继续读取，补偿期间错过的消息；
+ *  每次读取后检查该ID之后的消息是否已被stream裁剪掉，若是说明丢失的消息超出了保留范围，此时整体清空一级缓存。
+ */
+public class RedisStreamCacheMessageSubscriber implements InitializingBean, DisposableBean, Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(RedisStreamCacheMessageSubscriber.class);
+
+    private static final String INITIAL_ID = "0-0";
+
+    private static final int BATCH_SIZE = 500;
+
+    private RedisCache redisService;
+
+    private RedisCaffeineCacheManager redisCaffeineCacheManager;
+
+    private CacheMessageDispatcher cacheMessageDispatcher;
+
+    private byte[] streamKey;
+
+    private long blockMillis;
+
+    /** 最后消费的消息ID */
+    private volatile String lastId;
+
+    private volatile boolean running;
+
+    private Thread worker;
+
+    public RedisStreamCacheMessageSubscriber(RedisCache redisService, L2CacheConfig.Redis redisConfig,
+                                             RedisCaffeineCacheManager redisCaffeineCacheManager,
+                                             CacheMessageDispatcher cacheMessageDispatcher) {
+        this.redisService = redisService;
+        this.redisCaffeineCacheManager = redisCaffeineCacheManager;
+        this.cacheMessageDispatcher = cacheMessageDispatcher;
+        this.streamKey = redisConfig.getStreamKey().getBytes(StandardCharsets.UTF_8);
+        this.blockMillis = Math.max(1, redisConfig.getStreamBlockMillis());
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        worker = new Thread(this, "l2cache-stream-subscriber");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (lastId == null) {
+                    lastId = latestId();
+                }
+                List<ByteRecord> records = read();
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                // 每次读取后都检查断档，发布速率高时stream可能在节点正常消费期间就被裁剪到最后消费的ID之后
+                checkGap(records.get(0).getId().getValue());
+                for (ByteRecord record : records) {
+                    byte[] body = findBody(record);
+                    if (body != null) {
+                        CacheMessage cacheMessage = (CacheMessage) redisService.getRedisTemplate().getValueSerializer().deserialize(body);
+                        logger.debug("recevice a redis stream message, clear local cache, the cacheName is {}, the key is {}", cacheMessage.getCacheName(), cacheMessage.getKey());
+                        cacheMessageDispatcher.dispatch(cacheMessage);
+                    }
+                    lastId = record.getId().getValue();
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("read cache message stream failed, retry later, the last id is {}", lastId, e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    private List<ByteRecord> read() {
+        return redisService.streamRead(streamKey, lastId, StreamReadOptions.empty().block(Duration.ofMillis(blockMillis)).count(BATCH_SIZE));
+    }
+
+    /**
+     * 启动时从stream当前最新的消息之后开始消费，之前的消息与本节点无关
+     */
+    private String latestId() {
+        String latestId = redisService.streamBoundaryId(streamKey, false);
+        return latestId == null ? INITIAL_ID : latestId;
+    }
+
+    /**
+     * stream中最早的消息比最后消费的消息还新，说明最后消费的消息已被裁剪；
+     * 若本次读到的第一条或stream中最早的消息恰好紧接在最后消费的消息之后，则没有丢失消息，
+     * 否则中间有消息已被裁剪，无法补偿，只能清空全部一级缓存
+     */
+    private void checkGap(String firstReadId) {
+        if (INITIAL_ID.equals(lastId) || isNext(firstReadId, lastId)) {
+            return;
+        }
+        String firstId = redisService.streamBoundaryId(streamKey, true);
+        if (firstId != null && compareId(firstId, lastId) > 0 && !isNext(firstId, lastId)) {
+            logger.warn("cache message stream has been trimmed beyond the last consumed id {}, clear all local cache", lastId);
+            redisCaffeineCacheManager.clearAllLocal();
+        }
+    }
+
+    /**
+     * byte[]作为map的key无法按内容查找，逐个比较字段名
+     */
+    private byte[] findBody(ByteRecord record) {
+        for (Map.Entry<byte[], byte[]> entry : record.getValue().entrySet()) {
+            if (Arrays.equals(entry.getKey(), RedisStreamCacheMessagePublisher.MESSAGE_FIELD)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(Math.min(blockMillis, 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * id是否为previousId之后紧邻的消息ID（同一毫秒内序号加一）
+     */
+    static boolean isNext(String id, String previousId) {
+        int index = id.indexOf('-');
+        int previousIndex = previousId.indexOf('-');
+        return id.substring(0, index).equals(previousId.substring(0, previousIndex))
+                && Long.parseLong(id.substring(index + 1)) == Long.parseLong(previousId.substring(previousIndex + 1)) + 1;
+    }
+
+    static int compareId(String id1, String id2) {
+        int index1 = id1.indexOf('-');
+        int index2 = id2.indexOf('-');
+        int result = Long.compare(Long.parseLong(id1.substring(0, index1)), Long.parseLong(id2.substring(0, index2)));
+        if (result != 0) {
+            return result;
+        }
+        return Long.compare(Long.parseLong(id1.substring(index1 + 1)), Long.parseLong(id2.substring(index2 + 1)));
+    }
+}
@@ -0,0 +1,23 @@
+package com.jincou.core.sync;
+
+import com.jincou.core.cache.RedisCache;
+
+/**
+ *  基于redis pub/sub的消息发布，消息发出即结束，订阅方断开期间的消息会丢失
+ */
+public class RedisTopicCacheMessagePublisher implements CacheMessagePublisher {
+
+    private RedisCache redisService;
+
+    private String topic;
+
+    public RedisTopicCacheMessagePublisher(RedisCache redisService, String topic) {
+        this.redisService = redisService;
+        this.topic = topic;
+    }
+
+    @Override
+    public void publish(CacheMessage message) {
+        redisService.getRedisTemplate().convertAndSend(topic, message);
+    }
+}
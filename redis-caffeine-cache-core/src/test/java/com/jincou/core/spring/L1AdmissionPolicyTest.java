@@ -0,0 +1,84 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.config.L2CacheConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class L1AdmissionPolicyTest {
+
+	@Test
+	void admitsOnlyAfterMinFrequency() {
+		L1AdmissionPolicy policy = new L1AdmissionPolicy(config().setCostNanosPerByte(0));
+
+		policy.recordMiss("c:hot");
+		assertThat(policy.admit("c:hot", 0, 100)).isFalse();
+		policy.recordMiss("c:hot");
+		assertThat(policy.admit("c:hot", 0, 100)).isTrue();
+		assertThat(policy.admit("c:once", 0, 100)).isFalse();
+
+		assertThat(policy.getAdmittedCount()).isEqualTo(1);
+		assertThat(policy.getRejectedCount()).isEqualTo(2);
+	}
+
+	@Test
+	void admitsExpensiveValuesWithoutFrequency() {
+		L1AdmissionPolicy policy = new L1AdmissionPolicy(config().setCostNanosPerByte(100));
+
+		assertThat(policy.admit("c:cheap", 99 * 10, 10)).isFalse();
+		assertThat(policy.admit("c:expensive", 100 * 10, 10)).isTrue();
+		// 字节数未知时只按频率判断
+		assertThat(policy.admit("c:unknown", 1_000_000, 0)).isFalse();
+	}
+
+	@Test
+	void frequencyIsHalvedWhenWindowEnds() throws InterruptedException {
+		L1AdmissionPolicy policy = new L1AdmissionPolicy(config().setWindowMillis(20));
+		for (int i = 0; i < 4; i++) {
+			policy.recordMiss("c:key");
+		}
+		assertThat(policy.frequency("c:key")).isEqualTo(4);
+
+		Thread.sleep(40);
+		policy.recordMiss("c:other");
+
+		assertThat(policy.frequency("c:key")).isEqualTo(2);
+	}
+
+	@Test
+	void adaptiveTuningReversesWhenHitRateDrops() throws InterruptedException {
+		L1AdmissionPolicy policy = new L1AdmissionPolicy(config().setAdaptive(true).setWindowMillis(200).setCostNanosPerByte(100));
+
+		window(policy, 50, 50);
+		// 断言较慢，放到两个窗口都结束后，避免第二个窗口提前结束
+		double firstHitRate = policy.getHitRate();
+		int firstMinFrequency = policy.getMinFrequency();
+		long firstCostNanosPerByte = policy.getCostNanosPerByte();
+		window(policy, 20, 80);
+
+		assertThat(firstHitRate).isEqualTo(0.5);
+		assertThat(firstMinFrequency).isEqualTo(3);
+		assertThat(firstCostNanosPerByte).isEqualTo(200);
+		assertThat(policy.getHitRate()).isEqualTo(0.2);
+		assertThat(policy.getMinFrequency()).isEqualTo(2);
+		assertThat(policy.getCostNanosPerByte()).isEqualTo(100);
+	}
+
+	/**
+	 * 产生一个窗口的访问，窗口结束后的最后一次命中计入该窗口并触发调整
+	 */
+	private static void window(L1AdmissionPolicy policy, int hits, int misses) throws InterruptedException {
+		for (int i = 0; i < misses; i++) {
+			policy.recordMiss("c:" + i);
+		}
+		for (int i = 1; i < hits; i++) {
+			policy.recordHit("c:" + i);
+		}
+		Thread.sleep(250);
+		policy.recordHit("c:0");
+	}
+
+	private static L2CacheConfig.Admission config() {
+		return new L2CacheConfig.Admission().setEnabled(true).setAdaptive(false).setMinFrequency(2);
+	}
+}
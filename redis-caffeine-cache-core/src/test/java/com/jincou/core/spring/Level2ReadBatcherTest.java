@@ -0,0 +1,130 @@
+package com.jincou.core.spring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Level2ReadBatcherTest {
+
+	private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * 第一次MGET开始后放行，用于让后续读取在有其他线程读取时到达
+	 */
+	private final CountDownLatch firstStarted = new CountDownLatch(1);
+
+	private final CountDownLatch releaseFirst = new CountDownLatch(1);
+
+	private ExecutorService executor;
+
+	@BeforeEach
+	void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	void tearDown() {
+		releaseFirst.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	void singleReaderDoesNotWaitForWindow() {
+		Level2ReadBatcher batcher = new Level2ReadBatcher(TimeUnit.SECONDS.toMicros(10), 16, this::multiGet);
+
+		long start = System.nanoTime();
+		assertThat(batcher.get("c:k1")).isEqualTo(bytes("c:k1"));
+
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+		assertThat(batches).containsExactly(Collections.singletonList("c:k1"));
+	}
+
+	@Test
+	void concurrentReadsAreMergedIntoOneBatch() throws Exception {
+		Level2ReadBatcher batcher = new Level2ReadBatcher(TimeUnit.MILLISECONDS.toMicros(500), 16, this::blockingMultiGet);
+		Future<byte[]> first = executor.submit(() -> batcher.get("c:k0"));
+		assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+		Future<byte[]> second = executor.submit(() -> batcher.get("c:k1"));
+		Future<byte[]> third = executor.submit(() -> batcher.get("c:k2"));
+		releaseFirst.countDown();
+
+		assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(bytes("c:k0"));
+		assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(bytes("c:k1"));
+		assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo(bytes("c:k2"));
+		assertThat(batches).hasSize(2);
+		assertThat(batches.get(1)).containsExactlyInAnyOrder("c:k1", "c:k2");
+		assertThat(batcher.getMaxBatchSize()).isEqualTo(2);
+	}
+
+	@Test
+	void fullBatchIsSentWithoutWaitingForWindow() throws Exception {
+		Level2ReadBatcher batcher = new Level2ReadBatcher(TimeUnit.SECONDS.toMicros(10), 2, this::blockingMultiGet);
+		Future<byte[]> first = executor.submit(() -> batcher.get("c:k0"));
+		assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+		Future<byte[]> second = executor.submit(() -> batcher.get("c:k1"));
+		Future<byte[]> third = executor.submit(() -> batcher.get("c:k2"));
+
+		// 窗口为10秒，批次满后由加入的线程发送并唤醒等待窗口的线程
+		assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(bytes("c:k1"));
+		assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo(bytes("c:k2"));
+		releaseFirst.countDown();
+		assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(bytes("c:k0"));
+	}
+
+	@Test
+	void interruptedLeaderSendsImmediately() throws Exception {
+		Level2ReadBatcher batcher = new Level2ReadBatcher(TimeUnit.SECONDS.toMicros(10), 16, this::blockingMultiGet);
+		Future<byte[]> first = executor.submit(() -> batcher.get("c:k0"));
+		assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+		Future<Boolean> interrupted = executor.submit(() -> {
+			Thread.currentThread().interrupt();
+			byte[] value = batcher.get("c:k1");
+			return value != null && Thread.currentThread().isInterrupted();
+		});
+
+		// 有其他线程在读取时需要等待窗口，中断后不再等待，也不丢失中断状态
+		assertThat(interrupted.get(5, TimeUnit.SECONDS)).isTrue();
+		releaseFirst.countDown();
+		assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(bytes("c:k0"));
+	}
+
+	private List<byte[]> multiGet(List<String> keys) {
+		batches.add(new ArrayList<>(keys));
+		return keys.stream().map(Level2ReadBatcherTest::bytes).collect(Collectors.toList());
+	}
+
+	/**
+	 * 第一次MGET阻塞到releaseFirst放行，之后的MGET直接返回
+	 */
+	private List<byte[]> blockingMultiGet(List<String> keys) {
+		if (firstStarted.getCount() > 0) {
+			firstStarted.countDown();
+			try {
+				releaseFirst.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return multiGet(keys);
+	}
+
+	private static byte[] bytes(String key) {
+		return key.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,77 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.config.L2CacheConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoaderBulkheadTest {
+
+	@Test
+	void failFastRejectsWhenLimitReached() {
+		LoaderBulkhead bulkhead = new LoaderBulkhead("c", config().setOverflowAction(L2CacheConfig.OverflowAction.FAIL_FAST));
+
+		long start = bulkhead.acquire(false);
+		assertThat(start).isNotEqualTo(-1);
+		assertThat(bulkhead.acquire(false)).isEqualTo(-1);
+		assertThat(bulkhead.getRejectedCount()).isEqualTo(1);
+
+		bulkhead.release(start, true);
+		assertThat(bulkhead.acquire(false)).isNotEqualTo(-1);
+	}
+
+	@Test
+	void waitingLoaderGetsPermitOnRelease() throws Exception {
+		LoaderBulkhead bulkhead = new LoaderBulkhead("c", config().setWaitMillis(5000));
+		long start = bulkhead.acquire(false);
+
+		CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> bulkhead.acquire(false));
+		while (bulkhead.getWaiting() == 0) {
+			Thread.sleep(1);
+		}
+		bulkhead.release(start, true);
+
+		assertThat(waiting.get(5, TimeUnit.SECONDS)).isNotEqualTo(-1);
+		assertThat(bulkhead.getQueuedCount()).isEqualTo(1);
+		assertThat(bulkhead.getInFlight()).isEqualTo(1);
+	}
+
+	@Test
+	void staleOverflowDoesNotQueueWhenStaleValueExists() {
+		LoaderBulkhead bulkhead = new LoaderBulkhead("c", config().setOverflowAction(L2CacheConfig.OverflowAction.STALE).setWaitMillis(5000));
+		bulkhead.recordLoaded("c:k", "old");
+		bulkhead.acquire(false);
+
+		assertThat(bulkhead.acquire(true)).isEqualTo(-1);
+		assertThat(bulkhead.getStale("c:k")).isEqualTo("old");
+		assertThat(bulkhead.getQueuedCount()).isZero();
+	}
+
+	@Test
+	void adaptiveLimitBacksOffOncePerRoundOfLoads() throws InterruptedException {
+		LoaderBulkhead bulkhead = new LoaderBulkhead("c", config().setMaxConcurrency(8).setAdaptive(true).setBackoffRatio(0.5));
+		Thread.sleep(1);
+		long first = bulkhead.acquire(false);
+		long second = bulkhead.acquire(false);
+
+		bulkhead.release(first, false);
+		assertThat(bulkhead.getLimit()).isEqualTo(4);
+		// 下调前开始的加载失败不再下调
+		bulkhead.release(second, false);
+		assertThat(bulkhead.getLimit()).isEqualTo(4);
+
+		// 成功的加载每完成约一轮上调1，耗时固定为1ms，不超过无负载耗时的latencyTolerance倍
+		for (int i = 0; i < 5; i++) {
+			bulkhead.acquire(false);
+			bulkhead.release(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1), true);
+		}
+		assertThat(bulkhead.getLimit()).isEqualTo(5);
+	}
+
+	private static L2CacheConfig.Bulkhead config() {
+		return new L2CacheConfig.Bulkhead().setEnabled(true).setMaxConcurrency(1).setOverflowAction(L2CacheConfig.OverflowAction.WAIT);
+	}
+}
@@ -0,0 +1,94 @@
+package com.jincou.core.spring;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.sync.CacheMessage;
+import com.jincou.core.sync.CacheMessageDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class LoadingRedisCaffeineCacheTest {
+
+	private final List<CacheMessage> published = Collections.synchronizedList(new ArrayList<>());
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private RedisCache redisCache;
+
+	private RedisCaffeineCacheManager cacheManager;
+
+	private CacheMessageDispatcher dispatcher;
+
+	@BeforeEach
+	void setUp() {
+		L2CacheConfig config = new L2CacheConfig();
+		config.getComposite().setL1AllOpen(true);
+		redisCache = mock(RedisCache.class);
+		AtomicReference<CacheMessageDispatcher> dispatcherRef = new AtomicReference<>();
+		// 通知原样投递回本节点，与redis把消息广播给包括发送方在内的所有订阅者一致
+		cacheManager = new RedisCaffeineCacheManager(config, redisCache, message -> {
+			published.add(message);
+			dispatcherRef.get().dispatch(message);
+		});
+		dispatcher = new CacheMessageDispatcher(config.getListener(), cacheManager);
+		dispatcherRef.set(dispatcher);
+		cacheManager.registerLoader("loadingCache", key -> "v" + loads.incrementAndGet());
+	}
+
+	@AfterEach
+	void tearDown() {
+		dispatcher.destroy();
+		cacheManager.destroy();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void refreshedEntrySurvivesOwnNotification() throws InterruptedException {
+		LoadingRedisCaffeineCache cache = cacheManager.getLoadingCache("loadingCache");
+		LoadingCache<Object, Object> level1Cache = (LoadingCache<Object, Object>) cache.getLevel1Cache();
+		level1Cache.put("other", "o");
+		level1Cache.put("key", "v0");
+
+		level1Cache.refresh("key");
+		verify(redisCache, timeout(5000)).setRaw(eq("loadingCache:key"), any(), anyLong());
+		awaitValue(level1Cache, "key", "v1");
+
+		// 其他节点的通知与刷新发出的通知进入同一个分段队列，处理完它说明之前的通知也已处理
+		dispatcher.dispatch(new CacheMessage("loadingCache", "other"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (level1Cache.getIfPresent("other") != null && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertThat(level1Cache.getIfPresent("other")).isNull();
+		assertThat(level1Cache.getIfPresent("key")).isEqualTo("v1");
+		assertThat(published).hasSize(1);
+		assertThat(published.get(0).getOrigin()).isEqualTo(cacheManager.getNodeId());
+		assertThat(loads).hasValue(1);
+	}
+
+	private static void awaitValue(LoadingCache<Object, Object> level1Cache, Object key, Object expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!expected.equals(level1Cache.getIfPresent(key)) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(level1Cache.getIfPresent(key)).isEqualTo(expected);
+	}
+}
@@ -0,0 +1,121 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.sync.CacheMessage;
+import com.jincou.core.sync.CacheMessageDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RedisCaffeineCacheTest {
+
+	private final List<CacheMessage> published = new ArrayList<>();
+
+	private RedisCaffeineCacheManager cacheManager;
+
+	private CacheMessageDispatcher dispatcher;
+
+	@BeforeEach
+	void setUp() {
+		L2CacheConfig config = new L2CacheConfig();
+		config.getComposite().setL1AllOpen(true);
+		config.getCacheModes().put("localCache", L2CacheConfig.CacheMode.L1);
+		AtomicReference<CacheMessageDispatcher> dispatcherRef = new AtomicReference<>();
+		// 通知原样投递回本节点，与redis把消息广播给包括发送方在内的所有订阅者一致
+		cacheManager = new RedisCaffeineCacheManager(config, new RedisCache(), message -> {
+			published.add(message);
+			dispatcherRef.get().dispatch(message);
+		});
+		dispatcher = new CacheMessageDispatcher(config.getListener(), cacheManager);
+		dispatcherRef.set(dispatcher);
+	}
+
+	@AfterEach
+	void tearDown() {
+		dispatcher.destroy();
+		cacheManager.destroy();
+	}
+
+	@Test
+	void l1OnlyValueSurvivesOwnBroadcast() throws InterruptedException {
+		RedisCaffeineCache cache = (RedisCaffeineCache) cacheManager.getCache("localCache");
+		cache.put("other", "o");
+		cache.put("key", "v");
+
+		// 其他节点的通知与自己的通知进入同一个分段队列，处理完它说明之前的通知也已处理
+		dispatcher.dispatch(new CacheMessage("localCache", "other"));
+		awaitEvicted(cache, "other");
+
+		assertThat(published).allSatisfy(message -> assertThat(message.getOrigin()).isEqualTo(cacheManager.getNodeId()));
+		assertThat(cache.get("key")).isNotNull();
+		assertThat(cache.get("key").get()).isEqualTo("v");
+	}
+
+	@Test
+	void l1OnlyEvictStillReachesOtherNodes() {
+		RedisCaffeineCache cache = (RedisCaffeineCache) cacheManager.getCache("localCache");
+		cache.put("key", "v");
+		cache.evict("key");
+
+		assertThat(cache.get("key")).isNull();
+		assertThat(published).hasSize(2);
+		assertThat(published.get(1).getKey()).isEqualTo("key");
+	}
+
+	@Test
+	void firstReadAfterInvalidationGoesToPrimary() {
+		RedisCache primary = mock(RedisCache.class);
+		RedisCache replica = mock(RedisCache.class);
+		when(primary.hasReplicaReader(any())).thenReturn(true);
+		when(primary.getReader(any())).thenReturn(replica);
+		// 从节点尚未同步，仍是旧值
+		when(replica.getRaw(eq("replicaCache:key"))).thenReturn(bytes("old"));
+		when(primary.getRaw(eq("replicaCache:key"))).thenReturn(bytes("new"));
+		when(replica.deserializeValue(any())).thenAnswer(invocation -> string(invocation.getArgument(0)));
+		when(primary.deserializeValue(any())).thenAnswer(invocation -> string(invocation.getArgument(0)));
+		L2CacheConfig config = new L2CacheConfig();
+		config.getComposite().setL1AllOpen(true);
+		RedisCaffeineCacheManager replicaManager = new RedisCaffeineCacheManager(config, primary, published::add);
+		try {
+			RedisCaffeineCache cache = (RedisCaffeineCache) replicaManager.getCache("replicaCache");
+			assertThat(cache.get("key").get()).isEqualTo("old");
+
+			// 其他节点更新后发来的清理通知
+			cache.clearLocal("key");
+
+			assertThat(cache.get("key").get()).isEqualTo("new");
+			assertThat(cache.getLevel1Cache().getIfPresent("key")).isEqualTo("new");
+		} finally {
+			replicaManager.destroy();
+		}
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String string(byte[] bytes) {
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void awaitEvicted(RedisCaffeineCache cache, Object key) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (cache.get(key) != null && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(cache.get(key)).isNull();
+	}
+}
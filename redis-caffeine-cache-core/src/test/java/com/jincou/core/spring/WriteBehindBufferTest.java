@@ -0,0 +1,99 @@
+package com.jincou.core.spring;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.sync.CacheMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class WriteBehindBufferTest {
+
+	private final List<CacheMessage> published = Collections.synchronizedList(new ArrayList<>());
+
+	private ScheduledExecutorService scheduler;
+
+	private RedisCache redisCache;
+
+	private WriteBehindBuffer buffer;
+
+	@BeforeEach
+	void setUp() {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		redisCache = mock(RedisCache.class);
+		// 不启动定时刷新，只由积压数量触发
+		buffer = new WriteBehindBuffer("wb", redisCache, published::add, scheduler, 60_000, 2, 2);
+	}
+
+	@AfterEach
+	void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	void fullBufferWritesThroughWhenFlushFails() {
+		doThrow(new RedisConnectionFailureException("down")).when(redisCache).pipelineSet(anyMap(), anyLong());
+		buffer.offer("wb:k1", "k1", "v1", null, 1000);
+		buffer.offer("wb:k2", "k2", "v2", null, 1000);
+
+		assertThatThrownBy(() -> buffer.offer("wb:k3", "k3", "v3", null, 1000))
+				.isInstanceOf(RedisConnectionFailureException.class);
+		// 已缓冲的key仍可合并写入，不增加积压
+		buffer.offer("wb:k1", "k1", "v1'", null, 1000);
+
+		assertThat(buffer.getPendingCount()).isEqualTo(2);
+		assertThat(buffer.get("wb:k3")).isNull();
+		assertThat(buffer.get("wb:k1")).isEqualTo("v1'");
+		assertThat(buffer.getWriteThroughCount()).isEqualTo(1);
+		assertThat(published).isEmpty();
+	}
+
+	@Test
+	void fullBufferDrainsOnceRedisRecovers() {
+		doThrow(new RedisConnectionFailureException("down")).when(redisCache).pipelineSet(anyMap(), anyLong());
+		buffer.offer("wb:k1", "k1", "v1", null, 1000);
+		buffer.offer("wb:k2", "k2", "v2", null, 1000);
+
+		doNothing().when(redisCache).pipelineSet(anyMap(), anyLong());
+		buffer.offer("wb:k3", "k3", "v3", null, 1000);
+
+		assertThat(buffer.getWriteThroughCount()).isZero();
+		assertThat(buffer.get("wb:k1")).isNull();
+		assertThat(buffer.get("wb:k3")).isEqualTo("v3");
+		assertThat(buffer.getFlushedCount()).isEqualTo(2);
+	}
+
+	@Test
+	void guardedFlushWritesSerializedValuesOneByOne() {
+		Map<String, byte[]> written = new LinkedHashMap<>();
+		buffer.setGuardedWriter((cacheKey, raw, expire) -> written.put(cacheKey, raw));
+		byte[] raw = {1, 2, 3};
+		buffer.offer("wb:k1", "k1", "v1", raw, 1000);
+
+		buffer.flush();
+
+		assertThat(written).containsOnlyKeys("wb:k1");
+		assertThat(written.get("wb:k1")).isSameAs(raw);
+		verify(redisCache, never()).pipelineSet(anyMap(), anyLong());
+		assertThat(published).hasSize(1);
+		assertThat(published.get(0).getKeys()).containsExactly("k1");
+	}
+}
@@ -0,0 +1,94 @@
+package com.jincou.harness;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.spring.RedisCaffeineCache;
+import com.jincou.core.spring.RedisCaffeineCacheManager;
+import com.jincou.core.sync.CacheMessageDispatcher;
+import com.jincou.core.sync.CacheMessageListener;
+import com.jincou.core.sync.RedisTopicCacheMessagePublisher;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.protocol.ProtocolVersion;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ *  模拟的应用节点
+ *  <p>
+ *  不启动spring容器，按自动配置的方式手工组装一个节点的连接、缓存管理器和缓存更新监听，
+ *  多个节点连接同一个redis即可在一个JVM内模拟集群。
+ */
+public class CacheNode implements AutoCloseable {
+
+	private final String name;
+
+	private final LettuceConnectionFactory connectionFactory;
+
+	private final RedisCaffeineCacheManager cacheManager;
+
+	private final CacheMessageDispatcher cacheMessageDispatcher;
+
+	private final RedisMessageListenerContainer listenerContainer;
+
+	public CacheNode(String name, String host, int port, L2CacheConfig l2CacheConfig) {
+		this.name = name;
+		LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+				.clientOptions(ClientOptions.builder()
+						.protocolVersion(ProtocolVersion.RESP2)
+						.socketOptions(SocketOptions.builder().tcpNoDelay(true).build())
+						.build())
+				.build();
+		this.connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port), clientConfiguration);
+		this.connectionFactory.afterPropertiesSet();
+
+		RedisTemplate<Object, Object> template = new RedisTemplate<>();
+		template.setConnectionFactory(connectionFactory);
+		template.setKeySerializer(new StringRedisSerializer());
+		template.setHashKeySerializer(new StringRedisSerializer());
+		template.afterPropertiesSet();
+		RedisCache redisCache = new RedisCache();
+		redisCache.setRedisTemplate(template);
+
+		String topic = l2CacheConfig.getRedis().getTopic();
+		this.cacheManager = new RedisCaffeineCacheManager(l2CacheConfig, redisCache, new RedisTopicCacheMessagePublisher(redisCache, topic));
+		this.cacheMessageDispatcher = new CacheMessageDispatcher(l2CacheConfig.getListener(), cacheManager);
+
+		this.listenerContainer = new RedisMessageListenerContainer();
+		listenerContainer.setConnectionFactory(connectionFactory);
+		listenerContainer.setTaskExecutor(new SyncTaskExecutor());
+		listenerContainer.addMessageListener(new CacheMessageListener(redisCache, cacheMessageDispatcher), new ChannelTopic(topic));
+		listenerContainer.afterPropertiesSet();
+		listenerContainer.start();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public RedisCaffeineCacheManager getCacheManager() {
+		return cacheManager;
+	}
+
+	public RedisCaffeineCache getCache(String cacheName) {
+		return (RedisCaffeineCache) cacheManager.getCache(cacheName);
+	}
+
+	public CacheMessageDispatcher getCacheMessageDispatcher() {
+		return cacheMessageDispatcher;
+	}
+
+	@Override
+	public void close() throws Exception {
+		listenerContainer.destroy();
+		cacheMessageDispatcher.destroy();
+		cacheManager.destroy();
+		connectionFactory.destroy();
+	}
+}
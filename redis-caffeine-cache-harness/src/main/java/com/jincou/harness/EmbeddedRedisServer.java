@@ -0,0 +1,748 @@
+package com.jincou.harness;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ *  进程内的redis协议替身
+ *  <p>
+ *  实现RESP2协议下二级缓存用到的命令：GET/SET/SETEX/PSETEX/MGET/DEL/EXISTS/KEYS/SCAN/PEXPIRE/EXPIRE/SADD/SMEMBERS/SSCAN/SREM/
+ *  ZADD/ZREM/ZRANGEBYSCORE/ZREMRANGEBYSCORE/PUBLISH/SUBSCRIBE/UNSUBSCRIBE/INFO/PING，以及客户端握手时的CLIENT/SELECT/AUTH。
+ *  过期在读取时惰性判断，每个连接一个线程，只用于本地压测与多节点模拟，不追求性能与完整语义。
+ */
+public class EmbeddedRedisServer implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(EmbeddedRedisServer.class);
+
+	private static final byte[] CRLF = {'\r', '\n'};
+
+	private final ConcurrentHashMap<String, Entry> data = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Set<Connection>> channels = new ConcurrentHashMap<>();
+
+	private final Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
+
+	private final Set<Connection> connections = new CopyOnWriteArraySet<>();
+
+	private final AtomicLong commandCount = new AtomicLong();
+
+	private final ServerSocket serverSocket;
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param port 监听端口，为0时使用随机空闲端口
+	 */
+	public EmbeddedRedisServer(int port) throws IOException {
+		this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::accept, "embedded-redis-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		logger.info("embedded redis started, port={}", getPort());
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * 已处理的命令数
+	 */
+	public long getCommandCount() {
+		return commandCount.get();
+	}
+
+	/**
+	 * 未过期的key数量
+	 */
+	public int size() {
+		long now = System.currentTimeMillis();
+		int size = 0;
+		for (Entry entry : data.values()) {
+			if (!entry.isExpired(now)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	public void flushAll() {
+		data.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		serverSocket.close();
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	private void accept() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Connection connection = new Connection(socket);
+				connections.add(connection);
+				Thread thread = new Thread(connection, "embedded-redis-connection-" + socket.getPort());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if (running) {
+					logger.warn("embedded redis accept failed", e);
+				}
+			}
+		}
+	}
+
+	private Entry live(String key) {
+		Entry entry = data.get(key);
+		if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+			data.remove(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	private List<String> matchingKeys(String pattern) {
+		Pattern regex = pattern == null ? null : patternCache.computeIfAbsent(pattern, EmbeddedRedisServer::globToRegex);
+		long now = System.currentTimeMillis();
+		List<String> keys = new ArrayList<>();
+		for (Map.Entry<String, Entry> entry : data.entrySet()) {
+			if (!entry.getValue().isExpired(now) && (regex == null || regex.matcher(entry.getKey()).matches())) {
+				keys.add(entry.getKey());
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * SCAN排序及游标使用的哈希值，不为0，0表示扫描结束
+	 */
+	static long scanHash(String item) {
+		return (item.hashCode() & 0xffffffffL) + 1;
+	}
+
+	static Pattern globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			switch (c) {
+				case '*':
+					regex.append(".*");
+					break;
+				case '?':
+					regex.append('.');
+					break;
+				case '[':
+					int end = glob.indexOf(']', i);
+					if (end > i) {
+						regex.append(glob, i, end + 1);
+						i = end;
+					} else {
+						regex.append("\\[");
+					}
+					break;
+				case '\\':
+					if (i + 1 < glob.length()) {
+						regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+					}
+					break;
+				default:
+					regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	private static String str(byte[] bytes) {
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * 存储的值，value为byte[]（字符串）或Set&lt;String&gt;（集合）
+	 */
+	private static final class Entry {
+
+		private final Object value;
+
+		private volatile long expireAt;
+
+		Entry(Object value, long expireAt) {
+			this.value = value;
+			this.expireAt = expireAt;
+		}
+
+		boolean isExpired(long now) {
+			return expireAt > 0 && expireAt <= now;
+		}
+	}
+
+	private final class Connection implements Runnable, Closeable {
+
+		private final Socket socket;
+
+		private final InputStream in;
+
+		private final OutputStream out;
+
+		private final Set<String> subscriptions = new HashSet<>();
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					List<byte[]> command = readCommand();
+					if (command == null) {
+						break;
+					}
+					if (command.isEmpty()) {
+						continue;
+					}
+					commandCount.incrementAndGet();
+					synchronized (this) {
+						execute(command);
+						// 客户端pipeline发送的命令读完后再统一刷新
+						if (in.available() == 0) {
+							out.flush();
+						}
+					}
+				}
+			} catch (EOFException e) {
+				// 客户端断开
+			} catch (IOException e) {
+				if (running && !socket.isClosed()) {
+					logger.debug("embedded redis connection closed", e);
+				}
+			} finally {
+				close();
+			}
+		}
+
+		@Override
+		public void close() {
+			for (String channel : subscriptions) {
+				Set<Connection> subscribers = channels.get(channel);
+				if (subscribers != null) {
+					subscribers.remove(this);
+				}
+			}
+			connections.remove(this);
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+				// ignore
+			}
+		}
+
+		private void execute(List<byte[]> command) throws IOException {
+			String name = str(command.get(0)).toUpperCase(Locale.ROOT);
+			switch (name) {
+				case "PING":
+					if (!subscriptions.isEmpty()) {
+						writeArrayHeader(2);
+						writeBulk(bytes("pong"));
+						writeBulk(new byte[0]);
+					} else {
+						writeSimple("PONG");
+					}
+					break;
+				case "CLIENT":
+				case "SELECT":
+				case "AUTH":
+					writeSimple("OK");
+					break;
+				case "QUIT":
+					writeSimple("OK");
+					out.flush();
+					close();
+					break;
+				case "GET":
+					get(command);
+					break;
+				case "SET":
+					set(command);
+					break;
+				case "GETSET":
+					get(command);
+					data.put(str(command.get(1)), new Entry(command.get(2), 0));
+					break;
+				case "SETEX":
+				case "PSETEX":
+					long expire = Long.parseLong(str(command.get(2)));
+					data.put(str(command.get(1)), new Entry(command.get(3),
+							System.currentTimeMillis() + ("SETEX".equals(name) ? expire * 1000 : expire)));
+					writeSimple("OK");
+					break;
+				case "MGET":
+					writeArrayHeader(command.size() - 1);
+					for (int i = 1; i < command.size(); i++) {
+						Entry entry = live(str(command.get(i)));
+						writeBulk(entry != null && entry.value instanceof byte[] ? (byte[]) entry.value : null);
+					}
+					break;
+				case "DEL":
+				case "UNLINK":
+					long deleted = 0;
+					for (int i = 1; i < command.size(); i++) {
+						if (live(str(command.get(i))) != null && data.remove(str(command.get(i))) != null) {
+							deleted++;
+						}
+					}
+					writeInteger(deleted);
+					break;
+				case "EXISTS":
+					long exists = 0;
+					for (int i = 1; i < command.size(); i++) {
+						if (live(str(command.get(i))) != null) {
+							exists++;
+						}
+					}
+					writeInteger(exists);
+					break;
+				case "PEXPIRE":
+				case "EXPIRE":
+					Entry entry = live(str(command.get(1)));
+					if (entry == null) {
+						writeInteger(0);
+					} else {
+						long ttl = Long.parseLong(str(command.get(2)));
+						entry.expireAt = System.currentTimeMillis() + ("EXPIRE".equals(name) ? ttl * 1000 : ttl);
+						writeInteger(1);
+					}
+					break;
+				case "KEYS":
+					List<String> keys = matchingKeys(str(command.get(1)));
+					writeArrayHeader(keys.size());
+					for (String key : keys) {
+						writeBulk(bytes(key));
+					}
+					break;
+				case "SCAN":
+					scan(matchingKeys(null), command, 1);
+					break;
+				case "SSCAN":
+					scan(members(str(command.get(1))), command, 2);
+					break;
+				case "SADD":
+					sadd(command);
+					break;
+				case "SMEMBERS":
+					Set<String> members = members(str(command.get(1)));
+					writeArrayHeader(members.size());
+					for (String member : members) {
+						writeBulk(bytes(member));
+					}
+					break;
+				case "SREM":
+					Set<String> set = members(str(command.get(1)));
+					long removed = 0;
+					for (int i = 2; i < command.size(); i++) {
+						if (set.remove(str(command.get(i)))) {
+							removed++;
+						}
+					}
+					// 与redis一致，集合为空时删除key
+					data.computeIfPresent(str(command.get(1)), (key, current) -> current.value == set && set.isEmpty() ? null : current);
+					writeInteger(removed);
+					break;
+				case "ZADD":
+					zadd(command);
+					break;
+				case "ZREM":
+					Map<String, Double> zset = sortedSet(str(command.get(1)));
+					long zremoved = 0;
+					for (int i = 2; i < command.size(); i++) {
+						if (zset.remove(str(command.get(i))) != null) {
+							zremoved++;
+						}
+					}
+					writeInteger(zremoved);
+					break;
+				case "ZRANGEBYSCORE":
+					List<String> range = rangeByScore(str(command.get(1)), score(command.get(2)), score(command.get(3)));
+					writeArrayHeader(range.size());
+					for (String member : range) {
+						writeBulk(bytes(member));
+					}
+					break;
+				case "ZREMRANGEBYSCORE":
+					Map<String, Double> scores = sortedSet(str(command.get(1)));
+					List<String> expired = rangeByScore(str(command.get(1)), score(command.get(2)), score(command.get(3)));
+					for (String member : expired) {
+						scores.remove(member);
+					}
+					writeInteger(expired.size());
+					break;
+				case "PUBLISH":
+					writeInteger(publish(str(command.get(1)), command.get(2)));
+					break;
+				case "SUBSCRIBE":
+					for (int i = 1; i < command.size(); i++) {
+						String channel = str(command.get(i));
+						subscriptions.add(channel);
+						channels.computeIfAbsent(channel, c -> new CopyOnWriteArraySet<>()).add(this);
+						writeSubscription("subscribe", channel);
+					}
+					break;
+				case "UNSUBSCRIBE":
+					List<String> targets = new ArrayList<>();
+					for (int i = 1; i < command.size(); i++) {
+						targets.add(str(command.get(i)));
+					}
+					if (targets.isEmpty()) {
+						targets.addAll(subscriptions);
+					}
+					if (targets.isEmpty()) {
+						writeSubscription("unsubscribe", null);
+					}
+					for (String channel : targets) {
+						subscriptions.remove(channel);
+						Set<Connection> subscribers = channels.get(channel);
+						if (subscribers != null) {
+							subscribers.remove(this);
+						}
+						writeSubscription("unsubscribe", channel);
+					}
+					break;
+				case "INFO":
+					writeBulk(bytes("# Replication\r\nrole:master\r\nconnected_slaves:0\r\nmaster_repl_offset:0\r\n"));
+					break;
+				default:
+					writeError("ERR unknown command '" + name + "'");
+			}
+		}
+
+		private void get(List<byte[]> command) throws IOException {
+			Entry entry = live(str(command.get(1)));
+			if (entry != null && !(entry.value instanceof byte[])) {
+				writeError("WRONGTYPE Operation against a key holding the wrong kind of value");
+				return;
+			}
+			writeBulk(entry == null ? null : (byte[]) entry.value);
+		}
+
+		private void set(List<byte[]> command) throws IOException {
+			String key = str(command.get(1));
+			long expireAt = 0;
+			boolean nx = false;
+			boolean xx = false;
+			for (int i = 3; i < command.size(); i++) {
+				String option = str(command.get(i)).toUpperCase(Locale.ROOT);
+				if ("PX".equals(option)) {
+					expireAt = System.currentTimeMillis() + Long.parseLong(str(command.get(++i)));
+				} else if ("EX".equals(option)) {
+					expireAt = System.currentTimeMillis() + Long.parseLong(str(command.get(++i))) * 1000;
+				} else if ("NX".equals(option)) {
+					nx = true;
+				} else if ("XX".equals(option)) {
+					xx = true;
+				}
+			}
+			Entry entry = new Entry(command.get(2), expireAt);
+			if (nx) {
+				live(key);
+				if (data.putIfAbsent(key, entry) != null) {
+					writeBulk(null);
+					return;
+				}
+			} else if (xx) {
+				if (live(key) == null || data.replace(key, entry) == null) {
+					writeBulk(null);
+					return;
+				}
+			} else {
+				data.put(key, entry);
+			}
+			writeSimple("OK");
+		}
+
+		/**
+		 * 按哈希值排序，游标为下一页起始的哈希值：扫描期间一直存在的元素至少返回一次，删除已返回的元素不影响后续页，
+		 * 新增的元素可能返回也可能不返回，与redis的SCAN语义一致
+		 *
+		 * @param cursorIndex 命令中游标参数的下标，之后为MATCH、COUNT选项
+		 */
+		private void scan(Collection<String> items, List<byte[]> command, int cursorIndex) throws IOException {
+			long cursor = Long.parseLong(str(command.get(cursorIndex)));
+			String pattern = null;
+			int count = 10;
+			for (int i = cursorIndex + 1; i < command.size(); i++) {
+				String option = str(command.get(i)).toUpperCase(Locale.ROOT);
+				if ("MATCH".equals(option)) {
+					pattern = str(command.get(++i));
+				} else if ("COUNT".equals(option)) {
+					count = Integer.parseInt(str(command.get(++i)));
+				}
+			}
+			List<String> keys = new ArrayList<>();
+			for (String item : items) {
+				if (scanHash(item) >= cursor) {
+					keys.add(item);
+				}
+			}
+			keys.sort(Comparator.comparingLong(EmbeddedRedisServer::scanHash).thenComparing(Comparator.naturalOrder()));
+			// 哈希值相同的元素放在同一页，否则下一页的游标无法区分它们
+			int end = Math.min(keys.size(), count);
+			while (end < keys.size() && scanHash(keys.get(end)) == scanHash(keys.get(end - 1))) {
+				end++;
+			}
+			Pattern regex = pattern == null ? null : patternCache.computeIfAbsent(pattern, EmbeddedRedisServer::globToRegex);
+			List<String> page = new ArrayList<>();
+			for (int i = 0; i < end; i++) {
+				if (regex == null || regex.matcher(keys.get(i)).matches()) {
+					page.add(keys.get(i));
+				}
+			}
+			writeArrayHeader(2);
+			writeBulk(bytes(String.valueOf(end >= keys.size() ? 0 : scanHash(keys.get(end)))));
+			writeArrayHeader(page.size());
+			for (String key : page) {
+				writeBulk(bytes(key));
+			}
+		}
+
+		private void sadd(List<byte[]> command) throws IOException {
+			String key = str(command.get(1));
+			Entry entry = live(key);
+			if (entry == null) {
+				Entry created = new Entry(Collections.newSetFromMap(new ConcurrentHashMap<>()), 0);
+				entry = data.putIfAbsent(key, created);
+				entry = entry == null ? created : entry;
+			}
+			if (!(entry.value instanceof Set)) {
+				writeError("WRONGTYPE Operation against a key holding the wrong kind of value");
+				return;
+			}
+			@SuppressWarnings("unchecked")
+			Set<String> set = (Set<String>) entry.value;
+			long added = 0;
+			for (int i = 2; i < command.size(); i++) {
+				if (set.add(str(command.get(i)))) {
+					added++;
+				}
+			}
+			writeInteger(added);
+		}
+
+		private void zadd(List<byte[]> command) throws IOException {
+			String key = str(command.get(1));
+			Entry entry = live(key);
+			if (entry == null) {
+				Entry created = new Entry(new ConcurrentHashMap<String, Double>(), 0);
+				entry = data.putIfAbsent(key, created);
+				entry = entry == null ? created : entry;
+			}
+			if (!(entry.value instanceof Map)) {
+				writeError("WRONGTYPE Operation against a key holding the wrong kind of value");
+				return;
+			}
+			@SuppressWarnings("unchecked")
+			Map<String, Double> scores = (Map<String, Double>) entry.value;
+			long added = 0;
+			for (int i = 2; i + 1 < command.size(); i += 2) {
+				if (scores.put(str(command.get(i + 1)), score(command.get(i))) == null) {
+					added++;
+				}
+			}
+			writeInteger(added);
+		}
+
+		/**
+		 * 分数在[min, max]内的成员，按分数排序，不支持开区间
+		 */
+		private List<String> rangeByScore(String key, double min, double max) {
+			List<Map.Entry<String, Double>> entries = new ArrayList<>(sortedSet(key).entrySet());
+			entries.sort(Map.Entry.comparingByValue());
+			List<String> range = new ArrayList<>();
+			for (Map.Entry<String, Double> entry : entries) {
+				if (entry.getValue() >= min && entry.getValue() <= max) {
+					range.add(entry.getKey());
+				}
+			}
+			return range;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Map<String, Double> sortedSet(String key) {
+			Entry entry = live(key);
+			return entry != null && entry.value instanceof Map ? (Map<String, Double>) entry.value : new HashMap<>();
+		}
+
+		private double score(byte[] value) {
+			String score = str(value);
+			if ("-inf".equalsIgnoreCase(score)) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			if ("+inf".equalsIgnoreCase(score) || "inf".equalsIgnoreCase(score)) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return Double.parseDouble(score);
+		}
+
+		@SuppressWarnings("unchecked")
+		private Set<String> members(String key) {
+			Entry entry = live(key);
+			return entry != null && entry.value instanceof Set ? (Set<String>) entry.value : new HashSet<>();
+		}
+
+		private long publish(String channel, byte[] message) {
+			Set<Connection> subscribers = channels.get(channel);
+			if (subscribers == null) {
+				return 0;
+			}
+			long received = 0;
+			for (Connection subscriber : subscribers) {
+				try {
+					synchronized (subscriber) {
+						subscriber.writeArrayHeader(3);
+						subscriber.writeBulk(bytes("message"));
+						subscriber.writeBulk(bytes(channel));
+						subscriber.writeBulk(message);
+						subscriber.out.flush();
+					}
+					received++;
+				} catch (IOException e) {
+					subscriber.close();
+				}
+			}
+			return received;
+		}
+
+		private void writeSubscription(String kind, String channel) throws IOException {
+			writeArrayHeader(3);
+			writeBulk(bytes(kind));
+			writeBulk(channel == null ? null : bytes(channel));
+			writeInteger(subscriptions.size());
+		}
+
+		private List<byte[]> readCommand() throws IOException {
+			int first = in.read();
+			if (first < 0) {
+				return null;
+			}
+			if (first != '*') {
+				// 内联命令，如telnet手动输入
+				String line = (char) first + readLine();
+				List<byte[]> command = new ArrayList<>();
+				for (String part : line.trim().split("\\s+")) {
+					if (!part.isEmpty()) {
+						command.add(bytes(part));
+					}
+				}
+				return command;
+			}
+			int count = Integer.parseInt(readLine());
+			List<byte[]> command = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				if (in.read() != '$') {
+					throw new IOException("protocol error, expected bulk string");
+				}
+				int length = Integer.parseInt(readLine());
+				byte[] arg = new byte[length];
+				int offset = 0;
+				while (offset < length) {
+					int read = in.read(arg, offset, length - offset);
+					if (read < 0) {
+						throw new EOFException();
+					}
+					offset += read;
+				}
+				readLine();
+				command.add(arg);
+			}
+			return command;
+		}
+
+		private String readLine() throws IOException {
+			ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+			int c;
+			while ((c = in.read()) != '\r') {
+				if (c < 0) {
+					throw new EOFException();
+				}
+				line.write(c);
+			}
+			if (in.read() != '\n') {
+				throw new IOException("protocol error, expected LF");
+			}
+			return str(line.toByteArray());
+		}
+
+		private void writeSimple(String value) throws IOException {
+			out.write('+');
+			out.write(bytes(value));
+			out.write(CRLF);
+		}
+
+		private void writeError(String message) throws IOException {
+			out.write('-');
+			out.write(bytes(message));
+			out.write(CRLF);
+		}
+
+		private void writeInteger(long value) throws IOException {
+			out.write(':');
+			out.write(bytes(String.valueOf(value)));
+			out.write(CRLF);
+		}
+
+		private void writeBulk(byte[] value) throws IOException {
+			if (value == null) {
+				out.write(bytes("$-1"));
+				out.write(CRLF);
+				return;
+			}
+			out.write('$');
+			out.write(bytes(String.valueOf(value.length)));
+			out.write(CRLF);
+			out.write(value);
+			out.write(CRLF);
+		}
+
+		private void writeArrayHeader(int size) throws IOException {
+			out.write('*');
+			out.write(bytes(String.valueOf(size)));
+			out.write(CRLF);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.jincou.harness;
+
+import com.jincou.core.config.L2CacheConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  压测入口
+ *  <p>
+ *  启动内嵌的redis和若干模拟节点，依次执行吞吐、脏读窗口、加载重复三个场景并输出报告。
+ *  参数：--nodes=3 --threads=16 --seconds=10 --keys=10000 --port=0，
+ *  阈值：--min-ops-per-second、--max-stale-p99-millis、--max-loads-per-key，任一不满足时以状态码1退出，便于接入CI。
+ */
+public class HarnessApplication {
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parseArgs(args);
+		int nodeCount = Math.max(2, intOption(options, "nodes", 3));
+		int threads = intOption(options, "threads", 16);
+		int seconds = intOption(options, "seconds", 10);
+		int keySpace = intOption(options, "keys", 10000);
+
+		List<String> violations = new ArrayList<>();
+		try (EmbeddedRedisServer server = new EmbeddedRedisServer(intOption(options, "port", 0))) {
+			List<CacheNode> nodes = new ArrayList<>();
+			try {
+				for (int i = 0; i < nodeCount; i++) {
+					nodes.add(new CacheNode("node-" + i, "127.0.0.1", server.getPort(), l2CacheConfig()));
+				}
+				StressScenarios scenarios = new StressScenarios(nodes);
+
+				StressScenarios.ThroughputResult throughput = scenarios.throughput(threads, seconds, keySpace);
+				System.out.println("[throughput] " + throughput);
+				LatencyRecorder staleWindow = scenarios.staleRead(200);
+				System.out.println("[stale-read] " + staleWindow);
+				StressScenarios.LoaderResult loader = scenarios.loaderDuplication(Math.max(1, threads / nodeCount), 50);
+				System.out.println("[loader] " + loader);
+				System.out.println("[redis] commands=" + server.getCommandCount() + ", keys=" + server.size());
+
+				if (options.containsKey("min-ops-per-second")
+						&& throughput.getOpsPerSecond() < Double.parseDouble(options.get("min-ops-per-second"))) {
+					violations.add("ops/s " + (long) throughput.getOpsPerSecond() + " < " + options.get("min-ops-per-second"));
+				}
+				if (options.containsKey("max-stale-p99-millis")
+						&& staleWindow.getPercentileMicros(99) > Long.parseLong(options.get("max-stale-p99-millis")) * 1000) {
+					violations.add("stale p99 " + staleWindow.getPercentileMicros(99) + "us > " + options.get("max-stale-p99-millis") + "ms");
+				}
+				if (options.containsKey("max-loads-per-key")
+						&& loader.getMaxLoadsPerKey() > Integer.parseInt(options.get("max-loads-per-key"))) {
+					violations.add("loads per key " + loader.getMaxLoadsPerKey() + " > " + options.get("max-loads-per-key"));
+				}
+			} finally {
+				for (CacheNode node : nodes) {
+					node.close();
+				}
+			}
+		}
+
+		if (!violations.isEmpty()) {
+			System.err.println("[failed] " + violations);
+			System.exit(1);
+		}
+	}
+
+	static L2CacheConfig l2CacheConfig() {
+		L2CacheConfig config = new L2CacheConfig();
+		config.getComposite().setL1AllOpen(true);
+		config.getCaffeine().setMaximumSize(100000);
+		config.getCaffeine().setExpireAfterWrite(60);
+		config.getRedis().setDefaultExpiration(300000);
+		return config;
+	}
+
+	private static Map<String, String> parseArgs(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (arg.startsWith("--") && arg.contains("=")) {
+				options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+			}
+		}
+		return options;
+	}
+
+	private static int intOption(Map<String, String> options, String name, int defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+}
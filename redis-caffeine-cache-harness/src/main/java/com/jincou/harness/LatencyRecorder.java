@@ -0,0 +1,64 @@
+package com.jincou.harness;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  延迟分布统计
+ *  <p>
+ *  按微秒的2的幂分桶计数，百分位取所在桶的上界，精度足以发现量级上的退化
+ */
+public class LatencyRecorder {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder totalMicros = new LongAdder();
+
+	public void record(long nanos) {
+		long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		totalMicros.add(micros);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getAverageMicros() {
+		long total = count.sum();
+		return total == 0 ? 0 : (double) totalMicros.sum() / total;
+	}
+
+	/**
+	 * @param percentile 0-100
+	 * @return 百分位延迟的上界，单位微秒
+	 */
+	public long getPercentileMicros(double percentile) {
+		long total = count.sum();
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= threshold) {
+				return 1L << i;
+			}
+		}
+		return 1L << (BUCKETS - 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, avg=%.1fus, p50<=%dus, p99<=%dus, p999<=%dus", getCount(), getAverageMicros(),
+				getPercentileMicros(50), getPercentileMicros(99), getPercentileMicros(99.9));
+	}
+}
@@ -0,0 +1,215 @@
+package com.jincou.harness;
+
+import com.jincou.core.spring.RedisCaffeineCache;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  多节点压测场景
+ *  <p>
+ *  throughput：多线程在随机节点上混合执行lookup/put/evict，统计吞吐与lookup延迟；
+ *  staleRead：一个节点写入新版本后，统计其他节点一级缓存读到旧值的时间窗口；
+ *  loaderDuplication：多个节点多个线程同时未命中同一个key，统计加载方法被重复执行的次数。
+ */
+public class StressScenarios {
+
+	private static final long STALE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	private final List<CacheNode> nodes;
+
+	public StressScenarios(List<CacheNode> nodes) {
+		this.nodes = nodes;
+	}
+
+	/**
+	 * @param threads  并发线程数
+	 * @param seconds  持续时间
+	 * @param keySpace key的数量
+	 */
+	public ThroughputResult throughput(int threads, int seconds, int keySpace) throws Exception {
+		ThroughputResult result = new ThroughputResult();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			futures.add(executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (System.nanoTime() < deadline) {
+					Cache cache = nodes.get(random.nextInt(nodes.size())).getCache("stressCache");
+					String key = "k" + random.nextInt(keySpace);
+					int op = random.nextInt(100);
+					long start = System.nanoTime();
+					if (op < 80) {
+						cache.get(key);
+						result.lookupLatency.record(System.nanoTime() - start);
+						result.lookups.increment();
+					} else if (op < 95) {
+						cache.put(key, random.nextInt());
+						result.putLatency.record(System.nanoTime() - start);
+						result.puts.increment();
+					} else {
+						cache.evict(key);
+						result.evicts.increment();
+					}
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		result.seconds = seconds;
+		return result;
+	}
+
+	/**
+	 * 第一个节点写入，其余节点轮询读取，记录每个节点第一次读到新版本的耗时
+	 *
+	 * @param rounds 写入次数
+	 */
+	public LatencyRecorder staleRead(int rounds) throws InterruptedException {
+		LatencyRecorder staleWindow = new LatencyRecorder();
+		CacheNode writer = nodes.get(0);
+		List<CacheNode> readers = nodes.subList(1, nodes.size());
+		String key = "stale";
+		writer.getCache("staleCache").put(key, -1);
+		for (int round = 0; round < rounds; round++) {
+			// 读取一次，保证各节点一级缓存中持有旧版本
+			for (CacheNode reader : readers) {
+				reader.getCache("staleCache").get(key);
+			}
+			writer.getCache("staleCache").put(key, round);
+			long start = System.nanoTime();
+			boolean[] converged = new boolean[readers.size()];
+			int remaining = readers.size();
+			while (remaining > 0 && System.nanoTime() - start < STALE_TIMEOUT_NANOS) {
+				for (int i = 0; i < readers.size(); i++) {
+					if (converged[i]) {
+						continue;
+					}
+					Cache.ValueWrapper value = readers.get(i).getCache("staleCache").get(key);
+					if (value != null && Integer.valueOf(round).equals(value.get())) {
+						converged[i] = true;
+						remaining--;
+						staleWindow.record(System.nanoTime() - start);
+					}
+				}
+			}
+			for (int i = 0; i < remaining; i++) {
+				staleWindow.record(STALE_TIMEOUT_NANOS);
+			}
+			Thread.sleep(5);
+		}
+		return staleWindow;
+	}
+
+	/**
+	 * 每个节点threadsPerNode个线程同时通过get(key, valueLoader)读取一个未缓存的key
+	 *
+	 * @return 每个key加载方法的执行次数
+	 */
+	public LoaderResult loaderDuplication(int threadsPerNode, int rounds) throws Exception {
+		LoaderResult result = new LoaderResult();
+		ExecutorService executor = Executors.newFixedThreadPool(threadsPerNode * nodes.size());
+		for (int round = 0; round < rounds; round++) {
+			String key = "load:" + round + ":" + System.nanoTime();
+			AtomicInteger loads = new AtomicInteger();
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (CacheNode node : nodes) {
+				RedisCaffeineCache cache = node.getCache("loaderCache");
+				for (int t = 0; t < threadsPerNode; t++) {
+					futures.add(executor.submit(() -> {
+						start.await();
+						return cache.get(key, () -> {
+							loads.incrementAndGet();
+							Thread.sleep(20);
+							return key;
+						});
+					}));
+				}
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			result.keys++;
+			result.totalLoads += loads.get();
+			result.maxLoads = Math.max(result.maxLoads, loads.get());
+		}
+		executor.shutdown();
+		return result;
+	}
+
+	/**
+	 * 加载重复统计
+	 */
+	public static class LoaderResult {
+
+		private int keys;
+
+		private long totalLoads;
+
+		private int maxLoads;
+
+		public double getAverageLoadsPerKey() {
+			return keys == 0 ? 0 : (double) totalLoads / keys;
+		}
+
+		public int getMaxLoadsPerKey() {
+			return maxLoads;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("keys=%d, avgLoadsPerKey=%.2f, maxLoadsPerKey=%d", keys, getAverageLoadsPerKey(), maxLoads);
+		}
+	}
+
+	/**
+	 * 吞吐统计
+	 */
+	public static class ThroughputResult {
+
+		private final LongAdder lookups = new LongAdder();
+
+		private final LongAdder puts = new LongAdder();
+
+		private final LongAdder evicts = new LongAdder();
+
+		private final LatencyRecorder lookupLatency = new LatencyRecorder();
+
+		private final LatencyRecorder putLatency = new LatencyRecorder();
+
+		private int seconds;
+
+		public double getOpsPerSecond() {
+			return (double) (lookups.sum() + puts.sum() + evicts.sum()) / seconds;
+		}
+
+		public LatencyRecorder getLookupLatency() {
+			return lookupLatency;
+		}
+
+		public LatencyRecorder getPutLatency() {
+			return putLatency;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("ops/s=%.0f, lookups=%d, puts=%d, evicts=%d%n  lookup: %s%n  put: %s",
+					getOpsPerSecond(), lookups.sum(), puts.sum(), evicts.sum(), lookupLatency, putLatency);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.jincou.harness;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *  压测场景的回归门槛
+ *  <p>
+ *  阈值取值宽松，只用于发现量级上的退化：通知丢失导致的脏读超时、单节点内加载去重失效、吞吐明显下降。
+ */
+class StressScenariosTest {
+
+	private static final int NODES = 3;
+
+	private static EmbeddedRedisServer server;
+
+	private static List<CacheNode> nodes;
+
+	private static StressScenarios scenarios;
+
+	@BeforeAll
+	static void start() throws Exception {
+		server = new EmbeddedRedisServer(0);
+		nodes = new ArrayList<>();
+		for (int i = 0; i < NODES; i++) {
+			nodes.add(new CacheNode("node-" + i, "127.0.0.1", server.getPort(), HarnessApplication.l2CacheConfig()));
+		}
+		scenarios = new StressScenarios(nodes);
+	}
+
+	@AfterAll
+	static void stop() throws Exception {
+		for (CacheNode node : nodes) {
+			node.close();
+		}
+		server.close();
+	}
+
+	@Test
+	void throughput() throws Exception {
+		StressScenarios.ThroughputResult result = scenarios.throughput(8, 3, 1000);
+
+		assertThat(result.getOpsPerSecond()).isGreaterThan(100);
+		assertThat(result.getLookupLatency().getPercentileMicros(99)).isLessThanOrEqualTo(500_000);
+	}
+
+	@Test
+	void staleReadWindow() throws Exception {
+		LatencyRecorder staleWindow = scenarios.staleRead(100);
+
+		// 超时按2秒记录，p99超过500ms说明有节点没有收到更新通知
+		assertThat(staleWindow.getPercentileMicros(99)).isLessThanOrEqualTo(500_000);
+	}
+
+	@Test
+	void loaderDuplication() throws Exception {
+		StressScenarios.LoaderResult result = scenarios.loaderDuplication(4, 20);
+
+		// 每个节点内部合并同一个key的并发加载，最多每个节点加载一次
+		assertThat(result.getMaxLoadsPerKey()).isLessThanOrEqualTo(NODES);
+	}
+}
@@ -3,25 +3,41 @@ package com.jincou.core.starter;
 
 
 import com.jincou.core.cache.RedisCache;
+import com.jincou.core.cache.ReplicationLagMonitor;
+import com.jincou.core.config.L2CacheConfig;
 import com.jincou.core.config.L2CacheProperties;
 import com.jincou.core.spring.RedisCaffeineCacheManager;
+import com.jincou.core.sync.CacheMessageDispatcher;
 import com.jincou.core.sync.CacheMessageListener;
+import com.jincou.core.sync.CacheMessagePublisher;
+import com.jincou.core.sync.RedisStreamCacheMessagePublisher;
+import com.jincou.core.sync.RedisStreamCacheMessageSubscriber;
+import com.jincou.core.sync.RedisTopicCacheMessagePublisher;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 
 import java.net.UnknownHostException;
@@ -38,19 +54,62 @@ import java.net.UnknownHostException;
 @EnableConfigurationProperties(L2CacheProperties.class)
 public class CacheRedisCaffeineAutoConfiguration {
 
+	private static final String TRANSPORT_STREAM = "stream";
+
 	@Autowired
 	private L2CacheProperties l2CacheProperties;
 
 	@Bean
 	@ConditionalOnClass(RedisCache.class)
 	@Order(2)
-	public RedisCaffeineCacheManager cacheManager(RedisCache redisCache) {
-		return new RedisCaffeineCacheManager(l2CacheProperties.getConfig(),redisCache);
+	public RedisCaffeineCacheManager cacheManager(RedisCache redisCache, CacheMessagePublisher cacheMessagePublisher) {
+		return new RedisCaffeineCacheManager(l2CacheProperties.getConfig(),redisCache, cacheMessagePublisher);
+	}
+
+	@Bean
+	@ConditionalOnClass(RedisCache.class)
+	public L1RoutingRefreshListener l1RoutingRefreshListener(Environment environment, RedisCaffeineCacheManager cacheManager) {
+		return new L1RoutingRefreshListener(environment, cacheManager);
+	}
+
+	@Bean
+	@ConditionalOnClass(RedisCache.class)
+	@ConditionalOnMissingBean(CacheMessagePublisher.class)
+	public CacheMessagePublisher cacheMessagePublisher(RedisCache redisCache) {
+		L2CacheConfig.Redis redisConfig = l2CacheProperties.getConfig().getRedis();
+		if (TRANSPORT_STREAM.equals(redisConfig.getTransport())) {
+			return new RedisStreamCacheMessagePublisher(redisCache, redisConfig.getStreamKey(), redisConfig.getStreamMaxLen());
+		}
+		return new RedisTopicCacheMessagePublisher(redisCache, redisConfig.getTopic());
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "l2cache.config.redis.connection", name = "enabled", havingValue = "true")
+	public L2ConnectionFactories l2ConnectionFactories(ObjectProvider<RedisProperties> redisProperties) {
+		return new L2ConnectionFactories(redisProperties.getIfAvailable(RedisProperties::new),
+				l2CacheProperties.getConfig().getRedis().getConnection());
+	}
+
+	/**
+	 * maxReplicationLagBytes小于等于0表示不检查复制延迟，此时不创建监控，默认值与L2CacheConfig一致
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "l2cache.config.redis.connection", name = "enabled", havingValue = "true")
+	@ConditionalOnExpression("${l2cache.config.redis.connection.max-replication-lag-bytes:65536} > 0")
+	public ReplicationLagMonitor replicationLagMonitor(RedisTemplate<Object, Object> stringKeyRedisTemplate) {
+		L2CacheConfig.Redis.Connection connectionConfig = l2CacheProperties.getConfig().getRedis().getConnection();
+		return new ReplicationLagMonitor(stringKeyRedisTemplate, connectionConfig.getMaxReplicationLagBytes(), connectionConfig.getReplicationCheckMillis());
 	}
 
 	@Bean
 	@ConditionalOnMissingBean(name = "stringKeyRedisTemplate")
-	public RedisTemplate<Object, Object> stringKeyRedisTemplate(RedisConnectionFactory redisConnectionFactory) throws UnknownHostException {
+	public RedisTemplate<Object, Object> stringKeyRedisTemplate(RedisConnectionFactory redisConnectionFactory,
+																ObjectProvider<L2ConnectionFactories> l2ConnectionFactories) throws UnknownHostException {
+		L2ConnectionFactories connectionFactories = l2ConnectionFactories.getIfAvailable();
+		return stringKeyTemplate(connectionFactories == null ? redisConnectionFactory : connectionFactories.getWriteConnectionFactory());
+	}
+
+	static RedisTemplate<Object, Object> stringKeyTemplate(RedisConnectionFactory redisConnectionFactory) {
 		RedisTemplate<Object, Object> template = new RedisTemplate<>();
 		template.setConnectionFactory(redisConnectionFactory);
 		RedisSerializer stringSerializer = new StringRedisSerializer();
@@ -61,22 +120,99 @@ public class CacheRedisCaffeineAutoConfiguration {
 
 	@Bean
 	@ConditionalOnClass(RedisCache.class)
+	public CacheMessageDispatcher cacheMessageDispatcher(RedisCaffeineCacheManager cacheManager) {
+		return new CacheMessageDispatcher(l2CacheProperties.getConfig().getListener(), cacheManager);
+	}
+
+	@Bean
+	@ConditionalOnClass(RedisCache.class)
+	@ConditionalOnProperty(prefix = "l2cache.config.redis", name = "transport", havingValue = "topic", matchIfMissing = true)
 	@Order(3)
 	public RedisMessageListenerContainer redisMessageListenerContainer(RedisCache redisCache,
-																	   RedisCaffeineCacheManager cacheManager) {
+																	   CacheMessageDispatcher cacheMessageDispatcher) {
 		RedisMessageListenerContainer redisMessageListenerContainer = new RedisMessageListenerContainer();
 		redisMessageListenerContainer.setConnectionFactory(redisCache.getRedisTemplate().getConnectionFactory());
-		CacheMessageListener cacheMessageListener = new CacheMessageListener(redisCache, cacheManager);
+		listenerExecutors(redisMessageListenerContainer);
+		CacheMessageListener cacheMessageListener = new CacheMessageListener(redisCache, cacheMessageDispatcher);
 		redisMessageListenerContainer.addMessageListener(cacheMessageListener, new ChannelTopic(l2CacheProperties.getConfig().getRedis().getTopic()));
 		return redisMessageListenerContainer;
 	}
 
+	@Bean
+	@ConditionalOnClass(RedisCache.class)
+	public NamedRedisInstances namedRedisInstances(RedisCaffeineCacheManager cacheManager,
+												   CacheMessageDispatcher cacheMessageDispatcher) {
+		return new NamedRedisInstances(l2CacheProperties.getConfig().getRedis(), cacheManager, cacheMessageDispatcher);
+	}
+
+	@Bean
+	@ConditionalOnClass(RedisCache.class)
+	@ConditionalOnProperty(prefix = "l2cache.config.redis", name = "transport", havingValue = TRANSPORT_STREAM)
+	public RedisStreamCacheMessageSubscriber redisStreamCacheMessageSubscriber(RedisCache redisCache,
+																			   RedisCaffeineCacheManager cacheManager,
+																			   CacheMessageDispatcher cacheMessageDispatcher) {
+		return new RedisStreamCacheMessageSubscriber(redisCache, l2CacheProperties.getConfig().getRedis(), cacheManager, cacheMessageDispatcher);
+	}
+
 	@Bean
 	@ConditionalOnBean(RedisTemplate.class)
 	@Order(1)
-	public RedisCache redisCache(RedisTemplate<Object, Object> stringKeyRedisTemplate) {
+	public RedisCache redisCache(RedisTemplate<Object, Object> stringKeyRedisTemplate,
+								 ObjectProvider<L2ConnectionFactories> l2ConnectionFactories,
+								 ObjectProvider<ReplicationLagMonitor> replicationLagMonitor) {
 		RedisCache redisCache = new RedisCache();
 		redisCache.setRedisTemplate(stringKeyRedisTemplate);
+		L2ConnectionFactories connectionFactories = l2ConnectionFactories.getIfAvailable();
+		if (connectionFactories != null) {
+			// 缓存查询走读连接，写入、删除及pub/sub仍走主节点
+			redisCache.setReadRedisTemplate(readTemplate(connectionFactories.getReadConnectionFactory(), stringKeyRedisTemplate));
+			connectionFactories.getPolicyConnectionFactories().forEach((readPolicy, connectionFactory) ->
+					redisCache.setReadRedisTemplate(readPolicy, readTemplate(connectionFactory, stringKeyRedisTemplate)));
+			redisCache.setReplicationLagMonitor(replicationLagMonitor.getIfAvailable());
+		}
 		return redisCache;
 	}
+
+	/**
+	 * 缓存统计与管理端点，引入actuator时生效
+	 */
+	@Configuration
+	@ConditionalOnClass(Endpoint.class)
+	static class RedisCaffeineCacheEndpointConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		@ConditionalOnAvailableEndpoint
+		public RedisCaffeineCacheEndpoint redisCaffeineCacheEndpoint(RedisCaffeineCacheManager cacheManager,
+																	 ObjectProvider<CacheMessageDispatcher> cacheMessageDispatcher) {
+			return new RedisCaffeineCacheEndpoint(cacheManager, cacheMessageDispatcher.getIfAvailable());
+		}
+	}
+
+	/**
+	 * 订阅与消息回调使用专用线程：订阅不占用容器启动线程，阻塞式订阅也不会卡住启动；
+	 * 回调只做反序列化和入队，单线程有序执行，避免占用redis客户端的IO线程，也避免默认执行器为每条消息新建线程
+	 */
+	static void listenerExecutors(RedisMessageListenerContainer listenerContainer) {
+		SimpleAsyncTaskExecutor subscriptionExecutor = new SimpleAsyncTaskExecutor("l2cache-subscription-");
+		subscriptionExecutor.setDaemon(true);
+		listenerContainer.setSubscriptionExecutor(subscriptionExecutor);
+
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(1);
+		taskExecutor.setMaxPoolSize(1);
+		taskExecutor.setAllowCoreThreadTimeOut(true);
+		taskExecutor.setDaemon(true);
+		taskExecutor.setThreadNamePrefix("l2cache-subscriber-");
+		taskExecutor.initialize();
+		listenerContainer.setTaskExecutor(taskExecutor);
+	}
+
+	private static RedisTemplate<Object, Object> readTemplate(RedisConnectionFactory connectionFactory,
+															 RedisTemplate<Object, Object> stringKeyRedisTemplate) {
+		RedisTemplate<Object, Object> readRedisTemplate = stringKeyTemplate(connectionFactory);
+		readRedisTemplate.setValueSerializer(stringKeyRedisTemplate.getValueSerializer());
+		readRedisTemplate.afterPropertiesSet();
+		return readRedisTemplate;
+	}
 }
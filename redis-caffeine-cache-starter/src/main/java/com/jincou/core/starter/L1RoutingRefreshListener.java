@@ -0,0 +1,56 @@
+package com.jincou.core.starter;
+
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.spring.L1CacheRouting;
+import com.jincou.core.spring.RedisCaffeineCacheManager;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+
+/**
+ *  配置刷新时重新绑定组合缓存配置，原子替换一级缓存路由
+ *  <p>
+ *  监听配置中心刷新后发布的事件（spring cloud的EnvironmentChangeEvent、RefreshScopeRefreshedEvent），
+ *  按事件类名匹配，不引入spring cloud依赖。
+ */
+public class L1RoutingRefreshListener implements ApplicationListener<ApplicationEvent> {
+
+	private static final String COMPOSITE_PREFIX = "l2cache.config.composite";
+
+	private static final String ENVIRONMENT_CHANGE_EVENT = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
+
+	private static final String REFRESH_SCOPE_REFRESHED_EVENT = "org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent";
+
+	private final Environment environment;
+
+	private final RedisCaffeineCacheManager cacheManager;
+
+	public L1RoutingRefreshListener(Environment environment, RedisCaffeineCacheManager cacheManager) {
+		this.environment = environment;
+		this.cacheManager = cacheManager;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationEvent event) {
+		String eventClassName = event.getClass().getName();
+		if (!ENVIRONMENT_CHANGE_EVENT.equals(eventClassName) && !REFRESH_SCOPE_REFRESHED_EVENT.equals(eventClassName)) {
+			return;
+		}
+		L2CacheConfig.Composite composite = Binder.get(environment)
+				.bind(COMPOSITE_PREFIX, Bindable.of(L2CacheConfig.Composite.class))
+				.orElseGet(L2CacheConfig.Composite::new);
+		if (isChanged(composite)) {
+			cacheManager.updateL1Routing(composite);
+		}
+	}
+
+	private boolean isChanged(L2CacheConfig.Composite composite) {
+		L1CacheRouting.Snapshot snapshot = cacheManager.getL1CacheRouting().getSnapshot();
+		return snapshot.isL1AllOpen() != composite.isL1AllOpen()
+				|| snapshot.isL1Manual() != composite.isL1Manual()
+				|| !snapshot.getL1ManualKeySet().equals(composite.getL1ManualKeySet())
+				|| !snapshot.getL1ManualCacheNameSet().equals(composite.getL1ManualCacheNameSet());
+	}
+}
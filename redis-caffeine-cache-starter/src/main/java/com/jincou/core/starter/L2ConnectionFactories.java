@@ -0,0 +1,124 @@
+package com.jincou.core.starter;
+
+import com.jincou.core.config.L2CacheConfig;
+import io.lettuce.core.ReadFrom;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ *  二级缓存专用的lettuce连接工厂
+ *  <p>
+ *  按spring.redis的地址（单机、哨兵或集群）创建读、写两个连接工厂，不注册为spring bean，
+ *  不影响应用自身使用的RedisConnectionFactory。写工厂访问主节点，读工厂按readFrom选择节点，
+ *  默认共享一个原生连接，多线程的命令在同一个连接上多路复用，不再受连接池大小限制。
+ */
+public class L2ConnectionFactories implements DisposableBean {
+
+	private final LettuceConnectionFactory writeConnectionFactory;
+
+	private final LettuceConnectionFactory readConnectionFactory;
+
+	/**
+	 * cacheName读策略使用的读连接工厂，只为配置中用到的读策略创建
+	 */
+	private final Map<L2CacheConfig.ReadPolicy, LettuceConnectionFactory> policyConnectionFactories = new EnumMap<>(L2CacheConfig.ReadPolicy.class);
+
+	public L2ConnectionFactories(RedisProperties redisProperties, L2CacheConfig.Redis.Connection connectionConfig) {
+		this.writeConnectionFactory = connectionFactory(redisProperties, connectionConfig,
+				connectionConfig.getWriteTimeout(), ReadFrom.UPSTREAM);
+		this.readConnectionFactory = connectionFactory(redisProperties, connectionConfig,
+				connectionConfig.getReadTimeout(), ReadFrom.valueOf(connectionConfig.getReadFrom()));
+		for (L2CacheConfig.ReadPolicy readPolicy : connectionConfig.getReadPolicies().values()) {
+			if (readPolicy != L2CacheConfig.ReadPolicy.PRIMARY && !policyConnectionFactories.containsKey(readPolicy)) {
+				policyConnectionFactories.put(readPolicy, connectionFactory(redisProperties, connectionConfig,
+						connectionConfig.getReadTimeout(), readFrom(readPolicy)));
+			}
+		}
+	}
+
+	public LettuceConnectionFactory getWriteConnectionFactory() {
+		return writeConnectionFactory;
+	}
+
+	public LettuceConnectionFactory getReadConnectionFactory() {
+		return readConnectionFactory;
+	}
+
+	public Map<L2CacheConfig.ReadPolicy, LettuceConnectionFactory> getPolicyConnectionFactories() {
+		return policyConnectionFactories;
+	}
+
+	@Override
+	public void destroy() {
+		for (LettuceConnectionFactory connectionFactory : policyConnectionFactories.values()) {
+			connectionFactory.destroy();
+		}
+		readConnectionFactory.destroy();
+		writeConnectionFactory.destroy();
+	}
+
+	private static LettuceConnectionFactory connectionFactory(RedisProperties redisProperties,
+															  L2CacheConfig.Redis.Connection connectionConfig,
+															  long timeout, ReadFrom readFrom) {
+		LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+				.commandTimeout(Duration.ofMillis(timeout));
+		if (readFrom != ReadFrom.UPSTREAM) {
+			// 单机配置下lettuce通过INFO replication自动发现从节点
+			builder.readFrom(readFrom);
+		}
+		if (redisProperties.isSsl()) {
+			builder.useSsl();
+		}
+		LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(redisConfiguration(redisProperties), builder.build());
+		connectionFactory.setShareNativeConnection(connectionConfig.isShareNativeConnection());
+		if (connectionConfig.getPipeliningFlushBatch() > 1) {
+			connectionFactory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.buffered(connectionConfig.getPipeliningFlushBatch()));
+		}
+		connectionFactory.afterPropertiesSet();
+		return connectionFactory;
+	}
+
+	private static ReadFrom readFrom(L2CacheConfig.ReadPolicy readPolicy) {
+		return readPolicy == L2CacheConfig.ReadPolicy.NEAREST ? ReadFrom.NEAREST : ReadFrom.REPLICA_PREFERRED;
+	}
+
+	private static RedisConfiguration redisConfiguration(RedisProperties redisProperties) {
+		RedisPassword password = RedisPassword.of(redisProperties.getPassword());
+		if (redisProperties.getCluster() != null) {
+			RedisClusterConfiguration clusterConfiguration = new RedisClusterConfiguration(redisProperties.getCluster().getNodes());
+			if (redisProperties.getCluster().getMaxRedirects() != null) {
+				clusterConfiguration.setMaxRedirects(redisProperties.getCluster().getMaxRedirects());
+			}
+			clusterConfiguration.setUsername(redisProperties.getUsername());
+			clusterConfiguration.setPassword(password);
+			return clusterConfiguration;
+		}
+		if (redisProperties.getSentinel() != null) {
+			RedisSentinelConfiguration sentinelConfiguration = new RedisSentinelConfiguration(redisProperties.getSentinel().getMaster(),
+					new HashSet<>(redisProperties.getSentinel().getNodes()));
+			sentinelConfiguration.setDatabase(redisProperties.getDatabase());
+			sentinelConfiguration.setUsername(redisProperties.getUsername());
+			sentinelConfiguration.setPassword(password);
+			sentinelConfiguration.setSentinelPassword(RedisPassword.of(redisProperties.getSentinel().getPassword()));
+			return sentinelConfiguration;
+		}
+		RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration(redisProperties.getHost(), redisProperties.getPort());
+		standaloneConfiguration.setDatabase(redisProperties.getDatabase());
+		standaloneConfiguration.setUsername(redisProperties.getUsername());
+		standaloneConfiguration.setPassword(password);
+		return standaloneConfiguration;
+	}
+}
@@ -0,0 +1,107 @@
+package com.jincou.core.starter;
+
+import com.jincou.core.cache.RedisCache;
+import com.jincou.core.config.L2CacheConfig;
+import com.jincou.core.spring.RedisCaffeineCacheManager;
+import com.jincou.core.sync.CacheMessageDispatcher;
+import com.jincou.core.sync.CacheMessageListener;
+import com.jincou.core.sync.RedisTopicCacheMessagePublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  命名redis实例
+ *  <p>
+ *  为l2cache.config.redis.instances中的每个实例创建独立的连接工厂、redis操作及缓存更新监听容器，
+ *  并注册到缓存管理器，cacheNameInstances中路由到该实例的cacheName使用其连接与topic。
+ *  命名实例的缓存更新通知固定使用pub/sub。
+ */
+public class NamedRedisInstances implements InitializingBean, DisposableBean {
+
+	private final Logger logger = LoggerFactory.getLogger(NamedRedisInstances.class);
+
+	private final L2CacheConfig.Redis redisConfig;
+
+	private final RedisCaffeineCacheManager cacheManager;
+
+	private final CacheMessageDispatcher cacheMessageDispatcher;
+
+	private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+	private final List<RedisMessageListenerContainer> listenerContainers = new ArrayList<>();
+
+	public NamedRedisInstances(L2CacheConfig.Redis redisConfig, RedisCaffeineCacheManager cacheManager,
+							   CacheMessageDispatcher cacheMessageDispatcher) {
+		this.redisConfig = redisConfig;
+		this.cacheManager = cacheManager;
+		this.cacheMessageDispatcher = cacheMessageDispatcher;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		for (Map.Entry<String, L2CacheConfig.Redis.Instance> entry : redisConfig.getInstances().entrySet()) {
+			String instanceName = entry.getKey();
+			L2CacheConfig.Redis.Instance instance = entry.getValue();
+
+			LettuceConnectionFactory connectionFactory = connectionFactory(instance);
+			connectionFactories.add(connectionFactory);
+
+			RedisCache redisCache = new RedisCache();
+			redisCache.setRedisTemplate(redisTemplate(connectionFactory));
+			cacheManager.registerRedisInstance(instanceName, redisCache, new RedisTopicCacheMessagePublisher(redisCache, instance.getTopic()));
+
+			RedisMessageListenerContainer listenerContainer = new RedisMessageListenerContainer();
+			listenerContainer.setConnectionFactory(connectionFactory);
+			CacheRedisCaffeineAutoConfiguration.listenerExecutors(listenerContainer);
+			listenerContainer.addMessageListener(new CacheMessageListener(redisCache, cacheMessageDispatcher), new ChannelTopic(instance.getTopic()));
+			listenerContainer.afterPropertiesSet();
+			listenerContainer.start();
+			listenerContainers.add(listenerContainer);
+
+			logger.info("register redis instance, name={}, host={}, port={}, database={}, topic={}",
+					instanceName, instance.getHost(), instance.getPort(), instance.getDatabase(), instance.getTopic());
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		for (RedisMessageListenerContainer listenerContainer : listenerContainers) {
+			listenerContainer.destroy();
+		}
+		for (LettuceConnectionFactory connectionFactory : connectionFactories) {
+			connectionFactory.destroy();
+		}
+	}
+
+	private LettuceConnectionFactory connectionFactory(L2CacheConfig.Redis.Instance instance) {
+		RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration(instance.getHost(), instance.getPort());
+		standaloneConfiguration.setDatabase(instance.getDatabase());
+		standaloneConfiguration.setPassword(RedisPassword.of(instance.getPassword()));
+		LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+				.commandTimeout(Duration.ofMillis(instance.getTimeout()))
+				.build();
+		LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(standaloneConfiguration, clientConfiguration);
+		connectionFactory.afterPropertiesSet();
+		return connectionFactory;
+	}
+
+	private RedisTemplate<Object, Object> redisTemplate(LettuceConnectionFactory connectionFactory) {
+		RedisTemplate<Object, Object> template = CacheRedisCaffeineAutoConfiguration.stringKeyTemplate(connectionFactory);
+		template.afterPropertiesSet();
+		return template;
+	}
+}
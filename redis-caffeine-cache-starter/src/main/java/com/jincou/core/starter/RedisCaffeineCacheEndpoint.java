@@ -0,0 +1,120 @@
+package com.jincou.core.starter;
+
+import com.jincou.core.spring.CacheStatistics;
+import com.jincou.core.spring.RedisCaffeineCache;
+import com.jincou.core.spring.RedisCaffeineCacheManager;
+import com.jincou.core.sync.CacheMessageDispatcher;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  二级缓存管理端点 /actuator/l2cache
+ *  <p>
+ *  GET /actuator/l2cache：缓存更新消息分发统计及所有cacheName的统计，不统计二级缓存key数量；
+ *  GET /actuator/l2cache/{cacheName}?scanL2=true：单个cacheName的统计，传scanL2=true时通过SCAN统计二级缓存key数量，
+ *  SCAN需遍历redis且不支持集群模式，只在排查问题时按需使用，不应用于定时采集；
+ *  DELETE /actuator/l2cache/{cacheName}?key=xx：清除指定key，不传key时清空该cacheName；
+ *  POST /actuator/l2cache/{cacheName} {"keys":"k1,k2"}：预热指定key到一级缓存。
+ */
+@Endpoint(id = "l2cache")
+public class RedisCaffeineCacheEndpoint {
+
+	private static final int HOT_KEY_LIMIT = 10;
+
+	private static final long SCAN_LIMIT = 100000;
+
+	/** 不统计二级缓存key数量 */
+	private static final long NO_SCAN = 0;
+
+	private static final int SAMPLE_SIZE = 100;
+
+	private final RedisCaffeineCacheManager cacheManager;
+
+	private final CacheMessageDispatcher cacheMessageDispatcher;
+
+	public RedisCaffeineCacheEndpoint(RedisCaffeineCacheManager cacheManager, CacheMessageDispatcher cacheMessageDispatcher) {
+		this.cacheManager = cacheManager;
+		this.cacheMessageDispatcher = cacheMessageDispatcher;
+	}
+
+	@ReadOperation
+	public Map<String, Object> caches() {
+		Map<String, CacheStatistics> caches = new LinkedHashMap<>();
+		for (RedisCaffeineCache cache : cacheManager.getCaches()) {
+			caches.put(cache.getName(), cache.getStatistics(HOT_KEY_LIMIT, NO_SCAN, SAMPLE_SIZE));
+		}
+		Map<String, Object> result = new LinkedHashMap<>();
+		if (cacheMessageDispatcher != null) {
+			result.put("listener", listener());
+		}
+		result.put("caches", caches);
+		return result;
+	}
+
+	@ReadOperation
+	public CacheStatistics cache(@Selector String cacheName, @Nullable Boolean scanL2) {
+		RedisCaffeineCache cache = existingCache(cacheName);
+		return cache == null ? null : cache.getStatistics(HOT_KEY_LIMIT, Boolean.TRUE.equals(scanL2) ? SCAN_LIMIT : NO_SCAN, SAMPLE_SIZE);
+	}
+
+	@DeleteOperation
+	public Map<String, Object> evict(@Selector String cacheName, @Nullable String key) {
+		RedisCaffeineCache cache = existingCache(cacheName);
+		if (cache == null) {
+			return null;
+		}
+		if (key == null) {
+			cache.clear();
+		} else {
+			cache.evict(key);
+		}
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("cacheName", cacheName);
+		result.put("key", key);
+		return result;
+	}
+
+	@WriteOperation
+	public Map<String, Object> warm(@Selector String cacheName, String keys) {
+		RedisCaffeineCache cache = existingCache(cacheName);
+		if (cache == null) {
+			return null;
+		}
+		List<String> keyList = new ArrayList<>();
+		for (String key : keys.split(",")) {
+			if (!key.trim().isEmpty()) {
+				keyList.add(key.trim());
+			}
+		}
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("cacheName", cacheName);
+		result.put("requested", keyList.size());
+		result.put("warmed", keyList.isEmpty() ? 0 : cache.warm(keyList));
+		return result;
+	}
+
+	private Map<String, Object> listener() {
+		Map<String, Object> listener = new LinkedHashMap<>();
+		listener.put("queueDepth", cacheMessageDispatcher.getQueueDepth());
+		listener.put("dispatchedCount", cacheMessageDispatcher.getDispatchedCount());
+		listener.put("overflowCount", cacheMessageDispatcher.getOverflowCount());
+		listener.put("maxLagMillis", cacheMessageDispatcher.getMaxLagMillis());
+		return listener;
+	}
+
+	/**
+	 * 只操作已创建的缓存实例，避免通过端点动态创建cacheName
+	 */
+	private RedisCaffeineCache existingCache(String cacheName) {
+		return cacheManager.getExistingCache(cacheName);
+	}
+}